@@ -0,0 +1,116 @@
+package io.github.blackspherefollower.buttplug4j.codec.cbor.benchmarks;
+
+import io.github.blackspherefollower.buttplug4j.codec.cbor.ButtplugCborCodec;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of a single OutputCmd frame with the JSON and CBOR codecs, both using the hand-written
+ * codec for the message itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    /**
+     * Vibrate speed.
+     */
+    private static final int SPEED = 10;
+
+    /**
+     * JSON codec.
+     */
+    private ButtplugCodec json;
+    /**
+     * CBOR codec.
+     */
+    private ButtplugCodec cbor;
+    /**
+     * Message to encode.
+     */
+    private List<ButtplugMessage> msgs;
+    /**
+     * Encoded JSON frame.
+     */
+    private byte[] jsonFrame;
+    /**
+     * Encoded CBOR frame.
+     */
+    private byte[] cborFrame;
+
+    /**
+     * Build the codecs and frames.
+     *
+     * @throws ButtplugProtocolException if encoding fails
+     */
+    @Setup
+    public void setup() throws ButtplugProtocolException {
+        json = new ButtplugJsonMessageParser(true);
+        cbor = new ButtplugCborCodec(true, false);
+        OutputCmd cmd = new OutputCmd(1, 0, 0);
+        cmd.setCommand(new OutputCmd.Vibrate(SPEED));
+        msgs = Collections.singletonList(cmd);
+        jsonFrame = json.encode(msgs);
+        cborFrame = cbor.encode(msgs);
+    }
+
+    /**
+     * Encode the frame as JSON.
+     *
+     * @return frame bytes
+     * @throws ButtplugProtocolException if encoding fails
+     */
+    @Benchmark
+    public byte[] encodeJson() throws ButtplugProtocolException {
+        return json.encode(msgs);
+    }
+
+    /**
+     * Encode the frame as CBOR.
+     *
+     * @return frame bytes
+     * @throws ButtplugProtocolException if encoding fails
+     */
+    @Benchmark
+    public byte[] encodeCbor() throws ButtplugProtocolException {
+        return cbor.encode(msgs);
+    }
+
+    /**
+     * Decode the JSON frame.
+     *
+     * @param bh blackhole
+     * @throws ButtplugProtocolException if decoding fails
+     */
+    @Benchmark
+    public void decodeJson(final Blackhole bh) throws ButtplugProtocolException {
+        json.decode(jsonFrame, 0, jsonFrame.length, bh::consume);
+    }
+
+    /**
+     * Decode the CBOR frame.
+     *
+     * @param bh blackhole
+     * @throws ButtplugProtocolException if decoding fails
+     */
+    @Benchmark
+    public void decodeCbor(final Blackhole bh) throws ButtplugProtocolException {
+        cbor.decode(cborFrame, 0, cborFrame.length, bh::consume);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks comparing the CBOR and JSON codecs.
+ */
+package io.github.blackspherefollower.buttplug4j.codec.cbor.benchmarks;
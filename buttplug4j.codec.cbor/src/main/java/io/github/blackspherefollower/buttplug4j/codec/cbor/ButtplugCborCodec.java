@@ -0,0 +1,37 @@
+package io.github.blackspherefollower.buttplug4j.codec.cbor;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJacksonCodec;
+
+/**
+ * CBOR codec.
+ * <p>
+ * Encodes the same message model as the JSON codec, but as binary CBOR frames. Buttplug servers only speak JSON, so
+ * this is only useful against a peer that uses this codec too, e.g. a Java-side relay.
+ */
+public final class ButtplugCborCodec extends ButtplugJacksonCodec {
+
+    /**
+     * Constructor.
+     */
+    public ButtplugCborCodec() {
+        this(false, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param handWrittenCodec true to encode and decode OutputCmd, StopCmd, Ok, Ping and InputReading with the
+     *                         hand-written streaming codec instead of databind
+     * @param lazyDevices      true to keep the raw CBOR of each device in a DeviceList and only decode it when first
+     *                         accessed
+     */
+    public ButtplugCborCodec(final boolean handWrittenCodec, final boolean lazyDevices) {
+        super(new CBORMapper(), handWrittenCodec, lazyDevices);
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+}
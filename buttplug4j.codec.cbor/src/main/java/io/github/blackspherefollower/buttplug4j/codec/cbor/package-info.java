@@ -0,0 +1,4 @@
+/**
+ * CBOR wire codec for Buttplug clients.
+ */
+package io.github.blackspherefollower.buttplug4j.codec.cbor;
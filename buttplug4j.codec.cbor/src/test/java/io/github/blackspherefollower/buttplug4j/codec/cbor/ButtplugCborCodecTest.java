@@ -0,0 +1,60 @@
+package io.github.blackspherefollower.buttplug4j.codec.cbor;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceList;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ButtplugCborCodecTest {
+
+    private static final String TEST_STR = "[{\"OutputCmd\":{\"Id\":2,\"DeviceIndex\":1,\"FeatureIndex\":0,\"Command\":{\"Vibrate\":{\"Value\":10}}}},"
+            + "{\"StopCmd\":{\"Id\":3,\"DeviceIndex\":1}},{\"Ok\":{\"Id\":4}},"
+            + "{\"InputReading\":{\"Id\":0,\"DeviceIndex\":1,\"FeatureIndex\":2,\"Reading\":{\"Battery\":{\"Value\":50}}}},"
+            + "{\"DeviceList\":{\"Id\":5,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Motor\",\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+
+    private static List<ButtplugMessage> roundTrip(final ButtplugCborCodec codec, final List<ButtplugMessage> msgs)
+            throws ButtplugProtocolException {
+        List<ButtplugMessage> decoded = new ArrayList<>();
+        codec.decode(ByteBuffer.wrap(codec.encode(msgs)), decoded::add);
+        return decoded;
+    }
+
+    @Test
+    public void testRoundTrip() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser json = new ButtplugJsonMessageParser();
+        List<ButtplugMessage> msgs = json.parseJson(TEST_STR);
+
+        assertEquals(TEST_STR, json.formatJson(roundTrip(new ButtplugCborCodec(), msgs)));
+        assertEquals(TEST_STR, json.formatJson(roundTrip(new ButtplugCborCodec(true, false), msgs)));
+
+        List<ButtplugMessage> lazy = roundTrip(new ButtplugCborCodec(false, true), msgs);
+        assertTrue(((DeviceList) lazy.get(4)).getDevices().get(0).getFingerprint() != 0);
+        assertEquals(TEST_STR, json.formatJson(lazy));
+    }
+
+    @Test
+    public void testSmallerThanJson() throws ButtplugProtocolException {
+        List<ButtplugMessage> msgs = new ButtplugJsonMessageParser().parseJson(TEST_STR);
+        assertTrue(new ButtplugCborCodec().encode(msgs).length < TEST_STR.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testTextFramesRejected() throws ButtplugProtocolException {
+        ButtplugCborCodec codec = new ButtplugCborCodec();
+        assertTrue(codec.isBinary());
+        assertThrows(ButtplugProtocolException.class, () -> codec.decode(TEST_STR, msg -> {
+        }));
+        List<ButtplugMessage> msgs = new ButtplugJsonMessageParser().parseJson(TEST_STR);
+        assertThrows(ButtplugProtocolException.class, () -> codec.encodeText(msgs));
+    }
+}
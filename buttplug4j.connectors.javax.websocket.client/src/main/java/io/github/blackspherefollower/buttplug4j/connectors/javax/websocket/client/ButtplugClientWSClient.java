@@ -3,11 +3,13 @@ package io.github.blackspherefollower.buttplug4j.connectors.javax.websocket.clie
 import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
 import io.github.blackspherefollower.buttplug4j.client.IConnectedEvent;
 import io.github.blackspherefollower.buttplug4j.connectors.javax.websocket.common.ButtplugClientWSEndpoint;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
 import org.eclipse.jetty.util.component.LifeCycle;
 
 import javax.websocket.ClientEndpoint;
 import javax.websocket.ContainerProvider;
 import javax.websocket.DeploymentException;
+import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import java.io.IOException;
 import java.net.URI;
@@ -24,6 +26,10 @@ public final class ButtplugClientWSClient extends ButtplugClientWSEndpoint {
      * WebSocket container.
      */
     private WebSocketContainer client;
+    /**
+     * Server URL, kept for reconnecting.
+     */
+    private URI serverUrl;
 
     /**
      * Constructor.
@@ -34,6 +40,16 @@ public final class ButtplugClientWSClient extends ButtplugClientWSEndpoint {
         super(clientName);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param clientName client name
+     * @param codec      wire codec
+     */
+    public ButtplugClientWSClient(final String clientName, final ButtplugCodec codec) {
+        super(clientName, codec);
+    }
+
     /**
      * Connect to server.
      *
@@ -58,6 +74,7 @@ public final class ButtplugClientWSClient extends ButtplugClientWSEndpoint {
         setOnConnected(client -> promise.complete(true));
 
         client = ContainerProvider.getWebSocketContainer();
+        serverUrl = url;
         client.connectToServer(this, url);
         promise.get();
 
@@ -68,6 +85,25 @@ public final class ButtplugClientWSClient extends ButtplugClientWSEndpoint {
         }
     }
 
+    @Override
+    protected boolean canReconnect() {
+        return true;
+    }
+
+    @Override
+    protected void reopen() throws DeploymentException, IOException {
+        WebSocketContainer container = client;
+        URI url = serverUrl;
+        if (container == null || url == null) {
+            throw new IllegalStateException("WS was never connected");
+        }
+        Session old = detachSession();
+        if (old != null) {
+            old.close();
+        }
+        container.connectToServer(this, url);
+    }
+
     @Override
     protected void cleanup() {
         if (getSession() != null) {
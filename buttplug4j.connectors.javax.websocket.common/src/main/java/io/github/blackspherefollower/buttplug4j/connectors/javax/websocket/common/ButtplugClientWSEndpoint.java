@@ -2,7 +2,7 @@ package io.github.blackspherefollower.buttplug4j.connectors.javax.websocket.comm
 
 import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
 import io.github.blackspherefollower.buttplug4j.client.ButtplugClientException;
-import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
@@ -19,9 +19,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ButtplugClientWSEndpoint.
@@ -36,11 +35,11 @@ public abstract class ButtplugClientWSEndpoint extends ButtplugClient {
     /**
      * Websocket session.
      */
-    private Session session;
+    private volatile Session session;
     /**
-     * Websocket ping timer.
+     * Websocket ping task, or null when not connected.
      */
-    private Timer wsPingTimer;
+    private ScheduledFuture<?> wsPingTask;
 
     /**
      * Constructor.
@@ -51,6 +50,16 @@ public abstract class ButtplugClientWSEndpoint extends ButtplugClient {
         super(aClientName);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param aClientName client name
+     * @param aCodec      wire codec
+     */
+    public ButtplugClientWSEndpoint(final String aClientName, final ButtplugCodec aCodec) {
+        super(aClientName, aCodec);
+    }
+
     /**
      * Get session.
      *
@@ -69,27 +78,59 @@ public abstract class ButtplugClientWSEndpoint extends ButtplugClient {
     @OnMessage
     public final void onMessage(final Session sess, final String message) {
         try {
-            List<ButtplugMessage> msgs = getParser().parseJson(message);
-            onMessage(msgs);
+            getCodec().decode(message, this::onMessage);
         } catch (ButtplugProtocolException e) {
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(new Error(e));
-            } else {
+            if (!publishError(new Error(e))) {
                 e.printStackTrace();
             }
         }
     }
 
     /**
-     * Called when websocket closes.
+     * Called when a binary message is received. The payload is decoded in place by the client's codec.
      *
+     * @param sess    session
+     * @param message message
+     */
+    @OnMessage
+    public final void onMessage(final Session sess, final ByteBuffer message) {
+        try {
+            getCodec().decode(message, this::onMessage);
+        } catch (ButtplugProtocolException e) {
+            if (!publishError(new Error(e))) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called when websocket closes. Closing a session replaced by a reconnect is ignored.
+     *
+     * @param closed session that closed
      * @param reason reason
      */
     @OnClose
     @SuppressWarnings("unused")
-    public final void onClose(final CloseReason reason) {
+    public final void onClose(final Session closed, final CloseReason reason) {
+        if (session != closed && session != null) {
+            return;
+        }
         this.session = null;
-        setConnectionState(ConnectionState.DISCONNECTED);
+        stopWsPing();
+        if (!connectionLost(null)) {
+            setConnectionState(ConnectionState.DISCONNECTED);
+        }
+    }
+
+    /**
+     * Forget the current session without closing it, e.g. before a reconnect replaces it.
+     *
+     * @return the session, or null if there was none
+     */
+    protected final Session detachSession() {
+        Session old = session;
+        session = null;
+        return old;
     }
 
     /**
@@ -103,24 +144,46 @@ public abstract class ButtplugClientWSEndpoint extends ButtplugClient {
         this.session = newSession;
 
         // Setup websocket ping
-        wsPingTimer = new Timer("wsPingTimer", true);
-        wsPingTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    if (session != null) {
-                        session.getAsyncRemote().sendPing(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)));
-                    }
-                } catch (IOException e) {
-                    wsPingTimer.cancel();
-                    wsPingTimer = null;
-                    throw new RuntimeException(e);
-                }
-            }
-        }, 0, TENSEC);
+        startWsPing();
+
+        // Handshake without blocking the WS thread
+        doHandshakeAsync();
+    }
+
+    /**
+     * Start pinging the websocket on the client's scheduler.
+     */
+    private synchronized void startWsPing() {
+        stopWsPing();
+        wsPingTask = getScheduler().scheduleAtFixedRate(this::sendWsPing, 0, TENSEC, TimeUnit.MILLISECONDS);
+    }
 
-        // Don't block the WS thread
-        new Thread(this::doHandshake).start();
+    /**
+     * Stop pinging the websocket.
+     */
+    private synchronized void stopWsPing() {
+        if (wsPingTask != null) {
+            wsPingTask.cancel(false);
+            wsPingTask = null;
+        }
+    }
+
+    /**
+     * Send a websocket ping, stopping the pings if the session cannot take it.
+     */
+    private void sendWsPing() {
+        Session current = session;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.getAsyncRemote().sendPing(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            stopWsPing();
+            if (!publishError(new Error(new ButtplugClientException(e)))) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -130,36 +193,25 @@ public abstract class ButtplugClientWSEndpoint extends ButtplugClient {
      */
     @OnError
     public final void onWebSocketError(final Throwable cause) {
-        if (getErrorHandler() != null) {
-            getErrorHandler().errorReceived(new Error(new ButtplugClientException(cause.getMessage())));
-        } else {
+        if (!publishError(new Error(new ButtplugClientException(cause.getMessage())))) {
             cause.printStackTrace();
         }
-        disconnect();
+        if (!connectionLost(cause)) {
+            // Closing the transport blocks, so keep it off the I/O thread and the scheduler
+            executeBlocking(this::disconnect);
+        }
     }
 
     @Override
-    protected final CompletableFuture<ButtplugMessage> sendMessage(final ButtplugMessage msg) {
-        CompletableFuture<ButtplugMessage> promise = scheduleWait(msg.getId(), new CompletableFuture<>());
-        if (session == null) {
-            Error err = new Error("Bad WS state!",
-                    Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID);
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(err);
-            }
-            return CompletableFuture.completedFuture(err);
+    protected final void writeFrame(final List<ButtplugMessage> msgs) throws Exception {
+        Session current = session;
+        if (current == null) {
+            throw new ButtplugClientException("Bad WS state!");
         }
-
-        try {
-            session.getAsyncRemote().sendText(getParser().formatJson(msg)).get();
-        } catch (Exception e) {
-            Error err = new Error(new ButtplugClientException(e.getMessage()), msg.getId());
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(err);
-            }
-            return CompletableFuture.completedFuture(err);
+        if (getCodec().isBinary()) {
+            current.getAsyncRemote().sendBinary(ByteBuffer.wrap(getCodec().encode(msgs))).get();
+        } else {
+            current.getAsyncRemote().sendText(getCodec().encodeText(msgs)).get();
         }
-        return promise;
     }
-
 }
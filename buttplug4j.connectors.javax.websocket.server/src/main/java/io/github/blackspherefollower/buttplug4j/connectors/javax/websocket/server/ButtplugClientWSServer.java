@@ -1,6 +1,7 @@
 package io.github.blackspherefollower.buttplug4j.connectors.javax.websocket.server;
 
 import io.github.blackspherefollower.buttplug4j.connectors.javax.websocket.common.ButtplugClientWSEndpoint;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
 
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
@@ -21,6 +22,17 @@ public final class ButtplugClientWSServer extends ButtplugClientWSEndpoint {
         setConnectionState(ConnectionState.CONNECTING);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param clientName client name
+     * @param codec      wire codec
+     */
+    public ButtplugClientWSServer(final String clientName, final ButtplugCodec codec) {
+        super(clientName, codec);
+        setConnectionState(ConnectionState.CONNECTING);
+    }
+
     @Override
     protected void cleanup() {
         if (getSession() != null) {
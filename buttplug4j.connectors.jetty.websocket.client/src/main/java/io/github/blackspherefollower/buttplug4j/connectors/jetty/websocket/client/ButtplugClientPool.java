@@ -0,0 +1,539 @@
+package io.github.blackspherefollower.buttplug4j.connectors.jetty.websocket.client;
+
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClientDevice;
+import io.github.blackspherefollower.buttplug4j.client.ReconnectPolicy;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Connections to many Buttplug servers sharing one set of transport resources.
+ * <p>
+ * Every connection of a pool uses the pool's Jetty websocket client, and with it a single I/O thread pool. It also
+ * uses the pool's scheduler for its timers and the pool's event executor for its listeners. Opening another
+ * connection therefore adds no threads. Connections are named by a server ID chosen by the caller, and devices are
+ * addressed across the pool by {@link DeviceAddress}, the server ID plus the device index on that server.
+ * <p>
+ * The pool is thread safe; connections to different servers may be opened concurrently.
+ */
+public final class ButtplugClientPool implements AutoCloseable {
+
+    /**
+     * Client name sent to every server.
+     */
+    private final String clientName;
+    /**
+     * Creates the wire codec of each connection.
+     */
+    private final Supplier<ButtplugCodec> codecs;
+    /**
+     * Websocket client shared by every connection.
+     */
+    private final WebSocketClient transport;
+    /**
+     * Whether the websocket client was created by the pool, and is stopped with it.
+     */
+    private final boolean ownsTransport;
+    /**
+     * Connections by server ID.
+     */
+    private final ConcurrentHashMap<String, ButtplugClientWSClient> clients = new ConcurrentHashMap<>();
+    /**
+     * Scheduler shared by every connection.
+     */
+    private volatile ScheduledExecutorService scheduler = ButtplugClient.getDefaultScheduler();
+    /**
+     * Event executor shared by every connection, or null to leave each connection's own.
+     */
+    private volatile Executor eventExecutor;
+    /**
+     * Reconnect policy of every connection, or null to not reconnect.
+     */
+    private volatile ReconnectPolicy reconnectPolicy;
+    /**
+     * Whether the pool has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a pool with its own websocket client, using the JSON codec.
+     *
+     * @param aClientName client name sent to every server
+     */
+    public ButtplugClientPool(final String aClientName) {
+        this(aClientName, null, ButtplugJsonMessageParser::new);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aClientName client name sent to every server
+     * @param aTransport  websocket client to share, e.g. one configured with a particular executor, or null to create
+     *                    one; a websocket client passed in is started if needed but never stopped by the pool
+     * @param aCodecs     creates the wire codec of each connection
+     */
+    public ButtplugClientPool(final String aClientName, final WebSocketClient aTransport,
+                              final Supplier<ButtplugCodec> aCodecs) {
+        clientName = aClientName;
+        codecs = aCodecs;
+        ownsTransport = aTransport == null;
+        transport = aTransport == null ? new WebSocketClient() : aTransport;
+    }
+
+    /**
+     * Set the scheduler used by connections opened from now on.
+     *
+     * @param aScheduler scheduler, or null for {@link ButtplugClient#getDefaultScheduler()}
+     */
+    public void setScheduler(final ScheduledExecutorService aScheduler) {
+        scheduler = aScheduler == null ? ButtplugClient.getDefaultScheduler() : aScheduler;
+    }
+
+    /**
+     * Get the scheduler shared by the pool's connections.
+     *
+     * @return scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Set the reconnect policy of every connection, including those already open. Reconnecting connections stay in
+     * the pool, and keep their devices, under the same server ID.
+     *
+     * @param aPolicy policy, or null to not reconnect
+     */
+    public void setReconnectPolicy(final ReconnectPolicy aPolicy) {
+        reconnectPolicy = aPolicy;
+        for (ButtplugClientWSClient client : clients.values()) {
+            client.setReconnectPolicy(aPolicy);
+        }
+    }
+
+    /**
+     * Set the executor that runs the listeners of every connection, including those already open.
+     *
+     * @param aExecutor executor, or null to run listeners on the transport's threads
+     */
+    public void setEventExecutor(final Executor aExecutor) {
+        eventExecutor = aExecutor;
+        for (ButtplugClientWSClient client : clients.values()) {
+            client.setEventExecutor(aExecutor);
+        }
+    }
+
+    /**
+     * Connect to a server, blocking until the handshake has completed. Listeners added to the returned connection miss
+     * the devices of the initial device list; use {@link #connect(String, URI, Consumer)} to add them beforehand.
+     *
+     * @param serverId ID to address the server by
+     * @param url      server URL
+     * @return the connection
+     * @throws Exception if connection fails
+     */
+    public ButtplugClientWSClient connect(final String serverId, final URI url) throws Exception {
+        return connect(serverId, url, c -> { });
+    }
+
+    /**
+     * Connect to a server, blocking until the handshake has completed.
+     *
+     * @param serverId  ID to address the server by
+     * @param url       server URL
+     * @param configure called with the connection before it connects, e.g. to add listeners
+     * @return the connection
+     * @throws Exception if connection fails
+     */
+    public ButtplugClientWSClient connect(final String serverId, final URI url,
+                                          final Consumer<ButtplugClientWSClient> configure)
+            throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        ButtplugClientWSClient client = new ButtplugClientWSClient(clientName, codecs.get());
+        client.setScheduler(scheduler);
+        client.setReconnectPolicy(reconnectPolicy);
+        Executor events = eventExecutor;
+        if (events != null) {
+            client.setEventExecutor(events);
+        }
+        configure.accept(client);
+        if (clients.putIfAbsent(serverId, client) != null) {
+            throw new IllegalStateException("Already connected to " + serverId);
+        }
+        try {
+            startTransport();
+            client.connect(url, transport);
+        } catch (Exception e) {
+            clients.remove(serverId, client);
+            client.disconnect();
+            throw e;
+        }
+        return client;
+    }
+
+    /**
+     * Disconnect from a server and forget it.
+     *
+     * @param serverId server ID
+     * @return true if the pool had a connection to the server
+     */
+    public boolean disconnect(final String serverId) {
+        ButtplugClientWSClient client = clients.remove(serverId);
+        if (client == null) {
+            return false;
+        }
+        client.disconnect();
+        return true;
+    }
+
+    /**
+     * Get the connection to a server.
+     *
+     * @param serverId server ID
+     * @return connection, or null if the pool has none to that server
+     */
+    public ButtplugClientWSClient getClient(final String serverId) {
+        return clients.get(serverId);
+    }
+
+    /**
+     * Get the IDs of the servers the pool has connections to.
+     *
+     * @return server IDs, sorted
+     */
+    public List<String> getServerIds() {
+        List<String> ids = new ArrayList<>(clients.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Look up a device anywhere in the pool.
+     *
+     * @param address device address
+     * @return device, or null if the server is unknown or has no such device
+     */
+    public ButtplugClientDevice getDevice(final DeviceAddress address) {
+        return getDevice(address.getServerId(), address.getDeviceIndex());
+    }
+
+    /**
+     * Look up a device anywhere in the pool.
+     *
+     * @param serverId    server ID
+     * @param deviceIndex device index on that server
+     * @return device, or null if the server is unknown or has no such device
+     */
+    public ButtplugClientDevice getDevice(final String serverId, final int deviceIndex) {
+        ButtplugClientWSClient client = clients.get(serverId);
+        return client == null ? null : client.getDevice(deviceIndex);
+    }
+
+    /**
+     * Get every device of every connected server.
+     *
+     * @return devices by address, ordered by server ID and then device index
+     */
+    public Map<DeviceAddress, ButtplugClientDevice> getDevices() {
+        Map<DeviceAddress, ButtplugClientDevice> devices = new LinkedHashMap<>();
+        for (String serverId : getServerIds()) {
+            ButtplugClientWSClient client = clients.get(serverId);
+            if (client == null) {
+                continue;
+            }
+            for (ButtplugClientDevice device : client.getDevices()) {
+                devices.put(new DeviceAddress(serverId, device.getDeviceIndex()), device);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Get the health and request counters of the pool, summed over its connections.
+     *
+     * @return health
+     */
+    public Health getHealth() {
+        int servers = 0;
+        int connected = 0;
+        int reconnecting = 0;
+        int devices = 0;
+        int pending = 0;
+        int queued = 0;
+        long rejected = 0;
+        long expired = 0;
+        for (ButtplugClientWSClient client : clients.values()) {
+            servers++;
+            if (client.isConnected()) {
+                connected++;
+            } else if (client.isReconnecting()) {
+                reconnecting++;
+            }
+            devices += client.getDeviceSnapshot().size();
+            pending += client.getPendingRequestCount();
+            queued += client.getQueueDepth();
+            rejected += client.getRejectedRequestCount();
+            expired += client.getExpiredRequestCount();
+        }
+        return new Health(servers, connected, reconnecting, devices, pending, queued, rejected, expired);
+    }
+
+    /**
+     * Disconnect from every server and, if the pool created it, stop the websocket client.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (String serverId : new ArrayList<>(clients.keySet())) {
+            disconnect(serverId);
+        }
+        if (ownsTransport) {
+            LifeCycle.stop(transport);
+        }
+    }
+
+    /**
+     * Start the websocket client if it is not running.
+     *
+     * @throws Exception if it cannot be started
+     */
+    private synchronized void startTransport() throws Exception {
+        if (!transport.isStarted()) {
+            transport.start();
+        }
+    }
+
+    /**
+     * Address of a device in a pool: the server it is connected to and its index there.
+     */
+    public static final class DeviceAddress {
+        /**
+         * Server ID.
+         */
+        private final String serverId;
+        /**
+         * Device index on the server.
+         */
+        private final int deviceIndex;
+
+        /**
+         * Constructor.
+         *
+         * @param aServerId    server ID
+         * @param aDeviceIndex device index on the server
+         */
+        public DeviceAddress(final String aServerId, final int aDeviceIndex) {
+            serverId = Objects.requireNonNull(aServerId);
+            deviceIndex = aDeviceIndex;
+        }
+
+        /**
+         * Get the server ID.
+         *
+         * @return server ID
+         */
+        public String getServerId() {
+            return serverId;
+        }
+
+        /**
+         * Get the device index on the server.
+         *
+         * @return device index
+         */
+        public int getDeviceIndex() {
+            return deviceIndex;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DeviceAddress that = (DeviceAddress) o;
+            return deviceIndex == that.deviceIndex && serverId.equals(that.serverId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverId, deviceIndex);
+        }
+
+        @Override
+        public String toString() {
+            return serverId + "/" + deviceIndex;
+        }
+    }
+
+    /**
+     * Health of a pool at one point in time.
+     */
+    public static final class Health {
+        /**
+         * Number of servers the pool has connections to.
+         */
+        private final int servers;
+        /**
+         * Number of those connections that are connected.
+         */
+        private final int connected;
+        /**
+         * Number of connections that lost their connection and are getting it back.
+         */
+        private final int reconnecting;
+        /**
+         * Number of devices over all servers.
+         */
+        private final int devices;
+        /**
+         * Requests waiting for a reply.
+         */
+        private final int pendingRequests;
+        /**
+         * Requests in flight or waiting for a permit, over all in-flight windows.
+         */
+        private final int queueDepth;
+        /**
+         * Requests turned away or dropped by in-flight windows.
+         */
+        private final long rejectedRequests;
+        /**
+         * Requests that timed out.
+         */
+        private final long expiredRequests;
+
+        /**
+         * Constructor.
+         *
+         * @param aServers          number of servers
+         * @param aConnected        number of connected servers
+         * @param aReconnecting     number of reconnecting servers
+         * @param aDevices          number of devices
+         * @param aPendingRequests  requests waiting for a reply
+         * @param aQueueDepth       requests in flight or waiting for a permit
+         * @param aRejectedRequests requests turned away or dropped
+         * @param aExpiredRequests  requests that timed out
+         */
+        Health(final int aServers, final int aConnected, final int aReconnecting, final int aDevices,
+               final int aPendingRequests, final int aQueueDepth, final long aRejectedRequests,
+               final long aExpiredRequests) {
+            servers = aServers;
+            connected = aConnected;
+            reconnecting = aReconnecting;
+            devices = aDevices;
+            pendingRequests = aPendingRequests;
+            queueDepth = aQueueDepth;
+            rejectedRequests = aRejectedRequests;
+            expiredRequests = aExpiredRequests;
+        }
+
+        /**
+         * Get the number of servers the pool has connections to.
+         *
+         * @return servers
+         */
+        public int getServers() {
+            return servers;
+        }
+
+        /**
+         * Get the number of connections that are connected.
+         *
+         * @return connected servers
+         */
+        public int getConnected() {
+            return connected;
+        }
+
+        /**
+         * Get the number of connections that lost their connection and are getting it back.
+         *
+         * @return reconnecting servers
+         */
+        public int getReconnecting() {
+            return reconnecting;
+        }
+
+        /**
+         * Check whether every connection is connected.
+         *
+         * @return true if no connection is down
+         */
+        public boolean isHealthy() {
+            return connected == servers;
+        }
+
+        /**
+         * Get the number of devices over all servers.
+         *
+         * @return devices
+         */
+        public int getDevices() {
+            return devices;
+        }
+
+        /**
+         * Get the number of requests waiting for a reply.
+         *
+         * @return pending requests
+         */
+        public int getPendingRequests() {
+            return pendingRequests;
+        }
+
+        /**
+         * Get the number of requests in flight or waiting for a permit in in-flight windows.
+         *
+         * @return queue depth
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Get the number of requests turned away or dropped by in-flight windows.
+         *
+         * @return rejected requests
+         */
+        public long getRejectedRequests() {
+            return rejectedRequests;
+        }
+
+        /**
+         * Get the number of requests that timed out.
+         *
+         * @return expired requests
+         */
+        public long getExpiredRequests() {
+            return expiredRequests;
+        }
+
+        @Override
+        public String toString() {
+            return "Health{servers=" + servers + ", connected=" + connected + ", reconnecting=" + reconnecting
+                    + ", devices=" + devices
+                    + ", pendingRequests=" + pendingRequests + ", queueDepth=" + queueDepth
+                    + ", rejectedRequests=" + rejectedRequests + ", expiredRequests=" + expiredRequests + '}';
+        }
+    }
+}
@@ -3,47 +3,68 @@ package io.github.blackspherefollower.buttplug4j.connectors.jetty.websocket.clie
 import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
 import io.github.blackspherefollower.buttplug4j.client.ButtplugClientException;
 import io.github.blackspherefollower.buttplug4j.client.IConnectedEvent;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.*;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.frames.PingFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
 
-import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ButtplugClientWSClient using Jetty.
  */
-@WebSocket(maxTextMessageSize = 64 * 1024)
+@WebSocket(maxTextMessageSize = 64 * 1024, maxBinaryMessageSize = 64 * 1024)
 public final class ButtplugClientWSClient extends ButtplugClient {
 
     /**
      * Connection timeout.
      */
     private static final int TENSEC = 10000;
+    /**
+     * Websocket ping payload.
+     */
+    private static final byte[] PING_PAYLOAD = "ping".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Reusable frame for raw text writes.
+     */
+    private final TextFrame textFrame = new TextFrame();
     /**
      * Jetty websocket client.
      */
     private WebSocketClient client;
+    /**
+     * Whether the websocket client was created by this connection, and is stopped with it.
+     */
+    private boolean ownsClient;
+    /**
+     * Server URL, kept for reconnecting.
+     */
+    private URI serverUrl;
     /**
      * Jetty websocket session.
      */
-    private Session session;
+    private volatile Session session;
     /**
-     * WebSocket ping timer.
+     * WebSocket ping task, or null when not connected.
      */
-    private Timer wsPingTimer;
+    private ScheduledFuture<?> wsPingTask;
 
     /**
      * Constructor.
@@ -54,6 +75,16 @@ public final class ButtplugClientWSClient extends ButtplugClient {
         super(clientName);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param clientName client name
+     * @param codec      wire codec
+     */
+    public ButtplugClientWSClient(final String clientName, final ButtplugCodec codec) {
+        super(clientName, codec);
+    }
+
     /**
      * Connect to server.
      *
@@ -61,6 +92,18 @@ public final class ButtplugClientWSClient extends ButtplugClient {
      * @throws Exception if connection fails
      */
     public void connect(final URI url) throws Exception {
+        connect(url, null);
+    }
+
+    /**
+     * Connect to server over a websocket client shared with other connections, e.g. by a
+     * {@link ButtplugClientPool}. The websocket client must be started, and is left running on disconnect.
+     *
+     * @param url       server URL
+     * @param transport started websocket client, or null to create one for this connection
+     * @throws Exception if connection fails
+     */
+    public void connect(final URI url, final WebSocketClient transport) throws Exception {
 
         if (client != null && session != null && session.isOpen()) {
             throw new IllegalStateException("WS is already open");
@@ -72,8 +115,15 @@ public final class ButtplugClientWSClient extends ButtplugClient {
         CompletableFuture<Boolean> promise = new CompletableFuture<>();
         setOnConnected(c -> promise.complete(true));
 
-        client = new WebSocketClient();
-        client.start();
+        if (transport == null) {
+            client = new WebSocketClient();
+            client.start();
+            ownsClient = true;
+        } else {
+            client = transport;
+            ownsClient = false;
+        }
+        serverUrl = url;
         client.connect(this, url, new ClientUpgradeRequest()).get();
         promise.get();
 
@@ -84,26 +134,56 @@ public final class ButtplugClientWSClient extends ButtplugClient {
         }
     }
 
+    @Override
+    protected boolean canReconnect() {
+        return true;
+    }
+
+    @Override
+    protected void reopen() throws Exception {
+        WebSocketClient transport = client;
+        URI url = serverUrl;
+        if (transport == null || url == null) {
+            throw new IllegalStateException("WS was never connected");
+        }
+        Session old = session;
+        session = null;
+        if (old != null) {
+            old.close();
+        }
+        transport.connect(this, url, new ClientUpgradeRequest()).get(TENSEC, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     protected void cleanup() {
+        stopWsPing();
         if (session != null) {
             session.close();
         }
 
-        LifeCycle.stop(client);
+        if (ownsClient) {
+            LifeCycle.stop(client);
+        }
         client = null;
     }
 
     /**
-     * Called when websocket closes.
+     * Called when websocket closes. Closing a session replaced by a reconnect is ignored.
      *
+     * @param closed     session that closed
      * @param statusCode status code
      * @param reason     reason
      */
     @OnWebSocketClose
-    public void onClose(final int statusCode, final String reason) {
+    public void onClose(final Session closed, final int statusCode, final String reason) {
+        if (session != closed && session != null) {
+            return;
+        }
         this.session = null;
-        setConnectionState(ConnectionState.DISCONNECTED);
+        stopWsPing();
+        if (!connectionLost(null)) {
+            setConnectionState(ConnectionState.DISCONNECTED);
+        }
     }
 
     /**
@@ -116,24 +196,53 @@ public final class ButtplugClientWSClient extends ButtplugClient {
         this.session = aSession;
 
         // Setup websocket ping
-        wsPingTimer = new Timer("wsPingTimer", true);
-        wsPingTimer.scheduleAtFixedRate(new TimerTask() {
+        startWsPing();
+
+        // Handshake without blocking the WS thread
+        doHandshakeAsync();
+    }
+
+    /**
+     * Start pinging the websocket on the client's scheduler.
+     */
+    private synchronized void startWsPing() {
+        stopWsPing();
+        wsPingTask = getScheduler().scheduleAtFixedRate(this::sendWsPing, 0, TENSEC, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop pinging the websocket.
+     */
+    private synchronized void stopWsPing() {
+        if (wsPingTask != null) {
+            wsPingTask.cancel(false);
+            wsPingTask = null;
+        }
+    }
+
+    /**
+     * Send a websocket ping without waiting for it to be written, stopping the pings if the session cannot take it.
+     */
+    private void sendWsPing() {
+        Session current = session;
+        if (current == null || !(current.getRemote() instanceof WebSocketRemoteEndpoint)) {
+            return;
+        }
+        PingFrame ping = new PingFrame();
+        ping.setPayload(ByteBuffer.wrap(PING_PAYLOAD));
+        ((WebSocketRemoteEndpoint) current.getRemote()).uncheckedSendFrame(ping, new WriteCallback() {
             @Override
-            public void run() {
-                try {
-                    if (session != null) {
-                        session.getRemote().sendPing(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)));
-                    }
-                } catch (IOException e) {
-                    wsPingTimer.cancel();
-                    wsPingTimer = null;
-                    throw new RuntimeException(e);
+            public void writeFailed(final Throwable x) {
+                stopWsPing();
+                if (!publishError(new Error(new ButtplugClientException(x.getMessage())))) {
+                    x.printStackTrace();
                 }
             }
-        }, 0, TENSEC);
 
-        // Don't block the WS thread
-        new Thread(() -> doHandshake()).start();
+            @Override
+            public void writeSuccess() {
+            }
+        });
     }
 
     /**
@@ -145,12 +254,28 @@ public final class ButtplugClientWSClient extends ButtplugClient {
     @OnWebSocketMessage
     public void onMessage(final Session sess, final String message) {
         try {
-            List<ButtplugMessage> msgs = getParser().parseJson(message);
-            onMessage(msgs);
+            getCodec().decode(message, this::onMessage);
         } catch (ButtplugProtocolException e) {
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(new Error(e));
-            } else {
+            if (!publishError(new Error(e))) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called when a binary message is received. The payload is decoded in place by the client's codec.
+     *
+     * @param sess    session
+     * @param buf     payload buffer
+     * @param offset  payload offset
+     * @param length  payload length
+     */
+    @OnWebSocketMessage
+    public void onMessage(final Session sess, final byte[] buf, final int offset, final int length) {
+        try {
+            getCodec().decode(buf, offset, length, this::onMessage);
+        } catch (ButtplugProtocolException e) {
+            if (!publishError(new Error(e))) {
                 e.printStackTrace();
             }
         }
@@ -163,35 +288,52 @@ public final class ButtplugClientWSClient extends ButtplugClient {
      */
     @OnWebSocketError
     public void onWebSocketError(final Throwable cause) {
-        if (getErrorHandler() != null) {
-            getErrorHandler().errorReceived(new Error(new ButtplugClientException(cause.getMessage())));
-        } else {
+        if (!publishError(new Error(new ButtplugClientException(cause.getMessage())))) {
             cause.printStackTrace();
         }
-        new Thread(this::disconnect).start();
+        if (!connectionLost(cause)) {
+            // Closing the transport blocks, so keep it off the I/O thread and the scheduler
+            executeBlocking(this::disconnect);
+        }
+    }
+
+    @Override
+    protected boolean supportsRawFrames() {
+        return !getCodec().isBinary();
     }
 
     @Override
-    protected CompletableFuture<ButtplugMessage> sendMessage(final ButtplugMessage msg) {
-        CompletableFuture<ButtplugMessage> promise = scheduleWait(msg.getId(), new CompletableFuture<>());
-        if (session == null) {
-            Error err = new Error("Bad WS state!",
-                    Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID);
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(err);
+    protected void sendRawFrame(final ByteBuffer frame) {
+        Session current = session;
+        if (current == null) {
+            publishError(new Error("Bad WS state!", Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID));
+            return;
+        }
+        synchronized (textFrame) {
+            try {
+                textFrame.setPayload(frame);
+                FutureWriteCallback callback = new FutureWriteCallback();
+                ((WebSocketRemoteEndpoint) current.getRemote()).uncheckedSendFrame(textFrame, callback);
+                callback.get();
+            } catch (Exception e) {
+                Error err = new Error(new ButtplugClientException(e.getMessage()));
+                publishError(err);
+            } finally {
+                textFrame.setPayload((ByteBuffer) null);
             }
-            return CompletableFuture.completedFuture(err);
         }
+    }
 
-        try {
-            session.getRemote().sendStringByFuture(getParser().formatJson(msg)).get();
-        } catch (Exception e) {
-            Error err = new Error(new ButtplugClientException(e.getMessage()), msg.getId());
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(err);
-            }
-            return CompletableFuture.completedFuture(err);
+    @Override
+    protected void writeFrame(final List<ButtplugMessage> msgs) throws Exception {
+        Session current = session;
+        if (current == null) {
+            throw new ButtplugClientException("Bad WS state!");
+        }
+        if (getCodec().isBinary()) {
+            current.getRemote().sendBytesByFuture(ByteBuffer.wrap(getCodec().encode(msgs))).get();
+        } else {
+            current.getRemote().sendStringByFuture(getCodec().encodeText(msgs)).get();
         }
-        return promise;
     }
 }
@@ -76,4 +76,41 @@ public class ButtplugClientWSJettyClientTest {
             client.disconnect();
         }
     }
+
+    @Test
+    public void testPool() throws Exception {
+        try (IntifaceEngineWrapper wrapper = new IntifaceEngineWrapper()) {
+            Thread.sleep(500);
+            WSDMClient wsdev = new WSDMClient(new URI("ws://localhost:" + wrapper.getDport()), "LVS-Fake", "A9816725B");
+            Thread.sleep(500);
+
+            try (ButtplugClientPool pool = new ButtplugClientPool("Java Test")) {
+                ButtplugClientWSClient client = pool.connect("local",
+                        new URI("ws://localhost:" + wrapper.getCport() + "/buttplug"));
+                assertSame(client, pool.getClient("local"));
+                client.startScanning();
+
+                Thread.sleep(500);
+                client.requestDeviceList();
+
+                assertEquals(1, pool.getDevices().size());
+                ButtplugClientPool.DeviceAddress address = pool.getDevices().keySet().iterator().next();
+                assertEquals("local", address.getServerId());
+                assertSame(client.getDevice(address.getDeviceIndex()), pool.getDevice(address));
+                assertNull(pool.getDevice("elsewhere", address.getDeviceIndex()));
+
+                ButtplugClientPool.Health health = pool.getHealth();
+                assertEquals(1, health.getServers());
+                assertTrue(health.isHealthy());
+                assertEquals(1, health.getDevices());
+
+                assertThrows(IllegalStateException.class, () -> pool.connect("local",
+                        new URI("ws://localhost:" + wrapper.getCport() + "/buttplug")));
+
+                assertTrue(pool.disconnect("local"));
+                assertFalse(client.isConnected());
+                assertEquals(0, pool.getHealth().getServers());
+            }
+        }
+    }
 }
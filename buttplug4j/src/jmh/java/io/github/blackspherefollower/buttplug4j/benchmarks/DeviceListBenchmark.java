@@ -0,0 +1,178 @@
+package io.github.blackspherefollower.buttplug4j.benchmarks;
+
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse and format cost of a DeviceList carrying 50 devices with a full set of output and input descriptors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeviceListBenchmark {
+
+    /**
+     * Number of devices in the list.
+     */
+    private static final int DEVICE_COUNT = 50;
+
+    /**
+     * Parser under test.
+     */
+    private ButtplugJsonMessageParser parser;
+    /**
+     * Parser keeping devices lazily.
+     */
+    private ButtplugJsonMessageParser lazyParser;
+    /**
+     * Serialised DeviceList.
+     */
+    private String json;
+    /**
+     * Parsed DeviceList.
+     */
+    private List<ButtplugMessage> msgs;
+    /**
+     * Client already holding the devices.
+     */
+    private NullClient client;
+    /**
+     * Client already holding the lazily decoded devices.
+     */
+    private NullClient lazyClient;
+
+    /**
+     * Build the DeviceList payload.
+     *
+     * @throws ButtplugProtocolException if the payload cannot be parsed
+     */
+    @Setup
+    public void setup() throws ButtplugProtocolException {
+        parser = new ButtplugJsonMessageParser();
+        lazyParser = new ButtplugJsonMessageParser(false, true);
+        json = deviceList(DEVICE_COUNT);
+        msgs = parser.parseJson(json);
+        client = new NullClient();
+        client.onMessage(msgs);
+        lazyClient = new NullClient();
+        lazyClient.onMessage(lazyParser.parseJson(json));
+    }
+
+    /**
+     * Build a DeviceList message.
+     *
+     * @param count number of devices
+     * @return the message as JSON
+     */
+    static String deviceList(final int count) {
+        StringBuilder sb = new StringBuilder("[{\"DeviceList\":{\"Id\":1,\"Devices\":{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(i).append("\":{\"DeviceIndex\":").append(i)
+                    .append(",\"DeviceName\":\"Device ").append(i)
+                    .append("\",\"DeviceMessageTimingGap\":0,\"DeviceFeatures\":{")
+                    .append("\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Motor\",\"Output\":{")
+                    .append("\"Vibrate\":{\"Value\":[0,20]},\"Rotate\":{\"Value\":[0,20]},")
+                    .append("\"Oscillate\":{\"Value\":[0,20]},\"Constrict\":{\"Value\":[0,20]},")
+                    .append("\"HwPositionWithDuration\":{\"Value\":[0,100],\"Duration\":[0,2000]}}},")
+                    .append("\"1\":{\"FeatureIndex\":1,\"FeatureDescription\":\"Sensors\",\"Input\":{")
+                    .append("\"Battery\":{\"Command\":[\"Read\"],\"Value\":[[0,100]]},")
+                    .append("\"RSSI\":{\"Command\":[\"Read\"],\"Value\":[[-100,0]]},")
+                    .append("\"Button\":{\"Command\":[\"Subscribe\"],\"Value\":[[0,1]]},")
+                    .append("\"Pressure\":{\"Command\":[\"Read\",\"Subscribe\"],\"Value\":[[0,1000]]}}}}}");
+        }
+        return sb.append("}}}]").toString();
+    }
+
+    /**
+     * Parse the DeviceList.
+     *
+     * @return parsed messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    @Benchmark
+    public List<ButtplugMessage> parse() throws ButtplugProtocolException {
+        return parser.parseJson(json);
+    }
+
+    /**
+     * Parse the DeviceList, keeping each device as raw JSON.
+     *
+     * @return parsed messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    @Benchmark
+    public List<ButtplugMessage> parseLazy() throws ButtplugProtocolException {
+        return lazyParser.parseJson(json);
+    }
+
+    /**
+     * Parse an unchanged DeviceList and apply it to a client.
+     *
+     * @return the client
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    @Benchmark
+    public ButtplugClient clientUpdate() throws ButtplugProtocolException {
+        client.onMessage(parser.parseJson(json));
+        return client;
+    }
+
+    /**
+     * Parse an unchanged DeviceList lazily and apply it to a client.
+     *
+     * @return the client
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    @Benchmark
+    public ButtplugClient clientUpdateLazy() throws ButtplugProtocolException {
+        lazyClient.onMessage(lazyParser.parseJson(json));
+        return lazyClient;
+    }
+
+    /**
+     * Format the DeviceList.
+     *
+     * @return formatted JSON
+     * @throws ButtplugProtocolException if formatting fails
+     */
+    @Benchmark
+    public String format() throws ButtplugProtocolException {
+        return parser.formatJson(msgs);
+    }
+
+    /**
+     * Client that never sends anything.
+     */
+    static final class NullClient extends ButtplugClient {
+
+        /**
+         * Constructor.
+         */
+        NullClient() {
+            super("Benchmark");
+        }
+
+        @Override
+        protected void writeFrame(final List<ButtplugMessage> msgs) {
+        }
+
+        @Override
+        protected void cleanup() {
+        }
+    }
+}
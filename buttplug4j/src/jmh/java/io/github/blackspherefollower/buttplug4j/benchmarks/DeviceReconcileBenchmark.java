@@ -0,0 +1,138 @@
+package io.github.blackspherefollower.buttplug4j.benchmarks;
+
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClientDevice;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying an already parsed DeviceList of 500 devices to a client when one device changes per update. Each
+ * call alternates between two lists that differ only in the display name of one device, so every update reports one
+ * changed device. The rebuild baseline builds a client device for every listed device and compares it with the known
+ * one, as the client did before reconciling in place.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeviceReconcileBenchmark {
+
+    /**
+     * Number of devices in the list.
+     */
+    private static final int DEVICE_COUNT = 500;
+
+    /**
+     * The two alternating lists, eagerly decoded.
+     */
+    private final List<ButtplugMessage>[] lists = newPair();
+    /**
+     * The two alternating lists, decoded lazily.
+     */
+    private final List<ButtplugMessage>[] lazyLists = newPair();
+    /**
+     * Client holding the eagerly decoded devices.
+     */
+    private DeviceListBenchmark.NullClient client;
+    /**
+     * Client holding the lazily decoded devices.
+     */
+    private DeviceListBenchmark.NullClient lazyClient;
+    /**
+     * Devices of the eager client by index, for the rebuild baseline.
+     */
+    private final Map<Integer, ButtplugClientDevice> known = new HashMap<>();
+    /**
+     * Number of updates applied, selecting the next list.
+     */
+    private int updates;
+
+    /**
+     * Parse both lists and apply the first.
+     *
+     * @throws ButtplugProtocolException if the payload cannot be parsed
+     */
+    @Setup
+    public void setup() throws ButtplugProtocolException {
+        String json = DeviceListBenchmark.deviceList(DEVICE_COUNT);
+        String changed = json.replace("\"DeviceIndex\":" + (DEVICE_COUNT / 2) + ",", "\"DeviceIndex\":"
+                + (DEVICE_COUNT / 2) + ",\"DeviceDisplayName\":\"Renamed\",");
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        ButtplugJsonMessageParser lazyParser = new ButtplugJsonMessageParser(false, true);
+        lists[0] = parser.parseJson(json);
+        lists[1] = parser.parseJson(changed);
+        lazyLists[0] = lazyParser.parseJson(json);
+        lazyLists[1] = lazyParser.parseJson(changed);
+        client = new DeviceListBenchmark.NullClient();
+        client.onMessage(lists[0]);
+        lazyClient = new DeviceListBenchmark.NullClient();
+        lazyClient.onMessage(lazyLists[0]);
+        for (ButtplugClientDevice device : client.getDevices()) {
+            known.put(device.getDeviceIndex(), device);
+        }
+    }
+
+    /**
+     * Apply the next eagerly decoded list.
+     *
+     * @return the client
+     */
+    @Benchmark
+    public ButtplugClient reconcile() {
+        client.onMessage(lists[++updates & 1]);
+        return client;
+    }
+
+    /**
+     * Apply the next lazily decoded list; unchanged devices are skipped by fingerprint.
+     *
+     * @return the client
+     */
+    @Benchmark
+    public ButtplugClient reconcileLazy() {
+        lazyClient.onMessage(lazyLists[++updates & 1]);
+        return lazyClient;
+    }
+
+    /**
+     * Build and compare a client device for every device in the next list, as a full rebuild would.
+     *
+     * @return number of devices that differ from the client's
+     */
+    @Benchmark
+    public int rebuild() {
+        DeviceList list = (DeviceList) lists[++updates & 1].get(0);
+        int differ = 0;
+        for (Map.Entry<Integer, Device> entry : list.getDevices().entrySet()) {
+            ButtplugClientDevice rebuilt = new ButtplugClientDevice(client, entry.getValue());
+            if (!rebuilt.equals(known.get(entry.getKey()))) {
+                differ++;
+            }
+        }
+        return differ;
+    }
+
+    /**
+     * Allocate a pair of list slots.
+     *
+     * @return empty pair
+     */
+    @SuppressWarnings("unchecked")
+    private static List<ButtplugMessage>[] newPair() {
+        return (List<ButtplugMessage>[]) new List<?>[2];
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.blackspherefollower.buttplug4j.benchmarks;
+
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClientDeviceFeature;
+import io.github.blackspherefollower.buttplug4j.client.ButtplugDeviceFeatureException;
+import io.github.blackspherefollower.buttplug4j.client.ButtplugOutput;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sending one vibrate command through the future returning path and through the fire-and-forget raw frame
+ * path. Run with the gc profiler (enabled in the build) to compare the allocation rate: the raw path should report
+ * close to zero bytes per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutputCmdBenchmark {
+
+    /**
+     * Number of distinct values cycled through, so the encoded frames are not all identical.
+     */
+    private static final int VALUES = 64;
+
+    /**
+     * Client that encodes every message with the codec.
+     */
+    private FrameClient client;
+    /**
+     * Feature on {@link #client}.
+     */
+    private ButtplugClientDeviceFeature feature;
+    /**
+     * Next value index.
+     */
+    private int next;
+
+    /**
+     * Build the client and its device.
+     *
+     * @throws ButtplugProtocolException if the device list cannot be parsed
+     */
+    @Setup
+    public void setup() throws ButtplugProtocolException {
+        client = new FrameClient();
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(DeviceListBenchmark.deviceList(1)));
+        feature = client.getDevices().get(0).getDeviceFeatures().get(0);
+    }
+
+    /**
+     * Get the next value to send.
+     *
+     * @return value between 0 and 1
+     */
+    private float nextValue() {
+        next = (next + 1) % VALUES;
+        return next / (float) VALUES;
+    }
+
+    /**
+     * Send through the future returning path.
+     *
+     * @return reply future
+     * @throws ButtplugDeviceFeatureException if the command is rejected
+     */
+    @Benchmark
+    public Future<ButtplugMessage> runVibrateFloat() throws ButtplugDeviceFeatureException {
+        return feature.runVibrateFloat(nextValue());
+    }
+
+    /**
+     * Send through the fire-and-forget path.
+     *
+     * @return checksum of the written frames
+     * @throws ButtplugDeviceFeatureException if the command is rejected
+     */
+    @Benchmark
+    public long sendOutputFloat() throws ButtplugDeviceFeatureException {
+        feature.sendOutputFloat(ButtplugOutput.VIBRATE, nextValue());
+        return client.getChecksum();
+    }
+
+    /**
+     * Client that encodes messages like a connector would and discards the frames.
+     */
+    static final class FrameClient extends ButtplugClient {
+
+        /**
+         * Sum of the frame lengths written so far, to keep the work observable.
+         */
+        private long checksum;
+
+        /**
+         * Constructor.
+         */
+        FrameClient() {
+            super("Benchmark", new ButtplugJsonMessageParser(true));
+        }
+
+        /**
+         * Get the checksum.
+         *
+         * @return sum of the frame lengths
+         */
+        long getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        protected void writeFrame(final List<ButtplugMessage> msgs) throws ButtplugProtocolException {
+            checksum += getCodec().encode(msgs).length;
+            // Reply straight away so the pending table does not grow
+            for (ButtplugMessage msg : msgs) {
+                onMessage(new Ok(msg.getId()));
+            }
+        }
+
+        @Override
+        protected boolean supportsRawFrames() {
+            return true;
+        }
+
+        @Override
+        protected void sendRawFrame(final ByteBuffer frame) {
+            checksum += frame.remaining();
+        }
+
+        @Override
+        protected void cleanup() {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.blackspherefollower.buttplug4j.benchmarks;
+
+import io.github.blackspherefollower.buttplug4j.client.ButtplugClient;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Register-and-answer cost of a request with 8 concurrent senders, comparing the boxed ConcurrentHashMap the client
+ * used to keep pending requests in against the client's ring based table. The client path goes through onMessage, so
+ * it also pays for reply dispatch.
+ */
+@State(Scope.Benchmark)
+@Threads(PendingRequestBenchmark.SENDERS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PendingRequestBenchmark {
+
+    /**
+     * Number of threads sending requests at once.
+     */
+    static final int SENDERS = 8;
+
+    /**
+     * Pending requests keyed by boxed ID, as the client used to store them.
+     */
+    private final ConcurrentHashMap<Integer, CompletableFuture<ButtplugMessage>> map = new ConcurrentHashMap<>();
+    /**
+     * ID counter for the map.
+     */
+    private final AtomicInteger mapIds = new AtomicInteger(1);
+    /**
+     * Client holding the ring based table.
+     */
+    private final TableClient client = new TableClient();
+
+    /**
+     * Stop the client's timer.
+     */
+    @TearDown
+    public void tearDown() {
+        client.disconnect();
+    }
+
+    /**
+     * Register and answer a request in the map.
+     *
+     * @return reply
+     */
+    @Benchmark
+    public ButtplugMessage concurrentHashMap() {
+        int id = mapIds.getAndUpdate(i -> i == Integer.MAX_VALUE ? 1 : i + 1);
+        CompletableFuture<ButtplugMessage> promise = new CompletableFuture<>();
+        map.put(id, promise);
+        map.remove(id).complete(new Ok(id));
+        return promise.getNow(null);
+    }
+
+    /**
+     * Register and answer a request through the client.
+     *
+     * @return reply
+     */
+    @Benchmark
+    public ButtplugMessage pendingRequestTable() {
+        int id = client.getNextMsgId();
+        CompletableFuture<ButtplugMessage> promise = client.register(id);
+        client.onMessage(new Ok(id));
+        return promise.getNow(null);
+    }
+
+    /**
+     * Client that only registers requests.
+     */
+    static final class TableClient extends ButtplugClient {
+
+        /**
+         * Constructor.
+         */
+        TableClient() {
+            super("Benchmark");
+        }
+
+        /**
+         * Register a request.
+         *
+         * @param id message ID
+         * @return future
+         */
+        CompletableFuture<ButtplugMessage> register(final int id) {
+            return scheduleWait(id, new CompletableFuture<>());
+        }
+
+        @Override
+        protected void writeFrame(final List<ButtplugMessage> msgs) {
+        }
+
+        @Override
+        protected void cleanup() {
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks for the Buttplug protocol and client.
+ */
+package io.github.blackspherefollower.buttplug4j.benchmarks;
@@ -1,14 +1,18 @@
 package io.github.blackspherefollower.buttplug4j.client;
 
+import io.github.blackspherefollower.buttplug4j.ButtplugException;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugCodec;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugDeviceMessage;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.OutputCmdFrameWriter;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceList;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Ping;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.RequestDeviceList;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.RequestServerInfo;
@@ -19,19 +23,27 @@ import io.github.blackspherefollower.buttplug4j.protocol.messages.StopCmd;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.StopScanning;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ButtplugClient is the abstract class containing the bulk of the logic for communicating with the Buttplug.io sever
@@ -47,38 +59,127 @@ public abstract class ButtplugClient {
      */
     static final int MAX_DISCONNECT_MESSAGE_TRYS = 3;
     /**
-     * JSON parser.
+     * Default time to wait for a reply, in milliseconds.
      */
-    private final ButtplugJsonMessageParser parser;
+    static final long DEFAULT_REQUEST_TIMEOUT = 60_000;
+    /**
+     * Precision of request deadlines, in milliseconds.
+     */
+    static final long REQUEST_TIMEOUT_TICK = 100;
+    /**
+     * Number of ring slots for requests waiting for a reply.
+     */
+    static final int REQUEST_TABLE_CAPACITY = 1024;
+    /**
+     * First message ID of the range reserved for fire-and-forget output commands. Regular IDs stay below it.
+     */
+    public static final int UNTRACKED_ID_BASE = 1 << 30;
+    /**
+     * Wire codec.
+     */
+    private final ButtplugCodec codec;
     /**
      * Client name.
      */
     private final String clientName;
     /**
-     * Waiting messages.
+     * Requests waiting for a reply.
      */
-    private final ConcurrentHashMap<Integer, CompletableFuture<ButtplugMessage>> waitingMsgs =
-            new ConcurrentHashMap<>();
+    private final PendingRequestTable waitingMsgs = new PendingRequestTable(
+            TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT_TICK), REQUEST_TABLE_CAPACITY, this::getScheduler);
     /**
-     * Connected devices.
+     * Connected devices, replaced as a whole whenever the device list changes.
      */
-    private final ConcurrentHashMap<Integer, ButtplugClientDevice> devices = new ConcurrentHashMap<>();
+    private volatile DeviceSnapshot devices = DeviceSnapshot.EMPTY;
     /**
      * Message ID counter.
      */
     private final AtomicInteger msgId = new AtomicInteger(1);
     /**
-     * Send lock.
+     * Fire-and-forget message IDs and their targets.
+     */
+    private final UntrackedTargets untracked = new UntrackedTargets();
+    /**
+     * Whether output commands from devices are sent fire-and-forget.
+     */
+    private volatile boolean fireAndForgetOutputs;
+    /**
+     * Writer for fire-and-forget output frames, or null if the codec is not JSON.
+     */
+    private final OutputCmdFrameWriter frameWriter;
+    /**
+     * Handlers that update client state, run for every message including replies.
+     */
+    private final MessageHandlerTable stateHandlers = new MessageHandlerTable();
+    /**
+     * Handlers for unsolicited messages.
      */
-    private final Object sendLock = new Object();
+    private final MessageHandlerTable eventHandlers = new MessageHandlerTable();
+    /**
+     * Time to wait for a reply, in nanoseconds.
+     */
+    private volatile long requestTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REQUEST_TIMEOUT);
+    /**
+     * Age up to which battery and RSSI reads are served from the latest reading, in nanoseconds; 0 to always read.
+     */
+    private volatile long inputCacheTtl;
+    /**
+     * Age from which a cached read also refreshes the reading in the background, in nanoseconds; 0 to never.
+     */
+    private volatile long inputCacheRefresh;
+    /**
+     * Executor for delayed and periodic client and connector work.
+     */
+    private volatile ScheduledExecutorService scheduler = getDefaultScheduler();
+    /**
+     * Executor for blocking work such as opening and closing the transport.
+     */
+    private volatile Executor blockingExecutor = getDefaultBlockingExecutor();
+    /**
+     * In-flight window, or null if the number of requests in flight is not bounded.
+     */
+    private volatile RequestWindow window;
+    /**
+     * Number of requests the in-flight window turned away or dropped.
+     */
+    private final AtomicLong rejectedRequests = new AtomicLong();
     /**
      * Connection state.
      */
     private ConnectionState connectionState = ConnectionState.DISCONNECTED;
     /**
-     * Ping timer.
+     * Periodic ping task, or null when the server does not require pings.
      */
-    private Timer pingTimer;
+    private ScheduledFuture<?> pingTask;
+    /**
+     * When to reconnect after losing the connection, or null to stay disconnected.
+     */
+    private volatile ReconnectPolicy reconnectPolicy;
+    /**
+     * Whether the connection was lost and the client is getting it back. Changed while holding this.
+     */
+    private volatile boolean reconnecting;
+    /**
+     * Number of reconnect attempts since the connection was lost. Guarded by this.
+     */
+    private int reconnectAttempts;
+    /**
+     * Next reconnect attempt, or null if none is scheduled. Guarded by this.
+     */
+    private ScheduledFuture<?> reconnectTask;
+    /**
+     * Whether the next DeviceList is the first after a reconnect, and is matched to the known devices by name and
+     * features rather than by index.
+     */
+    private volatile boolean remapDevices;
+    /**
+     * Listeners for client events.
+     */
+    private final ButtplugEventBus events = new ButtplugEventBus();
+    /**
+     * Input publishers by device, feature and input type.
+     */
+    private final InputPublisherTable inputPublishers = new InputPublisherTable();
     /**
      * Device added handler.
      */
@@ -114,17 +215,46 @@ public abstract class ButtplugClient {
      * @param aClientName client name
      */
     public ButtplugClient(final String aClientName) {
-        parser = new ButtplugJsonMessageParser();
+        this(aClientName, new ButtplugJsonMessageParser());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aClientName client name
+     * @param aCodec      wire codec, e.g. a ButtplugJsonMessageParser using the hand-written codec
+     */
+    public ButtplugClient(final String aClientName, final ButtplugCodec aCodec) {
+        codec = aCodec;
         clientName = aClientName;
+        frameWriter = aCodec instanceof ButtplugJsonMessageParser ? new OutputCmdFrameWriter() : null;
+
+        stateHandlers.put(DeviceList.class, this::onDeviceList);
+        stateHandlers.put(InputReading.class, this::recordInput);
+        eventHandlers.put(ScanningFinished.class,
+                msg -> events.publish(IScanningEvent.class, IScanningEvent::scanningFinished));
+        eventHandlers.put(Error.class, this::publishError);
+        eventHandlers.put(InputReading.class, this::onInputReading);
+    }
+
+    /**
+     * Get the wire codec.
+     *
+     * @return codec
+     */
+    protected final ButtplugCodec getCodec() {
+        return codec;
     }
 
     /**
      * Get the JSON parser.
      *
-     * @return parser
+     * @return parser, or null if the client uses a codec other than ButtplugJsonMessageParser
+     * @deprecated use {@link #getCodec()}
      */
+    @Deprecated
     protected final ButtplugJsonMessageParser getParser() {
-        return parser;
+        return codec instanceof ButtplugJsonMessageParser ? (ButtplugJsonMessageParser) codec : null;
     }
 
     /**
@@ -160,7 +290,51 @@ public abstract class ButtplugClient {
      * @return message ID
      */
     public final int getNextMsgId() {
-        return msgId.getAndIncrement();
+        // IDs must stay positive, as replies with an ID of 0 or below are treated as events, and below the
+        // fire-and-forget range
+        return msgId.getAndUpdate(id -> id == UNTRACKED_ID_BASE - 1 ? 1 : id + 1);
+    }
+
+    /**
+     * Get a message ID from the fire-and-forget range for an output command, remembering its target so an Error
+     * reply can be reported with it. The memory is best effort: it only holds the most recent commands.
+     *
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @return message ID
+     */
+    final int getUntrackedMsgId(final long deviceIndex, final int featureIndex) {
+        return untracked.next(deviceIndex, featureIndex);
+    }
+
+    /**
+     * Check if a message ID is in the fire-and-forget range.
+     *
+     * @param id message ID
+     * @return true if no reply is awaited for the ID
+     */
+    public static boolean isUntrackedMsgId(final int id) {
+        return id >= UNTRACKED_ID_BASE;
+    }
+
+    /**
+     * Set whether output commands sent through devices and features (runOutput, runVibrate and the like) are sent
+     * fire-and-forget: no waiter is registered, their futures complete at once with an Ok, Ok replies are discarded
+     * and Error replies go to the error handler with the device and feature they were for.
+     *
+     * @param enabled true to send output commands fire-and-forget
+     */
+    public final void setFireAndForgetOutputs(final boolean enabled) {
+        fireAndForgetOutputs = enabled;
+    }
+
+    /**
+     * Check whether output commands are sent fire-and-forget.
+     *
+     * @return true if enabled
+     */
+    public final boolean isFireAndForgetOutputs() {
+        return fireAndForgetOutputs;
     }
 
     /**
@@ -170,167 +344,621 @@ public abstract class ButtplugClient {
      */
     public final void onMessage(final List<ButtplugMessage> msgs) {
         for (ButtplugMessage msg : msgs) {
-            if (msg instanceof DeviceList) {
-                ArrayList<Integer> curDevs = new ArrayList<Integer>();
-                for (Map.Entry<Integer, ButtplugClientDevice> dev : devices.entrySet()) {
-                    curDevs.add(dev.getKey());
-                }
+            onMessage(msg);
+        }
+    }
 
-                HashMap<Integer, Device> newDevices = ((DeviceList) msg).getDevices();
-                ArrayList<Integer> newDevs = new ArrayList<Integer>(newDevices.keySet());
-
-                curDevs.sort(Integer::compare);
-                newDevs.sort(Integer::compare);
-
-                int curIdx = 0;
-                int newIdx = 0;
-                while (curIdx < curDevs.size() && newIdx < newDevs.size()) {
-                    int compare = curDevs.get(curIdx) - newDevs.get(newIdx);
-
-                    if (compare > 0) {
-                        devices.put(newDevs.get(newIdx),
-                                new ButtplugClientDevice(this, newDevices.get(newDevs.get(newIdx))));
-                        if (getDeviceAddedHandler() != null) {
-                            getDeviceAddedHandler().deviceAdded(devices.get(newDevs.get(newIdx)));
-                        }
-                        newIdx++;
-                    } else if (compare < 0) {
-                        devices.remove(curDevs.get(curIdx));
-                        if (getDeviceRemovedHandler() != null) {
-                            getDeviceRemovedHandler().deviceRemoved(curDevs.get(curIdx));
-                        }
-                        curIdx++;
-                    } else {
-                        // Same index, diff to see if updated
-                        ButtplugClientDevice newDev =
-                                new ButtplugClientDevice(this, newDevices.get(newDevs.get(newIdx)));
-                        if (!newDev.equals(devices.get(curDevs.get(curIdx)))) {
-                            devices.put(newDevs.get(newIdx), newDev);
-                            if (getDeviceChanged() != null) {
-                                getDeviceChanged().deviceChanged(devices.get(newDevs.get(newIdx)));
-                            }
-                        }
-                        newIdx++;
-                        curIdx++;
-                    }
-                }
+    /**
+     * Called when a single message is received. Transports that decode messages one at a time should call this
+     * directly rather than collecting them into a list first.
+     *
+     * @param msg message
+     */
+    public final void onMessage(final ButtplugMessage msg) {
+        // Listeners sending requests from here must not wait for the window these replies free
+        boolean marked = RequestWindow.beginNoWait();
+        try {
+            handleMessage(msg);
+        } finally {
+            if (marked) {
+                RequestWindow.endNoWait();
+            }
+        }
+    }
 
-                while (curIdx < curDevs.size()) {
-                    devices.remove(curDevs.get(curIdx));
-                    if (getDeviceRemovedHandler() != null) {
-                        getDeviceRemovedHandler().deviceRemoved(curDevs.get(curIdx));
-                    }
-                    curIdx++;
-                }
-                while (newIdx < newDevs.size()) {
-                    devices.put(newDevs.get(newIdx),
-                            new ButtplugClientDevice(this, newDevices.get(newDevs.get(newIdx))));
-                    if (getDeviceAddedHandler() != null) {
-                        getDeviceAddedHandler().deviceAdded(devices.get(newDevs.get(newIdx)));
-                    }
-                    newIdx++;
-                }
+    /**
+     * Dispatch a received message to the request waiting for it, or to the handlers and listeners.
+     *
+     * @param msg message
+     */
+    private void handleMessage(final ButtplugMessage msg) {
+        if (isUntrackedMsgId(msg.getId())) {
+            // Reply to a fire-and-forget command: only errors are of interest
+            if (msg instanceof Error) {
+                eventHandlers.dispatch(untracked.describe((Error) msg));
             }
+            return;
+        }
 
-            if (msg.getId() > 0) {
-                CompletableFuture<ButtplugMessage> val = waitingMsgs.remove(msg.getId());
-                if (val != null) {
-                    val.complete(msg);
-                    continue;
-                }
+        stateHandlers.dispatch(msg);
+
+        if (msg.getId() > 0) {
+            CompletableFuture<ButtplugMessage> val = waitingMsgs.remove(msg.getId());
+            if (val != null) {
+                val.complete(msg);
+                return;
             }
+        }
 
-            if (msg instanceof ScanningFinished) {
-                if (getScanningFinishedHandler() != null) {
-                    getScanningFinishedHandler().scanningFinished();
-                }
-            } else if (msg instanceof Error) {
-                if (getErrorHandler() != null) {
-                    getErrorHandler().errorReceived((Error) msg);
-                }
-            } else if (msg instanceof InputReading) {
-                if (getInputHandler() != null) {
-                    getInputHandler().inputEvent((InputReading) msg);
+        eventHandlers.dispatch(msg);
+    }
+
+    /**
+     * Register a handler for unsolicited messages of a type, i.e. messages that are not a reply to a request sent by
+     * this client. This replaces any existing handler for the type, including the built-in handlers that forward
+     * ScanningFinished, Error and InputReading messages to the event handlers set on this client.
+     * <p>
+     * New message types must also be registered with the codec so they can be decoded, see
+     * {@link io.github.blackspherefollower.buttplug4j.protocol.ButtplugJacksonCodec#registerMessageType}.
+     *
+     * @param type    message class
+     * @param handler handler, or null to remove the handler for the type
+     * @param <T>     message type
+     */
+    public final <T extends ButtplugMessage> void registerMessageHandler(final Class<T> type,
+                                                                        final IMessageHandler<? super T> handler) {
+        eventHandlers.put(type, handler);
+    }
+
+    /**
+     * Get the handler for unsolicited messages of a type.
+     *
+     * @param type message class
+     * @return handler, or null if none is registered
+     */
+    public final IMessageHandler<?> getMessageHandler(final Class<? extends ButtplugMessage> type) {
+        return eventHandlers.get(type);
+    }
+
+    /**
+     * Apply a DeviceList to the set of known devices, notifying the device added, changed and removed handlers.
+     * <p>
+     * Known devices are patched in place rather than rebuilt, so a device that did not change costs one comparison
+     * (or one fingerprint check, for lazily decoded devices) and keeps its instance, and a changed device keeps its
+     * instance and every feature that did not change. If anything changed, a new snapshot is published before any
+     * handler runs.
+     *
+     * @param msg device list
+     */
+    private void onDeviceList(final DeviceList msg) {
+        if (remapDevices) {
+            remapDevices = false;
+            remapDeviceList(msg);
+            return;
+        }
+        DeviceSnapshot current = devices;
+        HashMap<Integer, Device> newDevices = msg.getDevices();
+        List<ButtplugClientDevice> removed = new ArrayList<>(0);
+        List<ButtplugClientDevice> added = new ArrayList<>(0);
+        List<ButtplugClientDevice> changed = new ArrayList<>(0);
+        for (ButtplugClientDevice dev : current.getDevices()) {
+            if (!newDevices.containsKey(dev.getDeviceIndex())) {
+                removed.add(dev);
+            }
+        }
+        for (Map.Entry<Integer, Device> entry : newDevices.entrySet()) {
+            ButtplugClientDevice curDev = current.getDevice(entry.getKey());
+            if (curDev == null) {
+                ButtplugClientDevice dev = newClientDevice(entry.getValue());
+                if (dev != null) {
+                    added.add(dev);
                 }
+            } else if (updateDevice(curDev, entry.getValue())) {
+                changed.add(curDev);
+            }
+        }
+        if (removed.isEmpty() && added.isEmpty() && changed.isEmpty()) {
+            return;
+        }
+        List<ButtplugClientDevice> next = new ArrayList<>(current.getDevices());
+        next.removeAll(removed);
+        next.addAll(added);
+        publishDevices(next);
+        for (ButtplugClientDevice dev : removed) {
+            publishDeviceRemoved(dev.getDeviceIndex());
+        }
+        for (ButtplugClientDevice dev : added) {
+            events.publish(IDeviceAddedEvent.class, l -> l.deviceAdded(dev));
+        }
+        for (ButtplugClientDevice dev : changed) {
+            events.publish(IDeviceChangedEvent.class, l -> l.deviceChanged(dev));
+        }
+    }
+
+    /**
+     * Apply the first DeviceList after a reconnect, matching it to the known devices with {@link DeviceRemap}.
+     * Matched devices keep their instance, listeners, readings and input publishers, and are reported as changed if
+     * their index or anything else changed; the rest are reported as removed and added.
+     *
+     * @param msg device list
+     */
+    private void remapDeviceList(final DeviceList msg) {
+        DeviceRemap remap = new DeviceRemap(devices, msg.getDevices().values());
+        Map<ButtplugClientDevice, Device> matched = remap.getMatched();
+        List<Device> unmatched = remap.getAdded();
+        List<ButtplugClientDevice> unclaimed = remap.getRemoved();
+
+        // Close the publishers of removed devices before moving others onto their indexes
+        for (ButtplugClientDevice dev : unclaimed) {
+            closeInputPublishers(dev.getDeviceIndex());
+        }
+        inputPublishers.move(remap.getMoves());
+
+        List<ButtplugClientDevice> next = new ArrayList<>(matched.size() + unmatched.size());
+        List<ButtplugClientDevice> added = new ArrayList<>(0);
+        List<ButtplugClientDevice> changed = new ArrayList<>(0);
+        IdentityHashMap<ButtplugClientDevice, Integer> moved = new IdentityHashMap<>();
+        for (Map.Entry<ButtplugClientDevice, Device> entry : matched.entrySet()) {
+            ButtplugClientDevice dev = entry.getKey();
+            if (dev.getDeviceIndex() != entry.getValue().getDeviceIndex()) {
+                moved.put(dev, entry.getValue().getDeviceIndex());
+            }
+            if (updateDevice(dev, entry.getValue()) || moved.containsKey(dev)) {
+                changed.add(dev);
+            }
+            next.add(dev);
+        }
+        for (Device device : unmatched) {
+            ButtplugClientDevice dev = newClientDevice(device);
+            if (dev != null) {
+                added.add(dev);
+                next.add(dev);
+            }
+        }
+        publishDevices(next, moved);
+        for (ButtplugClientDevice dev : unclaimed) {
+            int index = dev.getDeviceIndex();
+            events.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(index));
+        }
+        for (ButtplugClientDevice dev : added) {
+            events.publish(IDeviceAddedEvent.class, l -> l.deviceAdded(dev));
+        }
+        for (ButtplugClientDevice dev : changed) {
+            events.publish(IDeviceChangedEvent.class, l -> l.deviceChanged(dev));
+        }
+    }
+
+    /**
+     * Publish a new device snapshot.
+     *
+     * @param next devices
+     */
+    private synchronized void publishDevices(final Collection<ButtplugClientDevice> next) {
+        devices = new DeviceSnapshot(devices.getVersion() + 1, next);
+    }
+
+    /**
+     * Publish a new device snapshot and move devices to their new indexes. The snapshot files them under their new
+     * indexes, so older snapshots, which file them under their old ones, are left as they were.
+     *
+     * @param next  devices
+     * @param moves new index of each device that moves
+     */
+    private synchronized void publishDevices(final Collection<ButtplugClientDevice> next,
+                                             final Map<ButtplugClientDevice, Integer> moves) {
+        devices = new DeviceSnapshot(devices.getVersion() + 1, next,
+                dev -> moves.getOrDefault(dev, dev.getDeviceIndex()));
+        for (Map.Entry<ButtplugClientDevice, Integer> move : moves.entrySet()) {
+            move.getKey().setDeviceIndex(move.getValue());
+        }
+    }
+
+    /**
+     * Patch a known device, reporting devices whose lazily kept JSON cannot be decoded.
+     *
+     * @param curDev known device
+     * @param device server's description of it
+     * @return true if the device changed
+     */
+    private boolean updateDevice(final ButtplugClientDevice curDev, final Device device) {
+        try {
+            return curDev.update(device);
+        } catch (UncheckedIOException e) {
+            if (!publishError(new Error(new ButtplugClientException(e.getCause())))) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Look up a device by index.
+     *
+     * @param index device index
+     * @return device, or null if unknown
+     */
+    private ButtplugClientDevice findDevice(final long index) {
+        return devices.getDevice(index);
+    }
+
+    /**
+     * Complete the input publishers of a removed device and notify the device removed listeners.
+     *
+     * @param index device index
+     */
+    private void publishDeviceRemoved(final int index) {
+        closeInputPublishers(index);
+        events.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(index));
+    }
+
+    /**
+     * Store a reading, whether a reply or a subscription event, as the latest value of its input.
+     *
+     * @param msg reading
+     */
+    private void recordInput(final InputReading msg) {
+        ButtplugClientDevice dev = findDevice(msg.getDeviceIndex());
+        if (dev != null) {
+            dev.recordInput(msg, System.nanoTime());
+        }
+    }
+
+    /**
+     * Pass a reading to its input publisher, to the listeners of its device and feature, and to the input listeners.
+     *
+     * @param msg reading
+     */
+    private void onInputReading(final InputReading msg) {
+        inputPublishers.offer(msg);
+        ButtplugClientDevice dev = findDevice(msg.getDeviceIndex());
+        if (dev != null) {
+            dev.dispatchInput(msg);
+        }
+        events.publish(IInputEvent.class, l -> l.inputEvent(msg));
+    }
+
+    /**
+     * Get the publisher for one input of a device feature. Readings are only requested from the server while the
+     * publisher has subscribers. The publisher completes its subscribers when the device is removed or the client
+     * disconnects; ask for a new one afterwards.
+     *
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @param input        input type
+     * @return publisher
+     */
+    public final InputPublisher getInputPublisher(final int deviceIndex, final int featureIndex,
+                                                  final ButtplugInput input) {
+        return inputPublishers.get(this, deviceIndex, featureIndex, input);
+    }
+
+    /**
+     * Complete and forget the input publishers of a device.
+     *
+     * @param deviceIndex device index, or -1 for every device
+     */
+    private void closeInputPublishers(final long deviceIndex) {
+        inputPublishers.close(deviceIndex);
+    }
+
+    /**
+     * Build a client device, reporting devices whose lazily kept JSON cannot be decoded.
+     *
+     * @param device device
+     * @return client device, or null if the device could not be decoded
+     */
+    private ButtplugClientDevice newClientDevice(final Device device) {
+        try {
+            return new ButtplugClientDevice(this, device);
+        } catch (UncheckedIOException e) {
+            if (!publishError(new Error(new ButtplugClientException(e.getCause())))) {
+                e.printStackTrace();
             }
+            return null;
         }
     }
 
     /**
-     * Perform the handshake with the server.
+     * Perform the handshake with the server, blocking until it has completed.
      */
     protected final void doHandshake() {
-        waitingMsgs.clear();
-        devices.clear();
+        doHandshakeAsync().join();
+    }
+
+    /**
+     * Perform the handshake with the server without blocking, e.g. from a transport's I/O thread. The client is marked
+     * connected and the connected listeners are notified once the handshake has completed; failures are reported
+     * to the error listeners.
+     * <p>
+     * While reconnecting the known devices are kept and matched against the server's device list, and input
+     * subscriptions are sent again once the list has been applied. A failed handshake then counts as a failed
+     * attempt rather than leaving the client connected.
+     *
+     * @return future completed once the handshake has completed, whether or not it succeeded
+     */
+    protected final CompletableFuture<Void> doHandshakeAsync() {
+        boolean resync = reconnecting;
+        // Message IDs restart, so nothing sent before the handshake can be answered any more
+        failPending("Connection reset");
+        if (resync) {
+            remapDevices = true;
+        } else {
+            publishDevices(Collections.<ButtplugClientDevice>emptyList());
+        }
         msgId.set(1);
 
-        try {
-            ButtplugMessage res = sendMessage(new RequestServerInfo(clientName, getNextMsgId()))
-                    .get(1, TimeUnit.MINUTES);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        sendMessage(new RequestServerInfo(clientName, getNextMsgId())).thenCompose(res -> {
             if (res instanceof ServerInfo) {
                 if (((ServerInfo) res).getMaxPingTime() > 0) {
-                    pingTimer = new Timer("pingTimer", true);
-                    pingTimer.scheduleAtFixedRate(new TimerTask() {
-                        @Override
-                        public void run() {
-                            try {
-                                onPingTimer();
-                            } catch (Exception e) {
-                                if (getErrorHandler() != null) {
-                                    getErrorHandler().errorReceived(new Error(new ButtplugClientException(e)));
-                                } else {
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                    }, 0, Math.round(((double) ((ServerInfo) res).getMaxPingTime()) / 2));
+                    startPing(Math.round(((double) ((ServerInfo) res).getMaxPingTime()) / 2));
                 }
-
                 // Populate already connected devices
-                requestDeviceList();
-
+                return sendMessage(new RequestDeviceList(getNextMsgId()));
             } else if (res instanceof Error) {
-                throw new ButtplugClientException(((Error) res).getErrorMessage());
+                return failed(new ButtplugClientException(((Error) res).getErrorMessage()));
             } else {
-                throw new ButtplugClientException("Unexpected message returned: " + res.getClass().getName());
+                return failed(new ButtplugClientException("Unexpected message returned: "
+                        + res.getClass().getName()));
             }
-        } catch (ButtplugClientException | InterruptedException | ExecutionException | TimeoutException e) {
-            if (getErrorHandler() != null) {
-                getErrorHandler().errorReceived(new Error(new ButtplugClientException(e)));
-            } else {
-                e.printStackTrace();
+        }).whenComplete((res, ex) -> {
+            ButtplugClientException failure = null;
+            if (ex != null) {
+                failure = toClientException(ex);
+            } else if (res instanceof Error) {
+                failure = new ButtplugClientException(((Error) res).getErrorMessage());
+            }
+            if (failure != null && !publishError(new Error(failure))) {
+                failure.printStackTrace();
             }
+            if (resync) {
+                remapDevices = false;
+                if (failure != null || !finishReconnect()) {
+                    reconnectFailed(failure);
+                    done.complete(null);
+                    return;
+                }
+            }
+
+            connectionState = ConnectionState.CONNECTED;
+
+            if (resync) {
+                resubscribeInputs();
+            }
+            events.publish(IConnectedEvent.class, l -> l.onConnected(this));
+            done.complete(null);
+        });
+        return done;
+    }
+
+    /**
+     * Start pinging the server on the client's scheduler.
+     *
+     * @param periodMs ping period in milliseconds
+     */
+    private synchronized void startPing(final long periodMs) {
+        if (pingTask != null) {
+            pingTask.cancel(false);
         }
+        pingTask = scheduler.scheduleAtFixedRate(RequestWindow.noWait(this::onPingTimer), 0, periodMs,
+                TimeUnit.MILLISECONDS);
+    }
 
-        connectionState = ConnectionState.CONNECTED;
+    /**
+     * Called when the ping timer expires. Sends a ping without waiting for the reply; a failed or refused ping
+     * disconnects the client.
+     */
+    private void onPingTimer() {
+        sendMessage(new Ping(getNextMsgId())).whenComplete((msg, ex) -> {
+            if (ex == null && !(msg instanceof Error)) {
+                return;
+            }
+            ButtplugClientException e = ex != null ? toClientException(ex)
+                    : new ButtplugClientException(((Error) msg).getErrorMessage());
+            // Disconnect off the thread completing the ping, which may be the transport's or the scheduler's
+            executeBlocking(() -> {
+                if (!connectionLost(e)) {
+                    disconnect();
+                }
+            });
+            if (!publishError(new Error(e))) {
+                e.printStackTrace();
+            }
+        });
+    }
 
-        if (getOnConnectedHandler() != null) {
-            getOnConnectedHandler().onConnected(this);
+    /**
+     * Set the policy for reconnecting after the connection is lost. Without one, a lost connection fails every
+     * pending request, completes every input publisher and leaves the client disconnected. With one, pending
+     * requests are still failed, but the client keeps its devices and input publishers and reconnects with
+     * jittered exponential backoff. Once back, the devices the server lists again are matched to the known
+     * instances by name and features, even if their index changed, and every input subscription is sent again.
+     * The client is connected again, and the connected listeners notified, once this has completed. If the policy
+     * gives up, the client disconnects as it would have without one. The policy is ignored if the connector cannot
+     * reconnect; see {@link #canReconnect()}.
+     *
+     * @param aPolicy policy, or null to not reconnect
+     */
+    public final void setReconnectPolicy(final ReconnectPolicy aPolicy) {
+        reconnectPolicy = aPolicy;
+    }
+
+    /**
+     * Get the policy for reconnecting after the connection is lost.
+     *
+     * @return policy, or null if the client does not reconnect
+     */
+    public final ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Check whether the client lost its connection and is getting it back.
+     *
+     * @return true while reconnecting
+     */
+    public final boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * Called by the connector when the transport closes or fails, or by the client when a ping fails. If the client
+     * was connected and has a reconnect policy, pending requests are failed and a reconnect is scheduled.
+     *
+     * @param cause cause, or null if the transport closed
+     * @return true if the client is reconnecting, in which case the connector must not tear down the client;
+     * false if the connector should treat the connection as closed
+     */
+    protected final boolean connectionLost(final Throwable cause) {
+        ReconnectPolicy policy = reconnectPolicy;
+        synchronized (this) {
+            if (reconnecting) {
+                return true;
+            }
+            if (policy == null || !canReconnect() || connectionState != ConnectionState.CONNECTED) {
+                return false;
+            }
+            reconnecting = true;
+            reconnectAttempts = 0;
+            connectionState = ConnectionState.CONNECTING;
         }
+        failPending("Connection lost!");
+        scheduleReconnect(policy);
+        return true;
+    }
 
+    /**
+     * Check whether the connector can reopen its transport with {@link #reopen()}. If not, a lost connection is
+     * treated as closed whatever the reconnect policy.
+     *
+     * @return true if the connector can reconnect; false unless overridden
+     */
+    protected boolean canReconnect() {
+        return false;
     }
 
     /**
-     * Called when the ping timer expires.
+     * Reopen the transport to the server the client was last connected to, for a reconnect. Only called if
+     * {@link #canReconnect()} returns true. Runs on the blocking executor, never on the client's scheduler, so it may
+     * block until the transport is open; the connector then runs the handshake as on a first connect.
      *
-     * @throws ButtplugClientException if an error occurs
-     * @throws ExecutionException      if an error occurs
-     * @throws InterruptedException    if an error occurs
-     * @throws TimeoutException        if an error occurs
+     * @throws Exception if the transport cannot be opened
      */
-    private void onPingTimer() throws ButtplugClientException, ExecutionException,
-            InterruptedException, TimeoutException {
+    protected void reopen() throws Exception {
+        throw new ButtplugClientException("This connector cannot reconnect");
+    }
+
+    /**
+     * Schedule the next reconnect attempt.
+     *
+     * @param policy reconnect policy
+     */
+    private synchronized void scheduleReconnect(final ReconnectPolicy policy) {
+        if (!reconnecting) {
+            return;
+        }
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+        int attempt = ++reconnectAttempts;
+        reconnectTask = schedule(() -> executeBlocking(this::attemptReconnect), policy.getDelayNanos(attempt),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reopen the transport, on the blocking executor; the handshake that follows completes the reconnect.
+     */
+    private void attemptReconnect() {
+        if (!reconnecting) {
+            return;
+        }
         try {
-            ButtplugMessage msg = sendMessage(new Ping(msgId.incrementAndGet())).get(1, TimeUnit.MINUTES);
-            if (msg instanceof Error) {
-                throw new ButtplugClientException(((Error) msg).getErrorMessage());
+            reopen();
+        } catch (Exception e) {
+            reconnectFailed(e);
+        }
+    }
+
+    /**
+     * Try again after a failed reconnect attempt, or give up and disconnect if the policy says so.
+     *
+     * @param cause cause, or null if unknown
+     */
+    private void reconnectFailed(final Throwable cause) {
+        ReconnectPolicy policy = reconnectPolicy;
+        int attempts;
+        synchronized (this) {
+            if (!reconnecting) {
+                return;
+            }
+            attempts = reconnectAttempts;
+            if (policy != null && policy.allowsRetry(attempts)) {
+                scheduleReconnect(policy);
+                return;
             }
-        } catch (ButtplugClientException | InterruptedException | ExecutionException | TimeoutException e) {
+            reconnecting = false;
+        }
+        ButtplugClientException e = new ButtplugClientException("Reconnect failed after " + attempts + " attempt"
+                + (attempts == 1 ? "" : "s") + (cause != null ? ": " + cause.getMessage() : ""));
+        // A failed handshake lands here on the transport's thread, which must not wait for the transport to close
+        executeBlocking(() -> {
             disconnect();
-            throw e;
+            if (!publishError(new Error(e))) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Mark a reconnect as done.
+     *
+     * @return false if it was abandoned meanwhile, e.g. by {@link #disconnect()}
+     */
+    private synchronized boolean finishReconnect() {
+        if (!reconnecting) {
+            return false;
+        }
+        reconnecting = false;
+        reconnectTask = null;
+        return true;
+    }
+
+    /**
+     * Send every input subscription again after a reconnect.
+     */
+    private void resubscribeInputs() {
+        inputPublishers.resubscribe();
+        for (ButtplugClientDevice dev : devices.getDevices()) {
+            dev.resubscribe();
+        }
+    }
+
+    /**
+     * Complete every request waiting for a reply with an Error.
+     *
+     * @param reason error message
+     */
+    private void failPending(final String reason) {
+        int max = MAX_DISCONNECT_MESSAGE_TRYS;
+        while (max-- > 0 && !waitingMsgs.isEmpty()) {
+            waitingMsgs.completeAll(() -> new Error(reason,
+                    Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID));
         }
     }
 
+    /**
+     * Wrap the cause of a failed stage for the error listeners.
+     *
+     * @param ex failure, possibly a CompletionException
+     * @return client exception
+     */
+    private static ButtplugClientException toClientException(final Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof Exception ? new ButtplugClientException((Exception) cause)
+                : new ButtplugClientException(String.valueOf(cause));
+    }
+
     /**
      * Request the device list from the server.
      *
@@ -341,19 +969,55 @@ public abstract class ButtplugClient {
      */
     public final void requestDeviceList() throws ButtplugClientException, ExecutionException,
             InterruptedException, TimeoutException {
-        Object res = sendMessage(new RequestDeviceList(msgId.incrementAndGet())).get(1, TimeUnit.MINUTES);
+        Object res = awaitReply(sendMessage(new RequestDeviceList(getNextMsgId())));
         if (res instanceof Error) {
             throw new ButtplugClientException(((Error) res).getErrorMessage());
         }
     }
 
     /**
-     * Get the list of connected devices.
+     * Request the device list from the server without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the devices once the list has been applied, or exceptionally with a
+     * {@link TimeoutException} or the exception carried by an Error reply
+     */
+    public final CompletionStage<List<ButtplugClientDevice>> requestDeviceListAsync(final long timeout,
+                                                                                  final TimeUnit unit) {
+        // The DeviceList state handler runs before the reply is matched, so the devices are up to date here
+        return sendMessageAsync(new RequestDeviceList(getNextMsgId()), timeout, unit)
+                .thenApply(reply -> getDevices());
+    }
+
+    /**
+     * Get the list of connected devices. The list is the current snapshot's and is not copied, so this is cheap
+     * enough to call every frame.
      *
-     * @return devices
+     * @return read-only list of devices, ordered by index
      */
     public final List<ButtplugClientDevice> getDevices() {
-        return new ArrayList<>(this.devices.values());
+        return devices.getDevices();
+    }
+
+    /**
+     * Get the current device snapshot. Compare its version with that of a snapshot seen earlier to find out whether
+     * the devices changed in between.
+     *
+     * @return snapshot
+     */
+    public final DeviceSnapshot getDeviceSnapshot() {
+        return devices;
+    }
+
+    /**
+     * Look up a connected device by index.
+     *
+     * @param index device index
+     * @return device, or null if no such device is connected
+     */
+    public final ButtplugClientDevice getDevice(final int index) {
+        return devices.getDevice(index);
     }
 
     /**
@@ -371,126 +1035,429 @@ public abstract class ButtplugClient {
     }
 
     /**
-     * Start scanning for devices asynchronously.
+     * Start scanning for devices asynchronously.
+     *
+     * @return future
+     */
+    public final Future<ButtplugMessage> startScanningAsync() {
+        return sendMessage(new StartScanning(getNextMsgId()));
+    }
+
+    /**
+     * Start scanning for devices without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed once the server acknowledges the request
+     */
+    public final CompletionStage<Void> startScanningAsync(final long timeout, final TimeUnit unit) {
+        return expectOk(sendMessageAsync(new StartScanning(getNextMsgId()), timeout, unit));
+    }
+
+    /**
+     * Stop scanning for devices.
+     *
+     * @return true if successful
+     * @throws ExecutionException   if an error occurs
+     * @throws InterruptedException if an error occurs
+     * @throws TimeoutException     if an error occurs
+     */
+    public final boolean stopScanning() throws ExecutionException, InterruptedException, TimeoutException {
+        return waitForOk(stopScanningAsync());
+    }
+
+    /**
+     * Stop scanning for devices asynchronously.
+     *
+     * @return future
+     */
+    public final Future<ButtplugMessage> stopScanningAsync() {
+        return sendMessage(new StopScanning(getNextMsgId()));
+    }
+
+    /**
+     * Stop scanning for devices without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed once the server acknowledges the request
+     */
+    public final CompletionStage<Void> stopScanningAsync(final long timeout, final TimeUnit unit) {
+        return expectOk(sendMessageAsync(new StopScanning(getNextMsgId()), timeout, unit));
+    }
+
+    /**
+     * Stop all devices.
+     *
+     * @return true if successful
+     * @throws ExecutionException   if an error occurs
+     * @throws InterruptedException if an error occurs
+     * @throws IOException          if an error occurs
+     * @throws TimeoutException     if an error occurs
+     */
+    public final boolean stopAllDevices() throws ExecutionException, InterruptedException,
+            IOException, TimeoutException {
+        return waitForOk(stopAllDevicesAsync());
+    }
+
+    /**
+     * Stop all devices.
+     *
+     * @param inputs  stop inputs
+     * @param outputs stop outputs
+     * @return true if successful
+     * @throws ExecutionException   if an error occurs
+     * @throws InterruptedException if an error occurs
+     * @throws IOException          if an error occurs
+     * @throws TimeoutException     if an error occurs
+     */
+    public final boolean stopAllDevices(final boolean inputs, final boolean outputs)
+            throws ExecutionException, InterruptedException, IOException, TimeoutException {
+        return waitForOk(stopAllDevicesAsync(inputs, outputs));
+    }
+
+    /**
+     * Stop all devices asynchronously.
+     *
+     * @return future
+     */
+    public final Future<ButtplugMessage> stopAllDevicesAsync() {
+        devices.getDevices().forEach(ButtplugClientDevice::cancelQueuedOutputs);
+        return sendMessage(new StopCmd(getNextMsgId()));
+    }
+
+    /**
+     * Stop all devices asynchronously.
+     *
+     * @param inputs  stop inputs
+     * @param outputs stop outputs
+     * @return future
+     */
+    public final Future<ButtplugMessage> stopAllDevicesAsync(final boolean inputs, final boolean outputs) {
+        devices.getDevices().forEach(ButtplugClientDevice::cancelQueuedOutputs);
+        return sendMessage(new StopCmd(getNextMsgId(), inputs, outputs));
+    }
+
+    /**
+     * Stop all devices without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed once the server acknowledges the request
+     */
+    public final CompletionStage<Void> stopAllDevicesAsync(final long timeout, final TimeUnit unit) {
+        devices.getDevices().forEach(ButtplugClientDevice::cancelQueuedOutputs);
+        return expectOk(sendMessageAsync(new StopCmd(getNextMsgId()), timeout, unit));
+    }
+
+    /**
+     * Send a message without blocking, with its own timeout instead of the client's request timeout.
+     * An Error reply completes the stage exceptionally with the exception it carries. The call never waits for a
+     * slot in the in-flight window: under {@link BackpressurePolicy#BLOCK} a full window fails the stage at once.
+     *
+     * @param msg     message, with an ID from {@link #getNextMsgId()}
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the reply, or exceptionally with a {@link TimeoutException} if none arrives
+     */
+    public final CompletionStage<ButtplugMessage> sendMessageAsync(final ButtplugMessage msg, final long timeout,
+                                                                   final TimeUnit unit) {
+        ButtplugClientDevice dev = msg instanceof ButtplugDeviceMessage
+                ? devices.getDevice(((ButtplugDeviceMessage) msg).getDeviceIndex()) : null;
+        CompletableFuture<ButtplugMessage> promise;
+        boolean marked = RequestWindow.beginNoWait();
+        try {
+            promise = dev != null ? dev.pace(msg, System.nanoTime() + unit.toNanos(timeout)) : sendMessage(msg);
+        } finally {
+            if (marked) {
+                RequestWindow.endNoWait();
+            }
+        }
+        CompletableFuture<ButtplugMessage> result = new CompletableFuture<>();
+        if (!waitingMsgs.reschedule(msg.getId(), unit.toNanos(timeout)) && !promise.isDone()) {
+            // Still queued behind the device's timing gap, so not in the table yet; it takes the remaining time once
+            // it is sent
+            ScheduledFuture<?> expiry = schedule(() -> result.completeExceptionally(
+                    new TimeoutException("No reply received for message " + msg.getId())), timeout, unit);
+            result.whenComplete((reply, ex) -> expiry.cancel(false));
+        }
+        promise.whenComplete((reply, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else if (reply instanceof Error) {
+                result.completeExceptionally(toException((Error) reply));
+            } else {
+                result.complete(reply);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Map a reply stage to one that completes normally only for an Ok reply.
+     *
+     * @param reply reply stage
+     * @return stage completed once an Ok arrives
+     */
+    static CompletionStage<Void> expectOk(final CompletionStage<ButtplugMessage> reply) {
+        return reply.thenCompose(msg -> msg instanceof Ok
+                ? CompletableFuture.<Void>completedFuture(null)
+                : failed(new ButtplugClientException("Unexpected reply: " + msg.getClass().getSimpleName())));
+    }
+
+    /**
+     * Create a stage that has already failed.
+     *
+     * @param ex  cause
+     * @param <T> stage type
+     * @return failed stage
+     */
+    static <T> CompletableFuture<T> failed(final Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    /**
+     * Get the exception carried by an Error reply.
+     *
+     * @param error error
+     * @return exception
+     */
+    private static ButtplugException toException(final Error error) {
+        ButtplugException ex = error.getException();
+        return ex != null ? ex : new ButtplugClientException(error.getErrorMessage());
+    }
+
+    /**
+     * Send a device message.
+     *
+     * @param device    device
+     * @param deviceMsg message
+     * @return future
+     */
+    public final CompletableFuture<ButtplugMessage> sendDeviceMessage(
+            final ButtplugClientDevice device, final ButtplugDeviceMessage deviceMsg) {
+        ButtplugClientDevice dev = devices.getDevice(device.getDeviceIndex());
+        if (dev != null) {
+            deviceMsg.setDeviceIndex(device.getDeviceIndex());
+            deviceMsg.setId(getNextMsgId());
+            return dev.pace(deviceMsg);
+        } else {
+            return CompletableFuture.completedFuture(new Error("Device not available.",
+                    Error.ErrorClass.ERROR_DEVICE, ButtplugConsts.SYSTEM_MSG_ID));
+        }
+    }
+
+    /**
+     * Wait for an Ok message.
+     *
+     * @param msg message future
+     * @return true if Ok
+     * @throws ExecutionException   if an error occurs
+     * @throws InterruptedException if an error occurs
+     * @throws TimeoutException     if an error occurs
+     */
+    protected final boolean waitForOk(final Future<ButtplugMessage> msg)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        return awaitReply(msg) instanceof Ok;
+    }
+
+    /**
+     * Wait for a reply. Requests that time out in the pending request table are reported as a TimeoutException
+     * rather than an ExecutionException.
+     *
+     * @param msg future
+     * @return reply
+     * @throws ExecutionException   if an error occurs
+     * @throws InterruptedException if an error occurs
+     * @throws TimeoutException     if no reply arrives in time
+     */
+    private ButtplugMessage awaitReply(final Future<ButtplugMessage> msg)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        try {
+            // Allow the table a couple of ticks to expire the request itself
+            return msg.get(requestTimeout + 2 * waitingMsgs.getTickNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write messages to the server as a single frame, without registering for replies. The transport should block
+     * until the frame is written.
+     *
+     * @param msgs messages, with their ids assigned
+     * @throws Exception if the transport is not connected or the write fails
+     */
+    protected abstract void writeFrame(List<ButtplugMessage> msgs) throws Exception;
+
+    /**
+     * Send a message, registering it to wait for its reply. A message the in-flight window turns away is not
+     * written; one that cannot be written fails with an Error that is also passed to the error handlers.
      *
+     * @param msg message
      * @return future
      */
-    public final Future<ButtplugMessage> startScanningAsync() {
-        return sendMessage(new StartScanning(msgId.incrementAndGet()));
+    protected CompletableFuture<ButtplugMessage> sendMessage(final ButtplugMessage msg) {
+        CompletableFuture<ButtplugMessage> promise = scheduleWait(msg, new CompletableFuture<>());
+        if (promise.isDone()) {
+            // Turned away by the in-flight window
+            return promise;
+        }
+        try {
+            writeFrame(Collections.singletonList(msg));
+        } catch (Exception e) {
+            return failWait(msg.getId(), promise, writeFailed(msg, e));
+        }
+        return promise;
     }
 
     /**
-     * Stop scanning for devices.
+     * Start a batch of messages to be sent as a single frame.
      *
-     * @return true if successful
-     * @throws ExecutionException   if an error occurs
-     * @throws InterruptedException if an error occurs
-     * @throws TimeoutException     if an error occurs
+     * @return empty batch
      */
-    public final boolean stopScanning() throws ExecutionException, InterruptedException, TimeoutException {
-        return waitForOk(stopScanningAsync());
+    public final MessageBatch batch() {
+        return new MessageBatch(this);
     }
 
     /**
-     * Stop scanning for devices asynchronously.
+     * Send several messages, whose ids have already been assigned, as a single frame. Messages the in-flight window
+     * turns away are left out of the frame.
      *
-     * @return future
+     * @param msgs messages
+     * @return one future per message, in order
      */
-    public final Future<ButtplugMessage> stopScanningAsync() {
-        return sendMessage(new StopScanning(msgId.incrementAndGet()));
+    protected final List<CompletableFuture<ButtplugMessage>> sendMessages(final List<ButtplugMessage> msgs) {
+        List<CompletableFuture<ButtplugMessage>> promises = new ArrayList<>(msgs.size());
+        List<ButtplugMessage> admitted = new ArrayList<>(msgs.size());
+        List<CompletableFuture<ButtplugMessage>> waiting = new ArrayList<>(msgs.size());
+        for (ButtplugMessage msg : msgs) {
+            CompletableFuture<ButtplugMessage> promise = scheduleWait(msg, new CompletableFuture<>());
+            promises.add(promise);
+            if (!promise.isDone()) {
+                admitted.add(msg);
+                waiting.add(promise);
+            }
+        }
+        if (admitted.isEmpty()) {
+            return promises;
+        }
+        try {
+            writeFrame(admitted);
+        } catch (Exception e) {
+            for (int i = 0; i < admitted.size(); i++) {
+                failWait(admitted.get(i).getId(), waiting.get(i), writeFailed(admitted.get(i), e));
+            }
+        }
+        return promises;
     }
 
     /**
-     * Stop all devices.
+     * Report a message that could not be written to the error handlers.
      *
-     * @return true if successful
-     * @throws ExecutionException   if an error occurs
-     * @throws InterruptedException if an error occurs
-     * @throws IOException          if an error occurs
-     * @throws TimeoutException     if an error occurs
+     * @param msg message
+     * @param e   cause
+     * @return the reported error
      */
-    public final boolean stopAllDevices() throws ExecutionException, InterruptedException,
-            IOException, TimeoutException {
-        return waitForOk(stopAllDevicesAsync());
+    private Error writeFailed(final ButtplugMessage msg, final Exception e) {
+        Error err = new Error(new ButtplugClientException(e.getMessage()), msg.getId());
+        publishError(err);
+        return err;
     }
 
     /**
-     * Stop all devices.
+     * Check whether the transport can write an already encoded frame with {@link #sendRawFrame}. Transports that
+     * cannot have fire-and-forget output commands sent through {@link #sendUntracked} instead.
      *
-     * @param inputs  stop inputs
-     * @param outputs stop outputs
-     * @return true if successful
-     * @throws ExecutionException   if an error occurs
-     * @throws InterruptedException if an error occurs
-     * @throws IOException          if an error occurs
-     * @throws TimeoutException     if an error occurs
+     * @return true if raw frames are supported
      */
-    public final boolean stopAllDevices(final boolean inputs, final boolean outputs)
-            throws ExecutionException, InterruptedException, IOException, TimeoutException {
-        return waitForOk(stopAllDevicesAsync(inputs, outputs));
+    protected boolean supportsRawFrames() {
+        return false;
     }
 
     /**
-     * Stop all devices asynchronously.
+     * Write an already encoded text frame to the server, without registering for a reply. The frame is only valid
+     * for the duration of the call. Only called if {@link #supportsRawFrames()} returns true; a frame that cannot be
+     * written, e.g. while the transport is not connected, is reported to the error handlers.
      *
-     * @return future
+     * @param frame encoded frame
      */
-    public final Future<ButtplugMessage> stopAllDevicesAsync() {
-        return sendMessage(new StopCmd(getNextMsgId()));
+    protected void sendRawFrame(final ByteBuffer frame) {
+        throw new UnsupportedOperationException("Raw frames are not supported");
     }
 
     /**
-     * Stop all devices asynchronously.
+     * Send an output command without waiting for a reply.
      *
-     * @param inputs  stop inputs
-     * @param outputs stop outputs
-     * @return future
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @param type         output type, other than HW_POSITION_WITH_DURATION
+     * @param steps        value in steps
+     * @throws ButtplugDeviceFeatureException if the output type needs more than a value
      */
-    public final Future<ButtplugMessage> stopAllDevicesAsync(final boolean inputs, final boolean outputs) {
-        return sendMessage(new StopCmd(getNextMsgId(), inputs, outputs));
+    final void sendOutput(final long deviceIndex, final int featureIndex, final ButtplugOutput type,
+                          final int steps) throws ButtplugDeviceFeatureException {
+        int id = getUntrackedMsgId(deviceIndex, featureIndex);
+        if (frameWriter != null && supportsRawFrames()) {
+            synchronized (frameWriter) {
+                sendRawFrame(frameWriter.write(id, deviceIndex, featureIndex, type.getName(), steps));
+            }
+            return;
+        }
+        OutputCmd cmd = new OutputCmd(id, deviceIndex, featureIndex);
+        cmd.setCommand(ButtplugClientDeviceFeature.outputCommand(type, steps));
+        sendUntracked(cmd);
     }
 
     /**
-     * Send a device message.
+     * Send a message without waiting for its reply. The message should have an ID from the fire-and-forget range.
+     * A message that cannot be written is reported to the error handlers.
      *
-     * @param device    device
-     * @param deviceMsg message
-     * @return future
+     * @param msg message
      */
-    public final CompletableFuture<ButtplugMessage> sendDeviceMessage(
-            final ButtplugClientDevice device, final ButtplugDeviceMessage deviceMsg) {
-        ButtplugClientDevice dev = devices.get(device.getDeviceIndex());
-        if (dev != null) {
-            deviceMsg.setDeviceIndex(device.getDeviceIndex());
-            deviceMsg.setId(msgId.incrementAndGet());
-            return sendMessage(deviceMsg);
-        } else {
-            return CompletableFuture.completedFuture(new Error("Device not available.",
-                    Error.ErrorClass.ERROR_DEVICE, ButtplugConsts.SYSTEM_MSG_ID));
+    protected final void sendUntracked(final ButtplugMessage msg) {
+        try {
+            writeFrame(Collections.singletonList(msg));
+        } catch (Exception e) {
+            writeFailed(msg, e);
         }
     }
 
     /**
-     * Wait for an Ok message.
+     * Get the event bus, to add listeners beside the single handler each setter below manages. A handler set with a
+     * setter is one of the bus listeners, so it shares the bus executor and ordering.
      *
-     * @param msg message future
-     * @return true if Ok
-     * @throws ExecutionException   if an error occurs
-     * @throws InterruptedException if an error occurs
-     * @throws TimeoutException     if an error occurs
+     * @return event bus
      */
-    protected final boolean waitForOk(final Future<ButtplugMessage> msg)
-            throws ExecutionException, InterruptedException, TimeoutException {
-        return msg.get(1, TimeUnit.MINUTES) instanceof Ok;
+    public final ButtplugEventBus getEventBus() {
+        return events;
     }
 
     /**
-     * Send a message.
+     * Set the executor that runs event listeners. By default listeners run on the thread that received the message,
+     * usually the transport's I/O thread, so a slow listener holds up reading; a single-thread executor keeps events
+     * in order while freeing that thread.
      *
-     * @param msg message
-     * @return future
+     * @param executor executor, or null to run listeners on the receiving thread
+     */
+    public final void setEventExecutor(final Executor executor) {
+        events.setExecutor(executor);
+    }
+
+    /**
+     * Publish an error to the error listeners.
+     *
+     * @param error error
+     * @return true if there was at least one listener
      */
-    protected abstract CompletableFuture<ButtplugMessage> sendMessage(ButtplugMessage msg);
+    protected final boolean publishError(final Error error) {
+        return events.publish(IErrorEvent.class, l -> l.errorReceived(error));
+    }
 
     /**
      * Get the device added handler.
@@ -507,6 +1474,7 @@ public abstract class ButtplugClient {
      * @param deviceAddedHandler handler
      */
     public final void setDeviceAddedHandler(final IDeviceAddedEvent deviceAddedHandler) {
+        events.replaceListener(IDeviceAddedEvent.class, this.deviceAddedHandler, deviceAddedHandler);
         this.deviceAddedHandler = deviceAddedHandler;
     }
 
@@ -525,6 +1493,7 @@ public abstract class ButtplugClient {
      * @param deviceChangedHandler handler
      */
     public final void setDeviceChangedHandler(final IDeviceChangedEvent deviceChangedHandler) {
+        events.replaceListener(IDeviceChangedEvent.class, this.deviceChangedHandler, deviceChangedHandler);
         this.deviceChangedHandler = deviceChangedHandler;
     }
 
@@ -543,6 +1512,7 @@ public abstract class ButtplugClient {
      * @param deviceRemovedHandler handler
      */
     public final void setDeviceRemovedHandler(final IDeviceRemovedEvent deviceRemovedHandler) {
+        events.replaceListener(IDeviceRemovedEvent.class, this.deviceRemovedHandler, deviceRemovedHandler);
         this.deviceRemovedHandler = deviceRemovedHandler;
     }
 
@@ -561,6 +1531,7 @@ public abstract class ButtplugClient {
      * @param scanningFinishedHandler handler
      */
     public final void setScanningFinishedHandler(final IScanningEvent scanningFinishedHandler) {
+        events.replaceListener(IScanningEvent.class, this.scanningFinishedHandler, scanningFinishedHandler);
         this.scanningFinishedHandler = scanningFinishedHandler;
     }
 
@@ -579,6 +1550,7 @@ public abstract class ButtplugClient {
      * @param errorReceivedHandler handler
      */
     public final void setErrorHandler(final IErrorEvent errorReceivedHandler) {
+        events.replaceListener(IErrorEvent.class, this.errorHandler, errorReceivedHandler);
         this.errorHandler = errorReceivedHandler;
     }
 
@@ -597,6 +1569,7 @@ public abstract class ButtplugClient {
      * @param inputHandler handler
      */
     public final void setInputHandler(final IInputEvent inputHandler) {
+        events.replaceListener(IInputEvent.class, this.inputHandler, inputHandler);
         this.inputHandler = inputHandler;
     }
 
@@ -615,6 +1588,7 @@ public abstract class ButtplugClient {
      * @param onConnected handler
      */
     public final void setOnConnected(final IConnectedEvent onConnected) {
+        events.replaceListener(IConnectedEvent.class, this.onConnectedHandler, onConnected);
         this.onConnectedHandler = onConnected;
     }
 
@@ -627,23 +1601,25 @@ public abstract class ButtplugClient {
      * Disconnect the client.
      */
     public final void disconnect() {
-        if (pingTimer != null) {
-            pingTimer.cancel();
-            pingTimer = null;
+        synchronized (this) {
+            if (pingTask != null) {
+                pingTask.cancel(false);
+                pingTask = null;
+            }
+            reconnecting = false;
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+                reconnectTask = null;
+            }
+            // The transport closing below is not a lost connection
+            connectionState = ConnectionState.DISCONNECTED;
         }
 
         cleanup();
+        closeInputPublishers(-1);
 
-        int max = MAX_DISCONNECT_MESSAGE_TRYS;
-        while (max-- > 0 && !waitingMsgs.isEmpty()) {
-            for (int waitMmsgId : waitingMsgs.keySet()) {
-                CompletableFuture<ButtplugMessage> val = waitingMsgs.remove(waitMmsgId);
-                if (val != null) {
-                    val.complete(new Error("Connection closed!",
-                            Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID));
-                }
-            }
-        }
+        failPending("Connection closed!");
+        waitingMsgs.stop();
 
         msgId.set(1);
     }
@@ -657,10 +1633,340 @@ public abstract class ButtplugClient {
      */
     protected final CompletableFuture<ButtplugMessage> scheduleWait(final int id,
                                                                     final CompletableFuture<ButtplugMessage> promise) {
-        waitingMsgs.put(id, promise);
+        return register(id, window, false, promise, requestTimeout);
+    }
+
+    /**
+     * Schedule a wait for the response to a message, subject to the in-flight window unless it is a ping or part of
+     * the handshake. If the window turns the message away the promise is returned already completed with an Error,
+     * and the message should not be sent.
+     *
+     * @param msg     message
+     * @param promise promise
+     * @return future
+     */
+    protected final CompletableFuture<ButtplugMessage> scheduleWait(final ButtplugMessage msg,
+                                                                    final CompletableFuture<ButtplugMessage> promise) {
+        return register(msg.getId(), isControl(msg) ? null : window, msg instanceof OutputCmd, promise,
+                requestTimeout);
+    }
+
+    /**
+     * Schedule a wait for a message response with its own deadline. If no reply arrives in time the promise is
+     * completed exceptionally with a {@link TimeoutException}.
+     *
+     * @param id      message ID
+     * @param promise promise
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return future
+     */
+    protected final CompletableFuture<ButtplugMessage> scheduleWait(final int id,
+                                                                    final CompletableFuture<ButtplugMessage> promise,
+                                                                    final long timeout, final TimeUnit unit) {
+        return register(id, window, false, promise, unit.toNanos(timeout));
+    }
+
+    /**
+     * Give a waiting request a new deadline, counted from now.
+     *
+     * @param id           message ID
+     * @param timeoutNanos time to wait for the reply, in nanoseconds
+     */
+    final void rescheduleWait(final int id, final long timeoutNanos) {
+        waitingMsgs.reschedule(id, timeoutNanos);
+    }
+
+    /**
+     * Stop waiting for the reply to a message that could not be sent, completing its promise with an Error. This
+     * frees the message's slot in the in-flight window at once rather than when the request times out.
+     *
+     * @param id      message ID
+     * @param promise promise returned by scheduleWait
+     * @param err     error to complete the promise with
+     * @return the promise
+     */
+    protected final CompletableFuture<ButtplugMessage> failWait(final int id,
+                                                                final CompletableFuture<ButtplugMessage> promise,
+                                                                final Error err) {
+        waitingMsgs.remove(id);
+        promise.complete(err);
+        return promise;
+    }
+
+    /**
+     * Check whether a message keeps the connection alive or sets it up, and so bypasses the in-flight window.
+     *
+     * @param msg message
+     * @return true for pings and the handshake's requests
+     */
+    private static boolean isControl(final ButtplugMessage msg) {
+        return msg instanceof Ping || msg instanceof RequestServerInfo || msg instanceof RequestDeviceList;
+    }
+
+    /**
+     * Register a request with the in-flight window and the pending request table.
+     *
+     * @param id           message ID
+     * @param w            in-flight window, or null to bypass it
+     * @param output       whether the request is an output command
+     * @param promise      promise
+     * @param timeoutNanos time to wait for the reply, in nanoseconds
+     * @return the promise
+     */
+    private CompletableFuture<ButtplugMessage> register(final int id, final RequestWindow w, final boolean output,
+                                                        final CompletableFuture<ButtplugMessage> promise,
+                                                        final long timeoutNanos) {
+        if (w != null && !w.admit(requestTimeout, waitingMsgs, rejectedRequests)) {
+            rejectedRequests.incrementAndGet();
+            promise.complete(new Error("Too many requests in flight", Error.ErrorClass.ERROR_MSG, id));
+            return promise;
+        }
+        waitingMsgs.register(id, promise, timeoutNanos);
+        if (w != null) {
+            w.track(id, output, promise);
+        }
         return promise;
     }
 
+    /**
+     * Get the scheduler shared by clients that have not been given one. It runs on a small, fixed number of daemon
+     * threads however many clients use it, and its threads exit when it has been idle for a while.
+     *
+     * @return default scheduler
+     */
+    public static ScheduledExecutorService getDefaultScheduler() {
+        return DefaultExecutors.scheduler();
+    }
+
+    /**
+     * Get the executor for blocking work shared by clients that have not been given one. It runs on a bounded number
+     * of daemon threads however many clients use it; further work waits for a free thread.
+     *
+     * @return default blocking executor
+     */
+    public static Executor getDefaultBlockingExecutor() {
+        return DefaultExecutors.blocking();
+    }
+
+    /**
+     * Set the scheduler that runs the client's delayed and periodic work (request timeouts, pings, pacing, sampling)
+     * and the connector's transport pings. Share one scheduler between many clients to keep the thread count
+     * independent of the number of connections. Tasks must be quick, so the scheduler should not be one that also
+     * runs blocking work; reopening and closing the transport run on the {@link #setBlockingExecutor blocking
+     * executor}. Set it before connecting; tasks already scheduled stay on the previous scheduler.
+     *
+     * @param aScheduler scheduler, or null for {@link #getDefaultScheduler()}
+     */
+    public final void setScheduler(final ScheduledExecutorService aScheduler) {
+        scheduler = aScheduler == null ? getDefaultScheduler() : aScheduler;
+    }
+
+    /**
+     * Get the scheduler that runs the client's and the connector's delayed and periodic work.
+     *
+     * @return scheduler
+     */
+    public final ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Run a task after a delay on the client's scheduler.
+     *
+     * @param task  task
+     * @param delay delay
+     * @param unit  unit of the delay
+     * @return handle to cancel the task
+     */
+    final ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        return scheduler.schedule(RequestWindow.noWait(task), delay, unit);
+    }
+
+    /**
+     * Run a task on the client's scheduler as soon as possible, e.g. to leave a transport's I/O thread.
+     *
+     * @param task task
+     */
+    protected final void execute(final Runnable task) {
+        scheduler.execute(RequestWindow.noWait(task));
+    }
+
+    /**
+     * Set the executor that runs the client's and the connector's blocking work: reconnect attempts and closing the
+     * transport after an error. Share one executor between many clients to keep the thread count independent of the
+     * number of connections. It must not be the client's scheduler.
+     *
+     * @param aExecutor executor, or null for {@link #getDefaultBlockingExecutor()}
+     */
+    public final void setBlockingExecutor(final Executor aExecutor) {
+        blockingExecutor = aExecutor == null ? getDefaultBlockingExecutor() : aExecutor;
+    }
+
+    /**
+     * Get the executor that runs the client's and the connector's blocking work.
+     *
+     * @return blocking executor
+     */
+    public final Executor getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * Run blocking work, e.g. opening or closing the transport, on the blocking executor, keeping it off the
+     * client's scheduler and the transport's I/O threads.
+     *
+     * @param task task
+     */
+    protected final void executeBlocking(final Runnable task) {
+        blockingExecutor.execute(task);
+    }
+
+    /**
+     * Bound the number of requests waiting for a reply. Applies to requests sent after the call; requests already
+     * in flight do not count against the new window. Pings and the handshake's requests are never held back.
+     *
+     * @param maxInFlight maximum number of requests in flight, or 0 for no limit
+     * @param policy      what to do with a request when the window is full
+     */
+    public final void setMaxInFlight(final int maxInFlight, final BackpressurePolicy policy) {
+        window = maxInFlight <= 0 ? null : new RequestWindow(maxInFlight, policy);
+    }
+
+    /**
+     * Get the maximum number of requests in flight.
+     *
+     * @return maximum, or 0 if there is no limit
+     */
+    public final int getMaxInFlight() {
+        RequestWindow w = window;
+        return w == null ? 0 : w.getCapacity();
+    }
+
+    /**
+     * Get the policy applied when the in-flight window is full.
+     *
+     * @return policy, or null if there is no limit
+     */
+    public final BackpressurePolicy getBackpressurePolicy() {
+        RequestWindow w = window;
+        return w == null ? null : w.getPolicy();
+    }
+
+    /**
+     * Get the queue depth: requests holding a slot in the in-flight window plus senders blocked waiting for one.
+     * Producers can poll this to slow down before the window fills. Without a window this is the number of
+     * pending requests.
+     *
+     * @return queue depth
+     */
+    public final int getQueueDepth() {
+        RequestWindow w = window;
+        return w == null ? waitingMsgs.size() : w.getInFlight() + w.getWaiting();
+    }
+
+    /**
+     * Get the number of requests the in-flight window turned away or dropped since the client was created.
+     *
+     * @return number of rejected requests
+     */
+    public final long getRejectedRequestCount() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Set how long requests wait for a reply before their future is completed exceptionally with a
+     * {@link TimeoutException}. Applies to requests sent after the call.
+     *
+     * @param timeout time to wait for a reply
+     * @param unit    unit of the timeout
+     */
+    public final void setRequestTimeout(final long timeout, final TimeUnit unit) {
+        requestTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Get how long requests wait for a reply.
+     *
+     * @param unit unit to return the timeout in
+     * @return timeout
+     */
+    public final long getRequestTimeout(final TimeUnit unit) {
+        return unit.convert(requestTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Serve battery and RSSI reads from the latest reading while it is fresh enough. Concurrent reads that need the
+     * server share one request. A read of a reading older than the refresh age still returns the cached value but
+     * also starts a refresh, so polling callers rarely wait for a round trip.
+     *
+     * @param ttl          age up to which a reading is served from cache, 0 to always ask the server
+     * @param refreshAfter age from which a cached read also refreshes in the background, 0 to never
+     * @param unit         unit of both ages
+     */
+    public final void setInputCache(final long ttl, final long refreshAfter, final TimeUnit unit) {
+        inputCacheTtl = unit.toNanos(ttl);
+        inputCacheRefresh = unit.toNanos(refreshAfter);
+    }
+
+    /**
+     * Get the age up to which reads are served from cache.
+     *
+     * @param unit unit to return the age in
+     * @return age, 0 if reads are not cached
+     */
+    public final long getInputCacheTtl(final TimeUnit unit) {
+        return unit.convert(inputCacheTtl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the age from which cached reads refresh in the background.
+     *
+     * @param unit unit to return the age in
+     * @return age, 0 if cached reads never refresh
+     */
+    public final long getInputCacheRefreshAfter(final TimeUnit unit) {
+        return unit.convert(inputCacheRefresh, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of requests waiting for a reply.
+     *
+     * @return number of pending requests
+     */
+    public final int getPendingRequestCount() {
+        return waitingMsgs.size();
+    }
+
+    /**
+     * Get the number of requests that timed out waiting for a reply since the client was created.
+     *
+     * @return number of expired requests
+     */
+    public final long getExpiredRequestCount() {
+        return waitingMsgs.getExpiredCount();
+    }
+
+    /**
+     * What to do with a request when the in-flight window is full.
+     */
+    public enum BackpressurePolicy {
+        /**
+         * Block the sending thread until a slot frees up or the request timeout passes. Requests sent from the
+         * client's scheduler, or from a listener while a received message is dispatched, fail fast instead.
+         */
+        BLOCK,
+        /**
+         * Complete the request at once with an Error, without sending it.
+         */
+        FAIL_FAST,
+        /**
+         * Stop waiting for the oldest output command in flight, completing it with an Error, and use its slot.
+         * Fails fast if no output command is in flight.
+         */
+        DROP_OLDEST_OUTPUT
+    }
+
     /**
      * Connection state enum.
      */
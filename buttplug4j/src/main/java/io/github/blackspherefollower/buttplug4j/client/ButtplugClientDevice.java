@@ -1,21 +1,31 @@
 package io.github.blackspherefollower.buttplug4j.client;
 
 import io.github.blackspherefollower.buttplug4j.ButtplugException;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceFeature;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.InputCommandType;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.InputCmd;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.StopCmd;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -23,30 +33,60 @@ import java.util.concurrent.TimeoutException;
  */
 public final class ButtplugClientDevice {
 
+    /**
+     * Largest feature index routed through the feature table; higher indexes fall back to the feature map.
+     */
+    private static final int FEATURE_TABLE_LIMIT = 256;
+
     /**
      * Buttplug client.
      */
     private final ButtplugClient client;
     /**
-     * Device index.
+     * Device index. Changes if the server lists the device under another index after a reconnect.
      */
-    private final int deviceIndex;
+    private volatile int deviceIndex;
     /**
      * Device name.
      */
-    private final String deviceName;
+    private volatile String deviceName;
     /**
      * Device display name.
      */
-    private final String deviceDisplayName;
+    private volatile String deviceDisplayName;
     /**
-     * Device features.
+     * Device features. Replaced, never modified, when the server reports a change.
      */
-    private final HashMap<Integer, ButtplugClientDeviceFeature> deviceFeatures = new HashMap<>();
+    private volatile Map<Integer, ButtplugClientDeviceFeature> deviceFeatures;
     /**
      * Device message timing gap.
      */
-    private Integer deviceMessageTimingGap;
+    private volatile Integer deviceMessageTimingGap;
+    /**
+     * Fingerprint of the raw device JSON, or 0 if the device was not decoded lazily.
+     */
+    private volatile long fingerprint;
+    /**
+     * Spaces outgoing messages by the timing gap.
+     */
+    private final DevicePacer pacer = new DevicePacer(this);
+    /**
+     * Features indexed by feature index, for routing readings without a map lookup.
+     */
+    private volatile ButtplugClientDeviceFeature[] featureTable;
+    /**
+     * Input listeners of this device, created on first use.
+     */
+    private volatile ButtplugEventBus inputListeners;
+    /**
+     * Latest reading of every input. Replaced when the feature table changes size.
+     */
+    private volatile SensorStateTable sensors;
+    /**
+     * Inputs subscribed to with {@link #runInputSubscribe(int, ButtplugInput)}, as feature index (high half) and
+     * input type ordinal (low half), re-subscribed after a reconnect.
+     */
+    private final Set<Long> subscriptions = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructor.
@@ -58,15 +98,303 @@ public final class ButtplugClientDevice {
         this.client = bpClient;
         this.deviceIndex = device.getDeviceIndex();
         this.deviceName = device.getDeviceName();
-        this.deviceDisplayName = device.getDeviceDisplayName() != null
-                && !device.getDeviceDisplayName().isEmpty()
-                ? device.getDeviceDisplayName() : device.getDeviceName();
+        this.deviceDisplayName = displayName(device);
         this.deviceMessageTimingGap = device.getDeviceMessageTimingGap();
+        this.fingerprint = device.getFingerprint();
+        HashMap<Integer, ButtplugClientDeviceFeature> features = new HashMap<>();
         if (device.getDeviceFeatures() != null) {
             for (Map.Entry<Integer, DeviceFeature> feature : device.getDeviceFeatures().entrySet()) {
-                this.deviceFeatures.put(feature.getKey(), new ButtplugClientDeviceFeature(this, feature.getValue()));
+                features.put(feature.getKey(), new ButtplugClientDeviceFeature(this, feature.getValue()));
+            }
+        }
+        setFeatures(features);
+    }
+
+    /**
+     * Get the name to show for a protocol device.
+     *
+     * @param device protocol device
+     * @return display name, or the device name if the device has none
+     */
+    private static String displayName(final Device device) {
+        return device.getDeviceDisplayName() != null && !device.getDeviceDisplayName().isEmpty()
+                ? device.getDeviceDisplayName() : device.getDeviceName();
+    }
+
+    /**
+     * Install a new set of features, rebuilding the feature table and keeping the readings of feature indexes that
+     * are still tracked.
+     *
+     * @param features features by index
+     */
+    private void setFeatures(final HashMap<Integer, ButtplugClientDeviceFeature> features) {
+        int maxIndex = -1;
+        for (Integer index : features.keySet()) {
+            maxIndex = Math.max(maxIndex, index);
+        }
+        ButtplugClientDeviceFeature[] table = new ButtplugClientDeviceFeature[Math.min(maxIndex + 1,
+                FEATURE_TABLE_LIMIT)];
+        for (Map.Entry<Integer, ButtplugClientDeviceFeature> feature : features.entrySet()) {
+            if (feature.getKey() >= 0 && feature.getKey() < table.length) {
+                table[feature.getKey()] = feature.getValue();
             }
         }
+        SensorStateTable current = sensors;
+        sensors = current == null ? new SensorStateTable(table.length) : current.resize(table.length);
+        featureTable = table;
+        deviceFeatures = features;
+    }
+
+    /**
+     * Bring this device up to date with the server's description of it. Features that did not change are kept as
+     * they are, along with their coalescers, listeners and cached reads; a changed feature is replaced by a new
+     * instance that keeps the old one's input listeners. Lazily decoded devices whose fingerprint has not changed
+     * are skipped without being decoded.
+     *
+     * @param device protocol device with this device's index
+     * @return true if anything changed
+     */
+    boolean update(final Device device) {
+        long newFingerprint = device.getFingerprint();
+        if (newFingerprint != 0 && newFingerprint == fingerprint) {
+            return false;
+        }
+        boolean changed = false;
+        if (!Objects.equals(deviceName, device.getDeviceName())) {
+            deviceName = device.getDeviceName();
+            changed = true;
+        }
+        String newDisplayName = displayName(device);
+        if (!Objects.equals(deviceDisplayName, newDisplayName)) {
+            deviceDisplayName = newDisplayName;
+            changed = true;
+        }
+        if (!Objects.equals(deviceMessageTimingGap, device.getDeviceMessageTimingGap())) {
+            deviceMessageTimingGap = device.getDeviceMessageTimingGap();
+            changed = true;
+        }
+        Map<Integer, ButtplugClientDeviceFeature> current = deviceFeatures;
+        Map<Integer, DeviceFeature> incoming = device.getDeviceFeatures() != null
+                ? device.getDeviceFeatures() : Collections.<Integer, DeviceFeature>emptyMap();
+        HashMap<Integer, ButtplugClientDeviceFeature> next = null;
+        int kept = 0;
+        for (Map.Entry<Integer, DeviceFeature> feature : incoming.entrySet()) {
+            ButtplugClientDeviceFeature old = current.get(feature.getKey());
+            if (old != null) {
+                kept++;
+                if (old.matches(feature.getValue())) {
+                    continue;
+                }
+            }
+            if (next == null) {
+                next = new HashMap<>(current);
+            }
+            ButtplugClientDeviceFeature replacement = new ButtplugClientDeviceFeature(this, feature.getValue());
+            if (old != null) {
+                replacement.inheritInputListeners(old);
+            }
+            next.put(feature.getKey(), replacement);
+        }
+        if (kept < current.size()) {
+            if (next == null) {
+                next = new HashMap<>(current);
+            }
+            next.keySet().retainAll(incoming.keySet());
+        }
+        if (next != null) {
+            setFeatures(next);
+            changed = true;
+        }
+        fingerprint = newFingerprint;
+        return changed;
+    }
+
+    /**
+     * Check whether a protocol device is this device as seen after a reconnect, which may list it under another
+     * index: the name and every feature must be the same.
+     *
+     * @param device protocol device
+     * @return true if the name and features match
+     */
+    boolean hasSignature(final Device device) {
+        if (!Objects.equals(deviceName, device.getDeviceName())) {
+            return false;
+        }
+        Map<Integer, ButtplugClientDeviceFeature> current = deviceFeatures;
+        Map<Integer, DeviceFeature> incoming = device.getDeviceFeatures() != null
+                ? device.getDeviceFeatures() : Collections.<Integer, DeviceFeature>emptyMap();
+        if (current.size() != incoming.size()) {
+            return false;
+        }
+        for (Map.Entry<Integer, DeviceFeature> feature : incoming.entrySet()) {
+            ButtplugClientDeviceFeature old = current.get(feature.getKey());
+            if (old == null || !old.matches(feature.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move this device to the index the server now lists it under.
+     *
+     * @param index new device index
+     */
+    void setDeviceIndex(final int index) {
+        deviceIndex = index;
+    }
+
+    /**
+     * Send SUBSCRIBE again for every input subscribed to with {@link #runInputSubscribe(int, ButtplugInput)},
+     * e.g. after a reconnect. Failures are reported to the client's error listeners.
+     */
+    void resubscribe() {
+        ButtplugInput[] inputs = ButtplugInput.values();
+        for (Long key : subscriptions) {
+            int featureIndex = (int) (key >>> Integer.SIZE);
+            ButtplugInput input = inputs[key.intValue()];
+            runInputAsync(featureIndex, input, InputCommandType.SUBSCRIBE,
+                    client.getRequestTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+                    .whenComplete((reply, ex) -> {
+                        String error = ex != null ? ex.getMessage()
+                                : reply instanceof Error ? ((Error) reply).getErrorMessage() : null;
+                        if (error == null) {
+                            return;
+                        }
+                        ButtplugClientException e = new ButtplugClientException("Resubscribe to "
+                                + input.getName() + " failed: " + error);
+                        if (!client.publishError(new Error(e))) {
+                            e.printStackTrace();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Remember or forget a server subscription sent by {@link #runInput} or {@link #runInputAsync}.
+     *
+     * @param featureIndex feature index
+     * @param inputType    input type
+     * @param inputCommand command
+     */
+    private void trackSubscription(final int featureIndex, final ButtplugInput inputType,
+                                   final InputCommandType inputCommand) {
+        long key = (long) featureIndex << Integer.SIZE | inputType.ordinal();
+        if (inputCommand == InputCommandType.SUBSCRIBE) {
+            subscriptions.add(key);
+        } else if (inputCommand == InputCommandType.UNSUBSCRIBE) {
+            subscriptions.remove(key);
+        }
+    }
+
+    /**
+     * Add a listener for the readings of every input of this device. Listeners run on the client's event executor
+     * and are kept when the server reports the device as changed.
+     *
+     * @param listener listener
+     */
+    public void addInputListener(final IInputEvent listener) {
+        getInputListeners().addListener(IInputEvent.class, listener);
+    }
+
+    /**
+     * Remove an input listener.
+     *
+     * @param listener listener
+     * @return true if the listener was registered
+     */
+    public boolean removeInputListener(final IInputEvent listener) {
+        ButtplugEventBus listeners = inputListeners;
+        return listeners != null && listeners.removeListener(IInputEvent.class, listener);
+    }
+
+    /**
+     * Get the input listeners, creating them on first use.
+     *
+     * @return listeners
+     */
+    private ButtplugEventBus getInputListeners() {
+        ButtplugEventBus listeners = inputListeners;
+        if (listeners == null) {
+            synchronized (this) {
+                listeners = inputListeners;
+                if (listeners == null) {
+                    listeners = new ButtplugEventBus(client.getEventBus());
+                    inputListeners = listeners;
+                }
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * Pass a reading to the listeners of this device and of its feature.
+     *
+     * @param reading reading
+     */
+    void dispatchInput(final InputReading reading) {
+        ButtplugEventBus listeners = inputListeners;
+        if (listeners != null) {
+            listeners.publish(IInputEvent.class, l -> l.inputEvent(reading));
+        }
+        ButtplugClientDeviceFeature feature = getFeature(reading.getFeatureIndex());
+        if (feature != null) {
+            feature.dispatchInput(reading);
+        }
+    }
+
+    /**
+     * Store a reading as the latest value of its input.
+     *
+     * @param reading reading
+     * @param nanos   time the reading arrived
+     */
+    void recordInput(final InputReading reading, final long nanos) {
+        if (reading.getData() instanceof InputReading.InputIntegerData) {
+            ButtplugInput input = ButtplugInput.fromData(reading.getData());
+            if (input != null) {
+                sensors.write(reading.getFeatureIndex(), input,
+                        ((InputReading.InputIntegerData) reading.getData()).getValue(), nanos);
+            }
+        }
+    }
+
+    /**
+     * Get the latest reading of an input, as last received from the server. This never sends a message; use
+     * {@link #runInputRead(int, ButtplugInput)} or a subscription to get fresh readings.
+     *
+     * @param featureIndex feature index
+     * @param inputType    input type
+     * @return reading, or null if none has arrived
+     */
+    public SensorSample getLatestReading(final int featureIndex, final ButtplugInput inputType) {
+        return sensors.read(featureIndex, inputType);
+    }
+
+    /**
+     * Get the latest value of an input, as last received from the server.
+     *
+     * @param featureIndex feature index
+     * @param inputType    input type
+     * @param defaultValue value to return if no reading has arrived
+     * @return value
+     */
+    public int getLatestValue(final int featureIndex, final ButtplugInput inputType, final int defaultValue) {
+        return sensors.readValue(featureIndex, inputType, defaultValue);
+    }
+
+    /**
+     * Look up a feature by index.
+     *
+     * @param featureIndex feature index
+     * @return feature, or null if the device has no such feature
+     */
+    private ButtplugClientDeviceFeature getFeature(final int featureIndex) {
+        ButtplugClientDeviceFeature[] table = featureTable;
+        if (featureIndex >= 0 && featureIndex < table.length) {
+            return table[featureIndex];
+        }
+        return deviceFeatures.get(featureIndex);
     }
 
     /**
@@ -75,7 +403,20 @@ public final class ButtplugClientDevice {
      * @return future
      */
     public Future<ButtplugMessage> sendStopDeviceCmd() {
-        return client.sendMessage(new StopCmd(client.getNextMsgId(), getDeviceIndex()));
+        return sendStop(new StopCmd(client.getNextMsgId(), getDeviceIndex()));
+    }
+
+    /**
+     * Send a stop device command without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed once the server acknowledges the command
+     */
+    public CompletionStage<Void> sendStopDeviceCmdAsync(final long timeout, final TimeUnit unit) {
+        pacer.cancelOutputs();
+        return ButtplugClient.expectOk(
+                client.sendMessageAsync(new StopCmd(client.getNextMsgId(), getDeviceIndex()), timeout, unit));
     }
 
     /**
@@ -86,7 +427,7 @@ public final class ButtplugClientDevice {
      * @return future
      */
     public Future<ButtplugMessage> sendStopDeviceCmd(final boolean inputs, final boolean outputs) {
-        return client.sendMessage(new StopCmd(client.getNextMsgId(), getDeviceIndex(), inputs, outputs));
+        return sendStop(new StopCmd(client.getNextMsgId(), getDeviceIndex(), inputs, outputs));
     }
 
     /**
@@ -96,7 +437,7 @@ public final class ButtplugClientDevice {
      * @return future
      */
     public Future<ButtplugMessage> sendStopDeviceCmd(final int featureIndex) {
-        return client.sendMessage(new StopCmd(client.getNextMsgId(), getDeviceIndex(), featureIndex));
+        return sendStop(new StopCmd(client.getNextMsgId(), getDeviceIndex(), featureIndex));
     }
 
     /**
@@ -110,7 +451,86 @@ public final class ButtplugClientDevice {
     public Future<ButtplugMessage> sendStopDeviceCmd(final int featureIndex,
                                                      final boolean inputs,
                                                      final boolean outputs) {
-        return client.sendMessage(new StopCmd(client.getNextMsgId(), getDeviceIndex(), featureIndex, inputs, outputs));
+        return sendStop(new StopCmd(client.getNextMsgId(), getDeviceIndex(), featureIndex, inputs, outputs));
+    }
+
+    /**
+     * Send a stop command ahead of any queued messages, dropping the queued output commands it would undo.
+     *
+     * @param cmd stop command
+     * @return future
+     */
+    private CompletableFuture<ButtplugMessage> sendStop(final StopCmd cmd) {
+        pacer.cancelOutputs();
+        return client.sendMessage(cmd);
+    }
+
+    /**
+     * Send a message to this device once the timing gap allows.
+     *
+     * @param msg message, with its ID set
+     * @return future
+     */
+    CompletableFuture<ButtplugMessage> pace(final ButtplugMessage msg) {
+        if (msg instanceof StopCmd) {
+            return sendStop((StopCmd) msg);
+        }
+        return pacer.submit(() -> client.sendMessage(msg), msg instanceof OutputCmd);
+    }
+
+    /**
+     * Send a message to this device once the timing gap allows, waiting for its reply until a deadline rather than
+     * for the client's request timeout.
+     *
+     * @param msg           message, with its ID set
+     * @param deadlineNanos {@link System#nanoTime()} by which the reply must arrive
+     * @return future
+     */
+    CompletableFuture<ButtplugMessage> pace(final ButtplugMessage msg, final long deadlineNanos) {
+        if (msg instanceof StopCmd) {
+            return sendStop((StopCmd) msg);
+        }
+        return pacer.submit(() -> {
+            CompletableFuture<ButtplugMessage> sent = client.sendMessage(msg);
+            client.rescheduleWait(msg.getId(), Math.max(0, deadlineNanos - System.nanoTime()));
+            return sent;
+        }, msg instanceof OutputCmd);
+    }
+
+    /**
+     * Drop queued output commands, e.g. because every device is being stopped.
+     */
+    void cancelQueuedOutputs() {
+        pacer.cancelOutputs();
+    }
+
+    /**
+     * Get the number of messages waiting for their turn under the timing gap.
+     *
+     * @return queued messages
+     */
+    public int getQueuedMessageCount() {
+        return pacer.getQueueLength();
+    }
+
+    /**
+     * Get how long a message sent to this device now would be delayed by the timing gap and the messages queued
+     * ahead of it.
+     *
+     * @param unit unit to return the delay in
+     * @return delay
+     */
+    public long getSendDelay(final TimeUnit unit) {
+        return unit.convert(pacer.getDelayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the fingerprint of the device JSON this device was built from.
+     *
+     * @return fingerprint, or 0 if the device was not decoded lazily
+     */
+    long getFingerprint() {
+        return fingerprint;
     }
 
     /**
@@ -140,6 +560,33 @@ public final class ButtplugClientDevice {
         return deviceDisplayName;
     }
 
+    /**
+     * Get the client this device belongs to.
+     *
+     * @return client
+     */
+    ButtplugClient getClient() {
+        return client;
+    }
+
+    /**
+     * Get the age up to which input reads are served from cache.
+     *
+     * @return age in nanoseconds, 0 if reads are not cached
+     */
+    long getInputCacheTtlNanos() {
+        return client.getInputCacheTtl(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the age from which cached input reads refresh in the background.
+     *
+     * @return age in nanoseconds, 0 if cached reads never refresh
+     */
+    long getInputCacheRefreshNanos() {
+        return client.getInputCacheRefreshAfter(TimeUnit.NANOSECONDS);
+    }
+
     /**
      * Get the device message timing gap.
      *
@@ -177,9 +624,56 @@ public final class ButtplugClientDevice {
      */
     public Future<ButtplugMessage> runOutput(final int featureIndex,
                                              final OutputCmd.IOutputCommand outputCommand) {
+        return sendOutputCmd(featureIndex, outputCommand);
+    }
+
+    /**
+     * Send an output command.
+     *
+     * @param featureIndex  feature index
+     * @param outputCommand command
+     * @return future
+     */
+    CompletableFuture<ButtplugMessage> sendOutputCmd(final int featureIndex,
+                                                     final OutputCmd.IOutputCommand outputCommand) {
+        if (client.isFireAndForgetOutputs()) {
+            OutputCmd cmd = new OutputCmd(client.getUntrackedMsgId(deviceIndex, featureIndex), deviceIndex,
+                    featureIndex);
+            cmd.setCommand(outputCommand);
+            return pacer.submit(() -> {
+                client.sendUntracked(cmd);
+                return CompletableFuture.completedFuture(new Ok(ButtplugConsts.SYSTEM_MSG_ID));
+            }, true);
+        }
         OutputCmd cmd = new OutputCmd(client.getNextMsgId(), deviceIndex, featureIndex);
         cmd.setCommand(outputCommand);
-        return client.sendMessage(cmd);
+        return pace(cmd);
+    }
+
+    /**
+     * Send an output command without waiting for a reply.
+     *
+     * @param featureIndex feature index
+     * @param type         output type, other than HW_POSITION_WITH_DURATION
+     * @param steps        value in steps, already range checked
+     * @throws ButtplugDeviceFeatureException if the output type needs more than a value
+     */
+    void sendOutput(final int featureIndex, final ButtplugOutput type, final int steps)
+            throws ButtplugDeviceFeatureException {
+        if (pacer.tryAcquire()) {
+            client.sendOutput(deviceIndex, featureIndex, type, steps);
+            return;
+        }
+        // Only queued sends allocate
+        pacer.defer(() -> {
+            try {
+                client.sendOutput(deviceIndex, featureIndex, type, steps);
+            } catch (ButtplugDeviceFeatureException e) {
+                if (!client.publishError(new Error(e))) {
+                    e.printStackTrace();
+                }
+            }
+        }, true);
     }
 
     /**
@@ -203,9 +697,42 @@ public final class ButtplugClientDevice {
     public Future<ButtplugMessage> runInput(final int featureIndex,
                                             final ButtplugInput inputType,
                                             final InputCommandType inputCommand) {
+        trackSubscription(featureIndex, inputType, inputCommand);
         InputCmd cmd = new InputCmd(client.getNextMsgId(), deviceIndex, featureIndex,
                 inputType.getName(), inputCommand);
-        return client.sendMessage(cmd);
+        return pace(cmd);
+    }
+
+    /**
+     * Run an input command without blocking.
+     *
+     * @param featureIndex feature index
+     * @param inputType    input type
+     * @param inputCommand command
+     * @param timeout      time to wait for the reply
+     * @param unit         unit of the timeout
+     * @return stage completed with the reply
+     */
+    public CompletionStage<ButtplugMessage> runInputAsync(final int featureIndex,
+                                                          final ButtplugInput inputType,
+                                                          final InputCommandType inputCommand,
+                                                          final long timeout,
+                                                          final TimeUnit unit) {
+        trackSubscription(featureIndex, inputType, inputCommand);
+        InputCmd cmd = new InputCmd(client.getNextMsgId(), deviceIndex, featureIndex,
+                inputType.getName(), inputCommand);
+        return client.sendMessageAsync(cmd, timeout, unit);
+    }
+
+    /**
+     * Get the publisher for an input, which subscribes on the server while it has subscribers.
+     *
+     * @param featureIndex feature index
+     * @param inputType    input type
+     * @return publisher
+     */
+    public InputPublisher getInputPublisher(final int featureIndex, final ButtplugInput inputType) {
+        return client.getInputPublisher(deviceIndex, featureIndex, inputType);
     }
 
     /**
@@ -281,6 +808,48 @@ public final class ButtplugClientDevice {
         }
     }
 
+    /**
+     * Read the battery level without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the battery level
+     */
+    public CompletionStage<Integer> readBatteryAsync(final long timeout, final TimeUnit unit) {
+        java.util.Optional<ButtplugClientDeviceFeature> feature = deviceFeatures.values().stream()
+                .filter(ButtplugClientDeviceFeature::hasBattery).findFirst();
+        if (feature.isPresent()) {
+            return feature.get().readBatteryAsync(timeout, unit);
+        } else {
+            return ButtplugClient.failed(new ButtplugDeviceException("Battery feature not found"));
+        }
+    }
+
+    /**
+     * Read the RSSI without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the RSSI
+     */
+    public CompletionStage<Integer> readRSSIAsync(final long timeout, final TimeUnit unit) {
+        java.util.Optional<ButtplugClientDeviceFeature> feature = deviceFeatures.values().stream()
+                .filter(ButtplugClientDeviceFeature::hasRSSI).findFirst();
+        if (feature.isPresent()) {
+            return feature.get().readRSSIAsync(timeout, unit);
+        } else {
+            return ButtplugClient.failed(new ButtplugDeviceException("RSSI feature not found"));
+        }
+    }
+
+    /**
+     * Compare two devices of the same client by their current index, names, timing gap and features. A device is
+     * updated in place when the server reports a change or moves it to another index, so two devices equal now may
+     * not be equal after the next DeviceList.
+     *
+     * @param o other object
+     * @return true if o is a device of the same client that currently describes the same device
+     */
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -290,7 +859,7 @@ public final class ButtplugClientDevice {
             return false;
         }
         ButtplugClientDevice that = (ButtplugClientDevice) o;
-        if (deviceIndex != that.deviceIndex
+        if (client != that.client || deviceIndex != that.deviceIndex
                 || (deviceName == null ? that.deviceName != null : !deviceName.equals(that.deviceName))
                 || (deviceDisplayName == null ? that.deviceDisplayName != null
                 : !deviceDisplayName.equals(that.deviceDisplayName))
@@ -309,10 +878,15 @@ public final class ButtplugClientDevice {
         return true;
     }
 
+    /**
+     * Hash the device by its client only, as everything else {@link #equals} compares may change while the device
+     * sits in a hash set or map.
+     *
+     * @return hash code
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(client, deviceIndex, deviceName, deviceDisplayName,
-                deviceFeatures, deviceMessageTimingGap);
+        return System.identityHashCode(client);
     }
 
     /**
@@ -324,13 +898,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runVibrateFloat(final float vibrate)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasVibrate()) {
-                msgs.add(f.runVibrateFloat(vibrate));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.VIBRATE, vibrate);
     }
 
     /**
@@ -342,13 +910,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runRotateFloat(final float rotate)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasRotate()) {
-                msgs.add(f.runRotateFloat(rotate));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.ROTATE, rotate);
     }
 
     /**
@@ -360,13 +922,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runSprayFloat(final float spray)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasSpray()) {
-                msgs.add(f.runSprayFloat(spray));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.SPRAY, spray);
     }
 
     /**
@@ -378,13 +934,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runOscillateFloat(final float oscillate)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasOscillate()) {
-                msgs.add(f.runOscillateFloat(oscillate));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.OSCILLATE, oscillate);
     }
 
     /**
@@ -396,13 +946,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runPositionFloat(final float position)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasPosition()) {
-                msgs.add(f.runPositionFloat(position));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.POSITION, position);
     }
 
     /**
@@ -414,13 +958,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runLedFloat(final float led)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasLed()) {
-                msgs.add(f.runLedFloat(led));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.LED, led);
     }
 
     /**
@@ -432,13 +970,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runTemperatureFloat(final float temperature)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasTemperature()) {
-                msgs.add(f.runTemperatureFloat(temperature));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.TEMPERATURE, temperature);
     }
 
     /**
@@ -450,13 +982,7 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runConstrictFloat(final float constrict)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
-        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
-            if (f.hasConstrict()) {
-                msgs.add(f.runConstrictFloat(constrict));
-            }
-        }
-        return msgs;
+        return runOutputBatch(ButtplugOutput.CONSTRICT, constrict);
     }
 
     /**
@@ -469,12 +995,63 @@ public final class ButtplugClientDevice {
      */
     public List<Future<ButtplugMessage>> runHwPositionWithDurationFloat(final float position, final int duration)
             throws ButtplugDeviceFeatureException {
-        List<Future<ButtplugMessage>> msgs = new ArrayList<>();
+        List<OutputCmd> cmds = new ArrayList<>();
         for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
             if (f.hasHwPositionWithDuration()) {
-                msgs.add(f.runHwPositionWithDurationFloat(position, duration));
+                OutputCmd cmd = new OutputCmd(ButtplugConsts.DEFAULT_MSG_ID, deviceIndex, f.getFeatureIndex());
+                cmd.setCommand(f.hwPositionWithDurationCommand(position, duration));
+                cmds.add(cmd);
             }
         }
-        return msgs;
+        return sendOutputBatch(cmds);
+    }
+
+    /**
+     * Run a float output on every feature supporting it, sending all the commands in one frame. All values are
+     * validated before anything is sent.
+     *
+     * @param type  output type
+     * @param value float value (0.0 to 1.0)
+     * @return futures
+     * @throws ButtplugDeviceFeatureException if a value is out of range for a feature
+     */
+    private List<Future<ButtplugMessage>> runOutputBatch(final ButtplugOutput type, final float value)
+            throws ButtplugDeviceFeatureException {
+        List<OutputCmd> cmds = new ArrayList<>();
+        for (ButtplugClientDeviceFeature f : deviceFeatures.values()) {
+            if (f.hasOutput(type)) {
+                OutputCmd cmd = new OutputCmd(ButtplugConsts.DEFAULT_MSG_ID, deviceIndex, f.getFeatureIndex());
+                cmd.setCommand(f.floatOutputCommand(type, value));
+                cmds.add(cmd);
+            }
+        }
+        return sendOutputBatch(cmds);
+    }
+
+    /**
+     * Send output commands for several features in a single pacing slot. They share one frame, unless outputs are
+     * sent fire-and-forget, in which case each goes out untracked and its future completes at once with an Ok.
+     *
+     * @param cmds commands, without message IDs
+     * @return futures
+     */
+    private List<Future<ButtplugMessage>> sendOutputBatch(final List<OutputCmd> cmds) {
+        if (client.isFireAndForgetOutputs()) {
+            for (OutputCmd cmd : cmds) {
+                cmd.setId(client.getUntrackedMsgId(deviceIndex, (int) cmd.getFeatureIndex()));
+            }
+            return new ArrayList<Future<ButtplugMessage>>(pacer.submitAll(() -> {
+                for (OutputCmd cmd : cmds) {
+                    client.sendUntracked(cmd);
+                }
+                return Collections.nCopies(cmds.size(),
+                        CompletableFuture.<ButtplugMessage>completedFuture(new Ok(ButtplugConsts.SYSTEM_MSG_ID)));
+            }, cmds.size(), true));
+        }
+        MessageBatch batch = client.batch();
+        for (OutputCmd cmd : cmds) {
+            batch.add(cmd);
+        }
+        return new ArrayList<Future<ButtplugMessage>>(pacer.submitAll(batch::send, batch.size(), true));
     }
 }
@@ -4,11 +4,16 @@ import io.github.blackspherefollower.buttplug4j.ButtplugException;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceFeature;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputCommandType;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +44,18 @@ public final class ButtplugClientDeviceFeature {
      * Feature index.
      */
     private final int featureIndex;
+    /**
+     * Coalescing senders, created on first use.
+     */
+    private final EnumMap<ButtplugOutput, OutputCoalescer> coalescers = new EnumMap<>(ButtplugOutput.class);
+    /**
+     * Input listeners of this feature, created on first use.
+     */
+    private volatile ButtplugEventBus inputListeners;
+    /**
+     * Reads waiting for the server, shared by concurrent cached reads. Guarded by itself.
+     */
+    private final EnumMap<ButtplugInput, CompletableFuture<Integer>> inFlightReads = new EnumMap<>(ButtplugInput.class);
 
     /**
      * Constructor.
@@ -191,9 +208,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runVibrateFloat(final float vibrate) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.VIBRATE, vibrate);
-        checkStepRange(ButtplugOutput.VIBRATE, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Vibrate(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.VIBRATE, vibrate));
     }
 
     /**
@@ -225,9 +240,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runRotateFloat(final float rotate) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.ROTATE, rotate);
-        checkStepRange(ButtplugOutput.ROTATE, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Rotate(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.ROTATE, rotate));
     }
 
     /**
@@ -259,9 +272,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runConstrictFloat(final float constrict) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.CONSTRICT, constrict);
-        checkStepRange(ButtplugOutput.CONSTRICT, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Constrict(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.CONSTRICT, constrict));
     }
 
     /**
@@ -293,9 +304,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runSprayFloat(final float spray) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.SPRAY, spray);
-        checkStepRange(ButtplugOutput.SPRAY, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Spray(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.SPRAY, spray));
     }
 
     /**
@@ -327,9 +336,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runPositionFloat(final float position) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.POSITION, position);
-        checkStepRange(ButtplugOutput.POSITION, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Position(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.POSITION, position));
     }
 
     /**
@@ -384,13 +391,139 @@ public final class ButtplugClientDeviceFeature {
      */
     public Future<ButtplugMessage> runHwPositionWithDurationFloat(final float position, final int duration)
             throws ButtplugDeviceFeatureException {
+        return device.runOutput(featureIndex, hwPositionWithDurationCommand(position, duration));
+    }
+
+    /**
+     * Send a float output value without waiting for a reply.
+     * <p>
+     * This is the path for high rate updates: when the transport supports it the command is written straight into a
+     * reusable frame buffer, so no message objects or futures are allocated. Errors returned by the server are
+     * passed to the client's error handler.
+     *
+     * @param type  output type, other than HW_POSITION_WITH_DURATION
+     * @param value float value (0.0 to 1.0)
+     * @throws ButtplugDeviceFeatureException if the output is not supported or the value is out of range
+     */
+    public void sendOutputFloat(final ButtplugOutput type, final float value) throws ButtplugDeviceFeatureException {
+        if (type == ButtplugOutput.HW_POSITION_WITH_DURATION) {
+            throw new ButtplugDeviceFeatureException(type);
+        }
+        int steps = getStepFromFloat(type, value);
+        checkStepRange(type, steps);
+        device.sendOutput(featureIndex, type, steps);
+    }
+
+    /**
+     * Set an output to a float value, latest value wins.
+     * <p>
+     * This is for sources that produce values faster than the device can take them, such as sliders and game loops.
+     * At most one command per output is sent per device message timing gap; a value still waiting to be sent when a
+     * newer one arrives is dropped, and its future completes at once with an Ok.
+     *
+     * @param type  output type, other than HW_POSITION_WITH_DURATION
+     * @param value float value (0.0 to 1.0)
+     * @return future completed with the reply, or with an Ok if a newer value replaced this one
+     * @throws ButtplugDeviceFeatureException if the output is not supported or the value is out of range
+     */
+    public CompletableFuture<ButtplugMessage> coalesceOutputFloat(final ButtplugOutput type, final float value)
+            throws ButtplugDeviceFeatureException {
+        if (type == ButtplugOutput.HW_POSITION_WITH_DURATION) {
+            throw new ButtplugDeviceFeatureException(type);
+        }
+        return coalescer(type).submit(floatOutputCommand(type, value));
+    }
+
+    /**
+     * Move to a float HW position over a duration, latest value wins.
+     *
+     * @param position float value (0.0 to 1.0)
+     * @param duration duration in ms
+     * @return future completed with the reply, or with an Ok if a newer value replaced this one
+     * @throws ButtplugDeviceFeatureException if the output is not supported or a value is out of range
+     * @see #coalesceOutputFloat(ButtplugOutput, float)
+     */
+    public CompletableFuture<ButtplugMessage> coalesceHwPositionWithDurationFloat(final float position,
+                                                                                 final int duration)
+            throws ButtplugDeviceFeatureException {
+        return coalescer(ButtplugOutput.HW_POSITION_WITH_DURATION)
+                .submit(hwPositionWithDurationCommand(position, duration));
+    }
+
+    /**
+     * Get the coalescing sender for an output.
+     *
+     * @param type output type
+     * @return sender
+     */
+    private OutputCoalescer coalescer(final ButtplugOutput type) {
+        synchronized (coalescers) {
+            return coalescers.computeIfAbsent(type, t -> new OutputCoalescer(device, featureIndex));
+        }
+    }
+
+    /**
+     * Build the command for a float output value, without sending it.
+     *
+     * @param type  output type, other than HW_POSITION_WITH_DURATION
+     * @param value float value (0.0 to 1.0)
+     * @return command
+     * @throws ButtplugDeviceFeatureException if the output is not supported or the value is out of range
+     */
+    OutputCmd.IOutputCommand floatOutputCommand(final ButtplugOutput type, final float value)
+            throws ButtplugDeviceFeatureException {
+        int steps = getStepFromFloat(type, value);
+        checkStepRange(type, steps);
+        return outputCommand(type, steps);
+    }
+
+    /**
+     * Build the command for an output value in steps.
+     *
+     * @param type  output type, other than HW_POSITION_WITH_DURATION
+     * @param steps value in steps
+     * @return command
+     * @throws ButtplugDeviceFeatureException if the output type needs more than a value
+     */
+    static OutputCmd.IOutputCommand outputCommand(final ButtplugOutput type, final int steps)
+            throws ButtplugDeviceFeatureException {
+        switch (type) {
+            case VIBRATE:
+                return new OutputCmd.Vibrate(steps);
+            case ROTATE:
+                return new OutputCmd.Rotate(steps);
+            case SPRAY:
+                return new OutputCmd.Spray(steps);
+            case OSCILLATE:
+                return new OutputCmd.Oscillate(steps);
+            case POSITION:
+                return new OutputCmd.Position(steps);
+            case TEMPERATURE:
+                return new OutputCmd.Temperature(steps);
+            case CONSTRICT:
+                return new OutputCmd.Constrict(steps);
+            case LED:
+                return new OutputCmd.Led(steps);
+            default:
+                throw new ButtplugDeviceFeatureException(type);
+        }
+    }
+
+    /**
+     * Build the command for a float HW position with duration, without sending it.
+     *
+     * @param position float value (0.0 to 1.0)
+     * @param duration duration in ms
+     * @return command
+     * @throws ButtplugDeviceFeatureException if the output is not supported or a value is out of range
+     */
+    OutputCmd.IOutputCommand hwPositionWithDurationCommand(final float position, final int duration)
+            throws ButtplugDeviceFeatureException {
         int step = getStepFromFloat(ButtplugOutput.HW_POSITION_WITH_DURATION, position);
         checkStepRange(ButtplugOutput.HW_POSITION_WITH_DURATION, step);
         // Validate duration
         checkDuration(duration);
-
-        checkStepRange(ButtplugOutput.HW_POSITION_WITH_DURATION, step);
-        return device.runOutput(featureIndex, new OutputCmd.HwPositionWithDuration(step, duration));
+        return new OutputCmd.HwPositionWithDuration(step, duration);
     }
 
     /**
@@ -422,9 +555,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runLedFloat(final float led) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.LED, led);
-        checkStepRange(ButtplugOutput.LED, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Led(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.LED, led));
     }
 
     /**
@@ -456,9 +587,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runOscillateFloat(final float oscillate) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.OSCILLATE, oscillate);
-        checkStepRange(ButtplugOutput.OSCILLATE, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Oscillate(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.OSCILLATE, oscillate));
     }
 
     /**
@@ -490,9 +619,7 @@ public final class ButtplugClientDeviceFeature {
      * @throws ButtplugDeviceFeatureException if error occurs
      */
     public Future<ButtplugMessage> runTemperatureFloat(final float temperature) throws ButtplugDeviceFeatureException {
-        int steps = getStepFromFloat(ButtplugOutput.TEMPERATURE, temperature);
-        checkStepRange(ButtplugOutput.TEMPERATURE, steps);
-        return device.runOutput(featureIndex, new OutputCmd.Temperature(steps));
+        return device.runOutput(featureIndex, floatOutputCommand(ButtplugOutput.TEMPERATURE, temperature));
     }
 
     private void checkInput(final ButtplugInput type) throws ButtplugDeviceFeatureException {
@@ -501,6 +628,135 @@ public final class ButtplugClientDeviceFeature {
         }
     }
 
+    /**
+     * Add a listener for the readings of every input of this feature. Listeners run on the client's event executor
+     * and are kept when the server reports the device as changed.
+     *
+     * @param listener listener
+     */
+    public void addInputListener(final IInputEvent listener) {
+        ButtplugEventBus listeners = inputListeners;
+        if (listeners == null) {
+            synchronized (this) {
+                listeners = inputListeners;
+                if (listeners == null) {
+                    listeners = new ButtplugEventBus(device.getClient().getEventBus());
+                    inputListeners = listeners;
+                }
+            }
+        }
+        listeners.addListener(IInputEvent.class, listener);
+    }
+
+    /**
+     * Remove an input listener.
+     *
+     * @param listener listener
+     * @return true if the listener was registered
+     */
+    public boolean removeInputListener(final IInputEvent listener) {
+        ButtplugEventBus listeners = inputListeners;
+        return listeners != null && listeners.removeListener(IInputEvent.class, listener);
+    }
+
+    /**
+     * Pass a reading to the listeners of this feature.
+     *
+     * @param reading reading
+     */
+    void dispatchInput(final InputReading reading) {
+        ButtplugEventBus listeners = inputListeners;
+        if (listeners != null) {
+            listeners.publish(IInputEvent.class, l -> l.inputEvent(reading));
+        }
+    }
+
+    /**
+     * Take over the input listeners of the feature this one replaces.
+     *
+     * @param previous replaced feature
+     */
+    void inheritInputListeners(final ButtplugClientDeviceFeature previous) {
+        inputListeners = previous.inputListeners;
+    }
+
+    /**
+     * Check whether a protocol feature describes this feature exactly, without building a client feature from it.
+     *
+     * @param feature protocol feature
+     * @return true if the index, description, outputs and inputs are all equal
+     */
+    boolean matches(final DeviceFeature feature) {
+        if (featureIndex != feature.getFeatureIndex()
+                || !Objects.equals(description, feature.getFeatureDescription())) {
+            return false;
+        }
+        int outputs = 0;
+        if (feature.getOutput() != null) {
+            for (DeviceFeature.OutputDescriptor desc : feature.getOutput()) {
+                ButtplugOutput type;
+                try {
+                    type = ButtplugOutput.fromString(desc.getClass().getSimpleName());
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!desc.equals(output.get(type))) {
+                    return false;
+                }
+                outputs++;
+            }
+        }
+        int inputs = 0;
+        if (feature.getInput() != null) {
+            for (DeviceFeature.InputDescriptor desc : feature.getInput()) {
+                ButtplugInput type;
+                try {
+                    type = ButtplugInput.fromString(desc.getClass().getSimpleName());
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!desc.equals(input.get(type))) {
+                    return false;
+                }
+                inputs++;
+            }
+        }
+        return outputs == output.size() && inputs == input.size();
+    }
+
+    /**
+     * Get the latest reading of an input of this feature, without sending a message.
+     *
+     * @param type input type
+     * @return reading, or null if none has arrived
+     */
+    public SensorSample getLatestReading(final ButtplugInput type) {
+        return device.getLatestReading(featureIndex, type);
+    }
+
+    /**
+     * Get the latest value of an input of this feature, without sending a message.
+     *
+     * @param type         input type
+     * @param defaultValue value to return if no reading has arrived
+     * @return value
+     */
+    public int getLatestValue(final ButtplugInput type, final int defaultValue) {
+        return device.getLatestValue(featureIndex, type, defaultValue);
+    }
+
+    /**
+     * Get the publisher for an input of this feature.
+     *
+     * @param type input type
+     * @return publisher
+     * @throws ButtplugDeviceFeatureException if the input is not supported
+     */
+    public InputPublisher getInputPublisher(final ButtplugInput type) throws ButtplugDeviceFeatureException {
+        checkInput(type);
+        return device.getInputPublisher(featureIndex, type);
+    }
+
     /**
      * Check if battery is supported.
      *
@@ -521,10 +777,143 @@ public final class ButtplugClientDeviceFeature {
      */
     public int readBattery() throws ButtplugException, ExecutionException, InterruptedException, TimeoutException {
         checkInput(ButtplugInput.BATTERY);
+        if (device.getInputCacheTtlNanos() > 0) {
+            return awaitCached(ButtplugInput.BATTERY);
+        }
         ButtplugMessage msg = device.runInputRead(featureIndex, ButtplugInput.BATTERY).get(2, TimeUnit.SECONDS);
         return extractIntegerReading(msg);
     }
 
+    /**
+     * Read battery level without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the battery level
+     */
+    public CompletionStage<Integer> readBatteryAsync(final long timeout, final TimeUnit unit) {
+        return readIntegerAsync(ButtplugInput.BATTERY, timeout, unit);
+    }
+
+    /**
+     * Read an integer input without blocking.
+     *
+     * @param type    input type
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the reading
+     */
+    private CompletionStage<Integer> readIntegerAsync(final ButtplugInput type, final long timeout,
+                                                      final TimeUnit unit) {
+        try {
+            checkInput(type);
+        } catch (ButtplugDeviceFeatureException e) {
+            return ButtplugClient.failed(e);
+        }
+        long ttl = device.getInputCacheTtlNanos();
+        return ttl > 0 ? readIntegerCached(type, ttl, timeout, unit) : fetchInteger(type, timeout, unit);
+    }
+
+    /**
+     * Read an integer input through the cache, blocking like the uncached read.
+     *
+     * @param type input type
+     * @return reading
+     * @throws ButtplugException    if the server replies with an error
+     * @throws ExecutionException   if the read fails otherwise
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException     if no reply arrives in time
+     */
+    private int awaitCached(final ButtplugInput type)
+            throws ButtplugException, ExecutionException, InterruptedException, TimeoutException {
+        try {
+            return readIntegerCached(type, device.getInputCacheTtlNanos(), 2, TimeUnit.SECONDS)
+                    .toCompletableFuture().get(2, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ButtplugException) {
+                throw (ButtplugException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read an integer input from the latest reading if it is younger than the TTL, otherwise from the server.
+     *
+     * @param type    input type
+     * @param ttl     age up to which the latest reading is used, in nanoseconds
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the reading
+     */
+    private CompletionStage<Integer> readIntegerCached(final ButtplugInput type, final long ttl, final long timeout,
+                                                       final TimeUnit unit) {
+        SensorSample cached = getLatestReading(type);
+        if (cached != null) {
+            long age = System.nanoTime() - cached.getTimestampNanos();
+            if (age < ttl) {
+                long refresh = device.getInputCacheRefreshNanos();
+                if (refresh > 0 && age >= refresh) {
+                    // Failures surface on the next read that has to wait for the server
+                    refreshInteger(type, timeout, unit);
+                }
+                return CompletableFuture.completedFuture(cached.getValue());
+            }
+        }
+        return refreshInteger(type, timeout, unit);
+    }
+
+    /**
+     * Read an integer input from the server, joining a read of the same input already in flight.
+     *
+     * @param type    input type
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return future completed with the reading
+     */
+    private CompletableFuture<Integer> refreshInteger(final ButtplugInput type, final long timeout,
+                                                      final TimeUnit unit) {
+        CompletableFuture<Integer> promise;
+        synchronized (inFlightReads) {
+            CompletableFuture<Integer> inFlight = inFlightReads.get(type);
+            if (inFlight != null) {
+                return inFlight;
+            }
+            promise = new CompletableFuture<>();
+            inFlightReads.put(type, promise);
+        }
+        fetchInteger(type, timeout, unit).whenComplete((value, ex) -> {
+            synchronized (inFlightReads) {
+                inFlightReads.remove(type);
+            }
+            if (ex != null) {
+                promise.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+            } else {
+                promise.complete(value);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Read an integer input from the server.
+     *
+     * @param type    input type
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the reading
+     */
+    private CompletionStage<Integer> fetchInteger(final ButtplugInput type, final long timeout,
+                                                  final TimeUnit unit) {
+        return device.runInputAsync(featureIndex, type, InputCommandType.READ, timeout, unit).thenCompose(msg -> {
+            try {
+                return CompletableFuture.completedFuture(extractIntegerReading(msg));
+            } catch (ButtplugException e) {
+                return ButtplugClient.failed(e);
+            }
+        });
+    }
+
     /**
      * Extract integer reading from message.
      *
@@ -562,10 +951,24 @@ public final class ButtplugClientDeviceFeature {
      */
     public int readRSSI() throws ButtplugException, ExecutionException, InterruptedException, TimeoutException {
         checkInput(ButtplugInput.RSSI);
+        if (device.getInputCacheTtlNanos() > 0) {
+            return awaitCached(ButtplugInput.RSSI);
+        }
         ButtplugMessage msg = device.runInputRead(featureIndex, ButtplugInput.RSSI).get(2, TimeUnit.SECONDS);
         return extractIntegerReading(msg);
     }
 
+    /**
+     * Read RSSI level without blocking.
+     *
+     * @param timeout time to wait for the reply
+     * @param unit    unit of the timeout
+     * @return stage completed with the RSSI level
+     */
+    public CompletionStage<Integer> readRSSIAsync(final long timeout, final TimeUnit unit) {
+        return readIntegerAsync(ButtplugInput.RSSI, timeout, unit);
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -0,0 +1,294 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Delivers client events to any number of listeners per event type, keyed by listener interface
+ * (e.g. {@link IDeviceAddedEvent}).
+ * <p>
+ * Every listener has its own queue, drained on the bus executor one event at a time, so a listener always sees its
+ * events in order and a slow listener only delays itself. The default executor runs listeners directly on the
+ * publishing thread, which is the transport's I/O thread for most events; use a single-thread executor to move all
+ * listeners off it, or a thread-per-task one (e.g. virtual threads) to run listeners in parallel with each other.
+ * <p>
+ * Registration is lock-free: each event type holds an array of listeners that is replaced by compare-and-set.
+ */
+public final class ButtplugEventBus {
+
+    /**
+     * Executor that runs tasks on the calling thread.
+     */
+    public static final Executor DIRECT = Runnable::run;
+    /**
+     * Shared empty listener array.
+     */
+    private static final Subscription<?>[] NONE = new Subscription<?>[0];
+
+    /**
+     * Listeners by listener interface.
+     */
+    private final ConcurrentHashMap<Class<?>, AtomicReference<Subscription<?>[]>> listeners =
+            new ConcurrentHashMap<>();
+    /**
+     * Executor that runs the listeners.
+     */
+    private volatile Executor executor = DIRECT;
+    /**
+     * Bus whose executor this one uses, or null.
+     */
+    private final ButtplugEventBus parent;
+
+    /**
+     * Constructor.
+     */
+    public ButtplugEventBus() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a bus that runs its listeners on another bus's executor, e.g. the per-device listeners of a
+     * client.
+     *
+     * @param aParent bus whose executor to use
+     */
+    ButtplugEventBus(final ButtplugEventBus aParent) {
+        parent = aParent;
+    }
+
+    /**
+     * Set the executor that runs the listeners. Events already queued for a listener are delivered on the
+     * executor that was current when the listener's queue was last idle.
+     *
+     * @param aExecutor executor, e.g. {@link #DIRECT} or a single-thread executor
+     */
+    public void setExecutor(final Executor aExecutor) {
+        if (parent != null) {
+            throw new IllegalStateException("This bus uses the client's event executor");
+        }
+        executor = aExecutor == null ? DIRECT : aExecutor;
+    }
+
+    /**
+     * Get the executor that runs the listeners.
+     *
+     * @return executor
+     */
+    public Executor getExecutor() {
+        return parent != null ? parent.getExecutor() : executor;
+    }
+
+    /**
+     * Add a listener.
+     *
+     * @param type     listener interface
+     * @param listener listener
+     * @param <L>      listener type
+     */
+    public <L> void addListener(final Class<L> type, final L listener) {
+        AtomicReference<Subscription<?>[]> ref = listeners.computeIfAbsent(type,
+                t -> new AtomicReference<>(NONE));
+        Subscription<L> sub = new Subscription<>(listener);
+        while (true) {
+            Subscription<?>[] cur = ref.get();
+            Subscription<?>[] next = new Subscription<?>[cur.length + 1];
+            System.arraycopy(cur, 0, next, 0, cur.length);
+            next[cur.length] = sub;
+            if (ref.compareAndSet(cur, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a listener. Events already queued for it are still delivered.
+     *
+     * @param type     listener interface
+     * @param listener listener
+     * @param <L>      listener type
+     * @return true if the listener was registered
+     */
+    public <L> boolean removeListener(final Class<L> type, final L listener) {
+        AtomicReference<Subscription<?>[]> ref = listeners.get(type);
+        if (ref == null) {
+            return false;
+        }
+        while (true) {
+            Subscription<?>[] cur = ref.get();
+            int idx = indexOf(cur, listener);
+            if (idx < 0) {
+                return false;
+            }
+            Subscription<?>[] next = new Subscription<?>[cur.length - 1];
+            System.arraycopy(cur, 0, next, 0, idx);
+            System.arraycopy(cur, idx + 1, next, idx, cur.length - idx - 1);
+            if (ref.compareAndSet(cur, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replace one listener with another, e.g. for a single-handler setter.
+     *
+     * @param type        listener interface
+     * @param oldListener listener to remove, may be null
+     * @param newListener listener to add, may be null
+     * @param <L>         listener type
+     */
+    <L> void replaceListener(final Class<L> type, final L oldListener, final L newListener) {
+        if (oldListener != null) {
+            removeListener(type, oldListener);
+        }
+        if (newListener != null) {
+            addListener(type, newListener);
+        }
+    }
+
+    /**
+     * Get the listeners for an event type.
+     *
+     * @param type listener interface
+     * @param <L>  listener type
+     * @return listeners, in registration order
+     */
+    @SuppressWarnings("unchecked")
+    public <L> List<L> getListeners(final Class<L> type) {
+        List<L> result = new ArrayList<>();
+        for (Subscription<?> sub : subscriptions(type)) {
+            result.add((L) sub.listener);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of events waiting for, or being handled by, a listener. A listener whose depth keeps growing
+     * is not keeping up.
+     *
+     * @param type     listener interface
+     * @param listener listener
+     * @param <L>      listener type
+     * @return queue depth, or 0 if the listener is not registered
+     */
+    public <L> int getQueueDepth(final Class<L> type, final L listener) {
+        Subscription<?>[] subs = subscriptions(type);
+        int idx = indexOf(subs, listener);
+        return idx < 0 ? 0 : subs[idx].pending.get();
+    }
+
+    /**
+     * Publish an event to every listener of a type.
+     *
+     * @param type  listener interface
+     * @param event calls the listener
+     * @param <L>   listener type
+     * @return true if there was at least one listener
+     */
+    @SuppressWarnings("unchecked")
+    public <L> boolean publish(final Class<L> type, final Consumer<? super L> event) {
+        Subscription<?>[] subs = subscriptions(type);
+        if (subs.length == 0) {
+            return false;
+        }
+        Executor ex = getExecutor();
+        for (Subscription<?> sub : subs) {
+            ((Subscription<L>) sub).offer(event, ex);
+        }
+        return subs.length > 0;
+    }
+
+    /**
+     * Get the subscriptions for an event type.
+     *
+     * @param type listener interface
+     * @return subscriptions, possibly empty
+     */
+    private Subscription<?>[] subscriptions(final Class<?> type) {
+        AtomicReference<Subscription<?>[]> ref = listeners.get(type);
+        return ref == null ? NONE : ref.get();
+    }
+
+    /**
+     * Find a listener's subscription.
+     *
+     * @param subs     subscriptions
+     * @param listener listener
+     * @return index, or -1 if absent
+     */
+    private static int indexOf(final Subscription<?>[] subs, final Object listener) {
+        for (int i = 0; i < subs.length; i++) {
+            if (subs[i].listener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A listener and its queue of events.
+     *
+     * @param <L> listener type
+     */
+    private static final class Subscription<L> {
+        /**
+         * Listener.
+         */
+        private final L listener;
+        /**
+         * Events not yet delivered.
+         */
+        private final ConcurrentLinkedQueue<Consumer<? super L>> queue = new ConcurrentLinkedQueue<>();
+        /**
+         * Events queued or being delivered. A drain is running whenever this is above zero.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param aListener listener
+         */
+        Subscription(final L aListener) {
+            listener = aListener;
+        }
+
+        /**
+         * Queue an event, starting a drain if none is running.
+         *
+         * @param event calls the listener
+         * @param ex    executor to drain on
+         */
+        void offer(final Consumer<? super L> event, final Executor ex) {
+            queue.add(event);
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    ex.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // The executor was shut down; deliver on this thread rather than strand the queue
+                    drain();
+                }
+            }
+        }
+
+        /**
+         * Deliver queued events until the queue is empty.
+         */
+        void drain() {
+            do {
+                Consumer<? super L> event = queue.poll();
+                try {
+                    event.accept(listener);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            } while (pending.decrementAndGet() > 0);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.blackspherefollower.buttplug4j.client;
 
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+
 /**
  * ButtplugInput enum.
  */
@@ -54,6 +56,27 @@ public enum ButtplugInput {
         throw new IllegalArgumentException("Invalid input type: " + name);
     }
 
+    /**
+     * Get the input a reading is for.
+     *
+     * @param data reading data
+     * @return input, or null if the data type is unknown
+     */
+    static ButtplugInput fromData(final InputReading.InputData data) {
+        if (data instanceof InputReading.BatteryData) {
+            return BATTERY;
+        } else if (data instanceof InputReading.RssiData) {
+            return RSSI;
+        } else if (data instanceof InputReading.ButtonData) {
+            return BUTTON;
+        } else if (data instanceof InputReading.PresureData) {
+            return PRESSURE;
+        } else if (data instanceof InputReading.Position) {
+            return POSITION;
+        }
+        return null;
+    }
+
     /**
      * Get input name.
      *
@@ -0,0 +1,122 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors shared by every client that has not been given its own, each created on first use.
+ * <p>
+ * Both run on a bounded number of daemon threads however many clients use them, and their threads exit when they
+ * have been idle for a while.
+ */
+final class DefaultExecutors {
+
+    /**
+     * Time the default executors' threads linger once idle, in milliseconds.
+     */
+    static final long KEEP_ALIVE = 1_000;
+    /**
+     * Number of threads of the default scheduler.
+     */
+    static final int SCHEDULER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * Number of threads of the default blocking executor. Further blocking work waits for a free thread.
+     */
+    static final int BLOCKING_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Constructor.
+     */
+    private DefaultExecutors() {
+    }
+
+    /**
+     * Get the default scheduler.
+     *
+     * @return scheduler
+     */
+    static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.INSTANCE;
+    }
+
+    /**
+     * Get the default executor for blocking work.
+     *
+     * @return executor
+     */
+    static Executor blocking() {
+        return BlockingHolder.INSTANCE;
+    }
+
+    /**
+     * Holder of the default scheduler.
+     */
+    private static final class SchedulerHolder {
+        /**
+         * Default scheduler.
+         */
+        static final ScheduledExecutorService INSTANCE = create();
+
+        /**
+         * Constructor.
+         */
+        private SchedulerHolder() {
+        }
+
+        /**
+         * Create the default scheduler. Its threads never wait for a slot in a client's in-flight window.
+         *
+         * @return scheduler
+         */
+        private static ScheduledExecutorService create() {
+            AtomicInteger threads = new AtomicInteger();
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, r -> {
+                Thread t = new Thread(RequestWindow.noWait(r), "buttplugScheduler-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setKeepAliveTime(KEEP_ALIVE, TimeUnit.MILLISECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Holder of the default blocking executor.
+     */
+    private static final class BlockingHolder {
+        /**
+         * Default blocking executor.
+         */
+        static final Executor INSTANCE = create();
+
+        /**
+         * Constructor.
+         */
+        private BlockingHolder() {
+        }
+
+        /**
+         * Create the default blocking executor.
+         *
+         * @return executor
+         */
+        private static Executor create() {
+            AtomicInteger threads = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(BLOCKING_THREADS, BLOCKING_THREADS,
+                    KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "buttplugBlocking-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
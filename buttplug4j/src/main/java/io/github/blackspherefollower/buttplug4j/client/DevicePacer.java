@@ -0,0 +1,283 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Spaces the messages sent to one device by the device's message timing gap.
+ * <p>
+ * A message is sent at once when the device's last message went out at least a gap ago and nothing is queued;
+ * otherwise it joins a FIFO queue that is drained one message per gap. Draining runs on the client's scheduler, so
+ * every device of a client shares a single timer thread. A device without a timing gap is never queued.
+ */
+final class DevicePacer {
+
+    /**
+     * Device being paced.
+     */
+    private final ButtplugClientDevice device;
+    /**
+     * Messages waiting for their slot.
+     */
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    /**
+     * Earliest time the next message may go out, in nanoseconds.
+     */
+    private long nextSlot = System.nanoTime();
+    /**
+     * Whether a drain is scheduled.
+     */
+    private boolean scheduled;
+
+    /**
+     * Constructor.
+     *
+     * @param aDevice device being paced
+     */
+    DevicePacer(final ButtplugClientDevice aDevice) {
+        device = aDevice;
+    }
+
+    /**
+     * Claim the current slot if it is free and nothing is queued.
+     *
+     * @return true if the caller may send now
+     */
+    synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        if (queue.isEmpty() && now - nextSlot >= 0) {
+            nextSlot = now + gapNanos();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Send a message now or once its slot comes up.
+     *
+     * @param send   sends the message and returns its future
+     * @param output whether the message is an output command, which a stop command cancels while queued
+     * @return future for the reply
+     */
+    CompletableFuture<ButtplugMessage> submit(final Supplier<CompletableFuture<ButtplugMessage>> send,
+                                              final boolean output) {
+        if (tryAcquire()) {
+            return send.get();
+        }
+        CompletableFuture<ButtplugMessage> promise = new CompletableFuture<>();
+        enqueue(new Entry(() -> pipe(send.get(), promise), output, Collections.singletonList(promise)));
+        return promise;
+    }
+
+    /**
+     * Send several messages as one frame now or once its slot comes up. The frame takes a single slot.
+     *
+     * @param send   sends the messages and returns their futures
+     * @param count  number of messages
+     * @param output whether the messages are output commands, which a stop command cancels while queued
+     * @return futures for the replies
+     */
+    List<CompletableFuture<ButtplugMessage>> submitAll(final Supplier<List<CompletableFuture<ButtplugMessage>>> send,
+                                                       final int count, final boolean output) {
+        if (tryAcquire()) {
+            return send.get();
+        }
+        List<CompletableFuture<ButtplugMessage>> promises = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            promises.add(new CompletableFuture<>());
+        }
+        enqueue(new Entry(() -> {
+            List<CompletableFuture<ButtplugMessage>> sent = send.get();
+            for (int i = 0; i < promises.size(); i++) {
+                pipe(sent.get(i), promises.get(i));
+            }
+        }, output, promises));
+        return promises;
+    }
+
+    /**
+     * Queue a send that has no future to hand back, for callers that found the slot taken by {@link #tryAcquire()}.
+     *
+     * @param send   sends the message
+     * @param output whether the message is an output command
+     */
+    void defer(final Runnable send, final boolean output) {
+        enqueue(new Entry(send, output, Collections.<CompletableFuture<ButtplugMessage>>emptyList()));
+    }
+
+    /**
+     * Drop every queued output command, completing its futures with an Ok as the stop supersedes it.
+     */
+    void cancelOutputs() {
+        List<CompletableFuture<ButtplugMessage>> dropped = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> it = queue.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.output) {
+                    it.remove();
+                    dropped.addAll(entry.promises);
+                }
+            }
+        }
+        for (CompletableFuture<ButtplugMessage> promise : dropped) {
+            promise.complete(new Ok(ButtplugConsts.SYSTEM_MSG_ID));
+        }
+    }
+
+    /**
+     * Get the number of queued messages.
+     *
+     * @return queue length
+     */
+    synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    /**
+     * Get how long a message submitted now would wait before being sent.
+     *
+     * @return delay in nanoseconds
+     */
+    synchronized long getDelayNanos() {
+        long wait = Math.max(0, nextSlot - System.nanoTime());
+        return wait + queue.size() * gapNanos();
+    }
+
+    /**
+     * Add a send to the queue and make sure a drain is scheduled.
+     *
+     * @param entry queued send
+     */
+    private void enqueue(final Entry entry) {
+        long delay;
+        synchronized (this) {
+            queue.add(entry);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            delay = Math.max(0, nextSlot - System.nanoTime());
+        }
+        device.getClient().schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Send the message at the head of the queue and schedule the next one.
+     */
+    private void drain() {
+        Entry entry;
+        long delay = -1;
+        synchronized (this) {
+            entry = queue.poll();
+            if (entry == null) {
+                scheduled = false;
+                return;
+            }
+            long gap = gapNanos();
+            nextSlot = System.nanoTime() + gap;
+            if (queue.isEmpty()) {
+                scheduled = false;
+            } else {
+                delay = gap;
+            }
+        }
+        try {
+            entry.send.run();
+        } catch (RuntimeException e) {
+            fail(entry, e);
+        } finally {
+            if (delay >= 0) {
+                device.getClient().schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Complete the futures of a queued send that threw. A deferred send has no futures, so its failure is reported to
+     * the client's error handlers instead.
+     *
+     * @param entry queued send
+     * @param e     failure
+     */
+    private void fail(final Entry entry, final RuntimeException e) {
+        if (entry.promises.isEmpty()) {
+            if (!device.getClient().publishError(new Error(new ButtplugClientException(e)))) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        for (CompletableFuture<ButtplugMessage> promise : entry.promises) {
+            promise.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Get the device's timing gap.
+     *
+     * @return gap in nanoseconds, 0 if the device has none
+     */
+    private long gapNanos() {
+        Integer gap = device.getMessageTimingGap();
+        return gap == null || gap <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(gap);
+    }
+
+    /**
+     * Complete a caller's future with the result of the sent message.
+     *
+     * @param sent    future of the sent message
+     * @param promise caller's future
+     */
+    private static void pipe(final CompletableFuture<ButtplugMessage> sent,
+                             final CompletableFuture<ButtplugMessage> promise) {
+        sent.whenComplete((reply, ex) -> {
+            if (ex != null) {
+                promise.completeExceptionally(ex);
+            } else {
+                promise.complete(reply);
+            }
+        });
+    }
+
+    /**
+     * A queued send.
+     */
+    private static final class Entry {
+        /**
+         * Sends the message.
+         */
+        private final Runnable send;
+        /**
+         * Whether the message is an output command.
+         */
+        private final boolean output;
+        /**
+         * Futures handed to the caller.
+         */
+        private final List<CompletableFuture<ButtplugMessage>> promises;
+
+        /**
+         * Constructor.
+         *
+         * @param aSend     sends the message
+         * @param aOutput   whether the message is an output command
+         * @param aPromises futures handed to the caller
+         */
+        Entry(final Runnable aSend, final boolean aOutput, final List<CompletableFuture<ButtplugMessage>> aPromises) {
+            send = aSend;
+            output = aOutput;
+            promises = aPromises;
+        }
+    }
+}
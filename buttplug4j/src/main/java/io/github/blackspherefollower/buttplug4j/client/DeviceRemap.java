@@ -0,0 +1,110 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches the devices a client knew before a reconnect to the first DeviceList the server sends afterwards.
+ * <p>
+ * The server may list a device under a new index, so each known device is matched to a listed device with the same
+ * name and features, preferring the one at its old index. Known devices left over were removed; listed devices
+ * left over are new.
+ */
+final class DeviceRemap {
+
+    /**
+     * Listed device for each matched known device.
+     */
+    private final IdentityHashMap<ButtplugClientDevice, Device> matched = new IdentityHashMap<>();
+    /**
+     * Listed devices that match no known device.
+     */
+    private final List<Device> added = new ArrayList<>(0);
+    /**
+     * Known devices that match no listed device.
+     */
+    private final List<ButtplugClientDevice> removed;
+
+    /**
+     * Constructor.
+     *
+     * @param current devices known before the reconnect
+     * @param listed  devices the server lists now
+     */
+    DeviceRemap(final DeviceSnapshot current, final Collection<Device> listed) {
+        removed = new ArrayList<>(current.getDevices());
+        List<Device> unmatched = new ArrayList<>(0);
+        for (Device device : listed) {
+            ButtplugClientDevice same = current.getDevice(device.getDeviceIndex());
+            if (same != null && same.hasSignature(device)) {
+                removed.remove(same);
+                matched.put(same, device);
+            } else {
+                unmatched.add(device);
+            }
+        }
+        for (Device device : unmatched) {
+            ButtplugClientDevice moved = null;
+            for (ButtplugClientDevice dev : removed) {
+                if (dev.hasSignature(device)) {
+                    moved = dev;
+                    break;
+                }
+            }
+            if (moved != null) {
+                removed.remove(moved);
+                matched.put(moved, device);
+            } else {
+                added.add(device);
+            }
+        }
+    }
+
+    /**
+     * Get the listed device for each matched known device.
+     *
+     * @return matches
+     */
+    Map<ButtplugClientDevice, Device> getMatched() {
+        return matched;
+    }
+
+    /**
+     * Get the listed devices that match no known device.
+     *
+     * @return new devices
+     */
+    List<Device> getAdded() {
+        return added;
+    }
+
+    /**
+     * Get the known devices that match no listed device.
+     *
+     * @return removed devices
+     */
+    List<ButtplugClientDevice> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Get the new index of each matched device the server lists under another index.
+     *
+     * @return new device index by old device index
+     */
+    Map<Integer, Integer> getMoves() {
+        Map<Integer, Integer> moves = new HashMap<>();
+        for (Map.Entry<ButtplugClientDevice, Device> entry : matched.entrySet()) {
+            if (entry.getKey().getDeviceIndex() != entry.getValue().getDeviceIndex()) {
+                moves.put(entry.getKey().getDeviceIndex(), entry.getValue().getDeviceIndex());
+            }
+        }
+        return moves;
+    }
+}
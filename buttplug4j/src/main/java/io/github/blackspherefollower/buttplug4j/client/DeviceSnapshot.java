@@ -0,0 +1,143 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * The client's devices at one point in time.
+ * <p>
+ * The client publishes a new snapshot whenever a DeviceList adds, removes or changes a device, and hands out the
+ * current one as is, so listing the devices or looking one up by index never allocates. A snapshot never changes once
+ * published: its order and lookups use the indexes the devices had when it was taken. Devices are ordered by index.
+ * The version goes up with every published snapshot, so a caller that keeps state derived from the devices, e.g. a
+ * UI, can skip rebuilding it while the version stays the same.
+ * <p>
+ * The devices themselves are handles shared by every snapshot, and are updated in place. After a reconnect the server
+ * may list a device under another index: later snapshots find it under the new index, while an older snapshot still
+ * finds it under the old one, though its {@link ButtplugClientDevice#getDeviceIndex()} already reports the new one.
+ */
+public final class DeviceSnapshot {
+
+    /**
+     * Snapshot of a client that has no devices yet.
+     */
+    static final DeviceSnapshot EMPTY = new DeviceSnapshot(0, Collections.<ButtplugClientDevice>emptyList());
+    /**
+     * Largest device index held in the lookup table; higher indexes are found by binary search.
+     */
+    private static final int TABLE_LIMIT = 256;
+
+    /**
+     * Snapshot version.
+     */
+    private final long version;
+    /**
+     * Devices, ordered by index.
+     */
+    private final ButtplugClientDevice[] devices;
+    /**
+     * Index of each device when the snapshot was taken, in the same order as the devices.
+     */
+    private final int[] indexes;
+    /**
+     * Read-only view of the devices.
+     */
+    private final List<ButtplugClientDevice> deviceList;
+    /**
+     * Devices indexed by device index.
+     */
+    private final ButtplugClientDevice[] table;
+
+    /**
+     * Constructor.
+     *
+     * @param aVersion snapshot version
+     * @param aDevices devices, in any order
+     */
+    DeviceSnapshot(final long aVersion, final Collection<ButtplugClientDevice> aDevices) {
+        this(aVersion, aDevices, ButtplugClientDevice::getDeviceIndex);
+    }
+
+    /**
+     * Constructor, for devices about to move to new indexes.
+     *
+     * @param aVersion snapshot version
+     * @param aDevices devices, in any order
+     * @param indexOf  index to file each device under
+     */
+    DeviceSnapshot(final long aVersion, final Collection<ButtplugClientDevice> aDevices,
+                   final ToIntFunction<ButtplugClientDevice> indexOf) {
+        version = aVersion;
+        devices = aDevices.toArray(new ButtplugClientDevice[0]);
+        Arrays.sort(devices, Comparator.comparingInt(indexOf));
+        deviceList = Collections.unmodifiableList(Arrays.asList(devices));
+        indexes = new int[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            indexes[i] = indexOf.applyAsInt(devices[i]);
+        }
+        int maxIndex = devices.length == 0 ? -1 : indexes[devices.length - 1];
+        table = new ButtplugClientDevice[Math.max(0, Math.min(maxIndex + 1, TABLE_LIMIT))];
+        for (int i = 0; i < devices.length; i++) {
+            if (indexes[i] >= 0 && indexes[i] < table.length) {
+                table[indexes[i]] = devices[i];
+            }
+        }
+    }
+
+    /**
+     * Get the snapshot version. Versions only go up, and a snapshot with a higher version was published later.
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the devices.
+     *
+     * @return read-only list of devices, ordered by index
+     */
+    public List<ButtplugClientDevice> getDevices() {
+        return deviceList;
+    }
+
+    /**
+     * Get the number of devices.
+     *
+     * @return device count
+     */
+    public int size() {
+        return devices.length;
+    }
+
+    /**
+     * Look up a device by index.
+     *
+     * @param index device index
+     * @return device, or null if the snapshot has no such device
+     */
+    public ButtplugClientDevice getDevice(final long index) {
+        if (index >= 0 && index < table.length) {
+            return table[(int) index];
+        }
+        int low = 0;
+        int high = devices.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = indexes[mid];
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return devices[mid];
+            }
+        }
+        return null;
+    }
+}
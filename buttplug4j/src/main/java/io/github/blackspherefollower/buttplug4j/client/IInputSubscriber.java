@@ -0,0 +1,37 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+
+/**
+ * IInputSubscriber interface.
+ * <p>
+ * Receives readings from an {@link InputPublisher}, following the Reactive Streams subscriber contract: no reading is
+ * delivered before it is requested, and signals are never delivered concurrently.
+ */
+public interface IInputSubscriber {
+    /**
+     * Called once, before any other signal.
+     *
+     * @param subscription subscription, used to request readings or cancel
+     */
+    void onSubscribe(IInputSubscription subscription);
+
+    /**
+     * Called for each requested reading.
+     *
+     * @param reading reading
+     */
+    void onNext(InputReading reading);
+
+    /**
+     * Called when the subscription fails, e.g. because the server rejected it. No further signals follow.
+     *
+     * @param error cause
+     */
+    void onError(Throwable error);
+
+    /**
+     * Called when the device is removed or the client disconnects. No further signals follow.
+     */
+    void onComplete();
+}
@@ -0,0 +1,18 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+/**
+ * IInputSubscription interface.
+ */
+public interface IInputSubscription {
+    /**
+     * Request more readings.
+     *
+     * @param n number of readings, which must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving readings. Cancelling the last subscription of an input unsubscribes from it on the server.
+     */
+    void cancel();
+}
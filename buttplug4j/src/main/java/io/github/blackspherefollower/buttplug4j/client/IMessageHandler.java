@@ -0,0 +1,17 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+
+/**
+ * IMessageHandler interface.
+ *
+ * @param <T> message type
+ */
+public interface IMessageHandler<T extends ButtplugMessage> {
+    /**
+     * Called when a message of the registered type is received.
+     *
+     * @param msg message
+     */
+    void messageReceived(T msg);
+}
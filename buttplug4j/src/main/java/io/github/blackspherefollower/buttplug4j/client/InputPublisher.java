@@ -0,0 +1,534 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputCmd;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputCommandType;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the readings of one input of one device feature, keeping the server subscription open while anyone
+ * listens.
+ * <p>
+ * The first subscriber sends an InputCmd SUBSCRIBE and cancelling the last one sends UNSUBSCRIBE. A subscriber only
+ * receives readings it has requested. Readings arriving faster wait in a per-subscriber buffer that drops its oldest
+ * entry when full, so the default buffer of one conflates to the latest reading. A subscriber may also give a sample
+ * period, receiving at most the latest reading per period. Signals run on the client's event executor.
+ */
+public final class InputPublisher {
+
+    /**
+     * Default buffer size, which keeps only the latest reading.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1;
+
+    /**
+     * Buttplug client.
+     */
+    private final ButtplugClient client;
+    /**
+     * Device index. Changes if the server lists the device under another index after a reconnect.
+     */
+    private volatile int deviceIndex;
+    /**
+     * Feature index.
+     */
+    private final int featureIndex;
+    /**
+     * Input type.
+     */
+    private final ButtplugInput input;
+    /**
+     * Current subscribers.
+     */
+    private final CopyOnWriteArrayList<Sub> subscribers = new CopyOnWriteArrayList<>();
+    /**
+     * Number of readings dropped because a subscriber was behind.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Whether the server has been asked for readings. Guarded by this.
+     */
+    private boolean subscribed;
+    /**
+     * Whether the device went away; late subscribers are completed at once.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param aClient       client
+     * @param aDeviceIndex  device index
+     * @param aFeatureIndex feature index
+     * @param aInput        input type
+     */
+    InputPublisher(final ButtplugClient aClient, final int aDeviceIndex, final int aFeatureIndex,
+                   final ButtplugInput aInput) {
+        client = aClient;
+        deviceIndex = aDeviceIndex;
+        featureIndex = aFeatureIndex;
+        input = aInput;
+    }
+
+    /**
+     * Get the device index.
+     *
+     * @return device index
+     */
+    public int getDeviceIndex() {
+        return deviceIndex;
+    }
+
+    /**
+     * Get the feature index.
+     *
+     * @return feature index
+     */
+    public int getFeatureIndex() {
+        return featureIndex;
+    }
+
+    /**
+     * Get the input type.
+     *
+     * @return input type
+     */
+    public ButtplugInput getInput() {
+        return input;
+    }
+
+    /**
+     * Get the number of subscribers.
+     *
+     * @return subscriber count
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Get the number of readings dropped or sampled away because a subscriber was behind.
+     *
+     * @return dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Subscribe, keeping only the latest reading while the subscriber is busy.
+     *
+     * @param subscriber subscriber
+     */
+    public void subscribe(final IInputSubscriber subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_SIZE, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Subscribe with a buffer for readings the subscriber has not requested yet.
+     *
+     * @param subscriber subscriber
+     * @param bufferSize readings to hold before dropping the oldest
+     */
+    public void subscribe(final IInputSubscriber subscriber, final int bufferSize) {
+        subscribe(subscriber, bufferSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Subscribe with a buffer and a sample period.
+     *
+     * @param subscriber   subscriber
+     * @param bufferSize   readings to hold before dropping the oldest
+     * @param samplePeriod shortest time between readings, 0 to pass every reading on
+     * @param unit         unit of the sample period
+     */
+    public void subscribe(final IInputSubscriber subscriber, final int bufferSize, final long samplePeriod,
+                          final TimeUnit unit) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer must hold at least one reading: " + bufferSize);
+        }
+        Sub sub = new Sub(subscriber, bufferSize, unit.toNanos(samplePeriod));
+        subscriber.onSubscribe(sub);
+        synchronized (this) {
+            if (!closed && !sub.cancelled) {
+                subscribers.add(sub);
+                if (!subscribed) {
+                    subscribed = true;
+                    send(InputCommandType.SUBSCRIBE).whenComplete((reply, ex) -> {
+                        if (ex != null) {
+                            fail(ex);
+                        }
+                    });
+                }
+                return;
+            }
+        }
+        if (closed) {
+            sub.terminate(null);
+        }
+    }
+
+    /**
+     * Move the publisher to the index the server now lists its device under.
+     *
+     * @param index new device index
+     */
+    void setDeviceIndex(final int index) {
+        deviceIndex = index;
+    }
+
+    /**
+     * Ask the server for readings again if anyone listens, e.g. after a reconnect. Subscribers are failed if the
+     * server refuses.
+     */
+    synchronized void resubscribe() {
+        if (!subscribed || closed) {
+            return;
+        }
+        send(InputCommandType.SUBSCRIBE).whenComplete((reply, ex) -> {
+            if (ex != null) {
+                fail(ex);
+            }
+        });
+    }
+
+    /**
+     * Pass a reading to every subscriber.
+     *
+     * @param reading reading
+     */
+    void offer(final InputReading reading) {
+        for (Sub sub : subscribers) {
+            sub.offer(reading);
+        }
+    }
+
+    /**
+     * Complete every subscriber, e.g. because the device was removed. The server is not told.
+     */
+    void complete() {
+        closed = true;
+        for (Sub sub : drop()) {
+            sub.terminate(null);
+        }
+    }
+
+    /**
+     * Fail every subscriber, e.g. because the server rejected the subscription.
+     *
+     * @param cause cause
+     */
+    private void fail(final Throwable cause) {
+        for (Sub sub : drop()) {
+            sub.terminate(cause);
+        }
+    }
+
+    /**
+     * Remove every subscriber.
+     *
+     * @return removed subscribers
+     */
+    private synchronized List<Sub> drop() {
+        List<Sub> removed = new ArrayList<>(subscribers);
+        subscribers.clear();
+        subscribed = false;
+        return removed;
+    }
+
+    /**
+     * Remove a cancelled subscriber, unsubscribing on the server if it was the last.
+     *
+     * @param sub subscriber
+     */
+    private synchronized void remove(final Sub sub) {
+        if (!subscribers.remove(sub) || !subscribers.isEmpty() || !subscribed) {
+            return;
+        }
+        subscribed = false;
+        send(InputCommandType.UNSUBSCRIBE).whenComplete((reply, ex) -> {
+            if (ex != null && !client.publishError(new Error(new ButtplugClientException(
+                    "Unsubscribe from " + input.getName() + " failed: " + ex.getMessage())))) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Send an input command for this input.
+     *
+     * @param type command type
+     * @return stage completed with the reply
+     */
+    private CompletionStage<ButtplugMessage> send(final InputCommandType type) {
+        InputCmd cmd = new InputCmd(client.getNextMsgId(), deviceIndex, featureIndex, input.getName(), type);
+        return client.sendMessageAsync(cmd, client.getRequestTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One subscriber's demand, buffer and sampler.
+     */
+    private final class Sub implements IInputSubscription {
+        /**
+         * Subscriber.
+         */
+        private final IInputSubscriber subscriber;
+        /**
+         * Buffer size.
+         */
+        private final int capacity;
+        /**
+         * Sample period in nanoseconds, 0 if not sampling.
+         */
+        private final long periodNanos;
+        /**
+         * Readings waiting for demand. Guarded by this.
+         */
+        private final ArrayDeque<InputReading> buffer = new ArrayDeque<>();
+        /**
+         * Readings requested and not yet delivered.
+         */
+        private final AtomicLong requested = new AtomicLong();
+        /**
+         * Drain requests; a drain is running whenever this is above zero.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * Whether the subscriber is done receiving signals.
+         */
+        private volatile boolean cancelled;
+        /**
+         * Whether a terminal signal is due.
+         */
+        private volatile boolean done;
+        /**
+         * Failure to signal, or null to complete normally.
+         */
+        private volatile Throwable error;
+        /**
+         * Latest reading of the current sample period. Guarded by this.
+         */
+        private InputReading sample;
+        /**
+         * Whether a sample flush is scheduled. Guarded by this.
+         */
+        private boolean sampleScheduled;
+        /**
+         * Whether a sample was taken yet. Guarded by this.
+         */
+        private boolean sampled;
+        /**
+         * Time of the last sample, in nanoseconds. Guarded by this.
+         */
+        private long lastSample;
+
+        /**
+         * Constructor.
+         *
+         * @param aSubscriber  subscriber
+         * @param aCapacity    buffer size
+         * @param aPeriodNanos sample period in nanoseconds
+         */
+        Sub(final IInputSubscriber aSubscriber, final int aCapacity, final long aPeriodNanos) {
+            subscriber = aSubscriber;
+            capacity = aCapacity;
+            periodNanos = aPeriodNanos;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                remove(this);
+                terminate(new IllegalArgumentException("Request must be positive: " + n));
+                return;
+            }
+            long cur;
+            long next;
+            do {
+                cur = requested.get();
+                next = cur + n < 0 ? Long.MAX_VALUE : cur + n;
+            } while (cur != Long.MAX_VALUE && !requested.compareAndSet(cur, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                remove(this);
+                drain();
+            }
+        }
+
+        /**
+         * Take a reading, sampling it if a sample period is set.
+         *
+         * @param reading reading
+         */
+        void offer(final InputReading reading) {
+            if (cancelled || done) {
+                return;
+            }
+            if (periodNanos == 0) {
+                enqueue(reading);
+                return;
+            }
+            long delay;
+            synchronized (this) {
+                if (sample != null) {
+                    dropped.incrementAndGet();
+                }
+                sample = reading;
+                if (sampleScheduled) {
+                    return;
+                }
+                delay = sampled ? lastSample + periodNanos - System.nanoTime() : 0;
+                if (delay > 0) {
+                    sampleScheduled = true;
+                }
+            }
+            if (delay > 0) {
+                client.schedule(this::flushSample, delay, TimeUnit.NANOSECONDS);
+            } else {
+                flushSample();
+            }
+        }
+
+        /**
+         * Pass the latest sampled reading on.
+         */
+        private void flushSample() {
+            InputReading reading;
+            synchronized (this) {
+                sampleScheduled = false;
+                reading = sample;
+                sample = null;
+                if (reading == null) {
+                    return;
+                }
+                lastSample = System.nanoTime();
+                sampled = true;
+            }
+            enqueue(reading);
+        }
+
+        /**
+         * Buffer a reading, dropping the oldest one if the buffer is full.
+         *
+         * @param reading reading
+         */
+        private void enqueue(final InputReading reading) {
+            synchronized (this) {
+                if (buffer.size() == capacity) {
+                    buffer.pollFirst();
+                    dropped.incrementAndGet();
+                }
+                buffer.addLast(reading);
+            }
+            drain();
+        }
+
+        /**
+         * Deliver a terminal signal once buffered readings are drained, or at once for a failure.
+         *
+         * @param cause failure, or null to complete
+         */
+        void terminate(final Throwable cause) {
+            error = cause;
+            done = true;
+            drain();
+        }
+
+        /**
+         * Make sure a drain runs on the event executor.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            Executor ex = client.getEventBus().getExecutor();
+            try {
+                ex.execute(this::drainLoop);
+            } catch (RejectedExecutionException e) {
+                drainLoop();
+            }
+        }
+
+        /**
+         * Deliver requested readings and any terminal signal, until no drain request is left.
+         */
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+                while (!cancelled && emitted != demand && !(done && error != null)) {
+                    InputReading next;
+                    synchronized (this) {
+                        next = buffer.pollFirst();
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    try {
+                        subscriber.onNext(next);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        cancel();
+                    }
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (!cancelled && done && (error != null || isEmpty())) {
+                    cancelled = true;
+                    signalTerminal();
+                }
+                if (cancelled) {
+                    synchronized (this) {
+                        buffer.clear();
+                        sample = null;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Check if no reading is buffered.
+         *
+         * @return true if empty
+         */
+        private synchronized boolean isEmpty() {
+            return buffer.isEmpty();
+        }
+
+        /**
+         * Deliver onError or onComplete.
+         */
+        private void signalTerminal() {
+            try {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
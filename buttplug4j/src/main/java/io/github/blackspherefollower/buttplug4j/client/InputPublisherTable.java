@@ -0,0 +1,124 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A client's input publishers, keyed by device index, feature index and input type packed into a long.
+ * <p>
+ * Publishers follow their device across a reconnect: they are re-keyed when the server lists the device under a new
+ * index, and send their subscription again once the client is connected.
+ */
+final class InputPublisherTable {
+
+    /**
+     * Number of input types, for publisher keys.
+     */
+    private static final int INPUT_TYPES = ButtplugInput.values().length;
+
+    /**
+     * Publishers by key.
+     */
+    private final ConcurrentHashMap<Long, InputPublisher> publishers = new ConcurrentHashMap<>();
+
+    /**
+     * Build the key of a publisher.
+     *
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @param input        input type
+     * @return key
+     */
+    private static long key(final long deviceIndex, final int featureIndex, final ButtplugInput input) {
+        return deviceIndex << Integer.SIZE
+                | Integer.toUnsignedLong(featureIndex * INPUT_TYPES + input.ordinal());
+    }
+
+    /**
+     * Get the publisher for one input of a device feature, creating it if needed.
+     *
+     * @param client       client the publisher subscribes through
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @param input        input type
+     * @return publisher
+     */
+    InputPublisher get(final ButtplugClient client, final int deviceIndex, final int featureIndex,
+                       final ButtplugInput input) {
+        return publishers.computeIfAbsent(key(deviceIndex, featureIndex, input),
+                k -> new InputPublisher(client, deviceIndex, featureIndex, input));
+    }
+
+    /**
+     * Pass a reading to its publisher, if there is one.
+     *
+     * @param reading reading
+     */
+    void offer(final InputReading reading) {
+        if (publishers.isEmpty()) {
+            return;
+        }
+        ButtplugInput input = ButtplugInput.fromData(reading.getData());
+        InputPublisher publisher = input == null ? null
+                : publishers.get(key(reading.getDeviceIndex(), reading.getFeatureIndex(), input));
+        if (publisher != null) {
+            publisher.offer(reading);
+        }
+    }
+
+    /**
+     * Complete and forget the publishers of a device.
+     *
+     * @param deviceIndex device index, or -1 for every device
+     */
+    void close(final long deviceIndex) {
+        if (publishers.isEmpty()) {
+            return;
+        }
+        publishers.values().removeIf(publisher -> {
+            if (deviceIndex >= 0 && publisher.getDeviceIndex() != deviceIndex) {
+                return false;
+            }
+            publisher.complete();
+            return true;
+        });
+    }
+
+    /**
+     * Re-key the publishers of devices the server now lists under other indexes.
+     *
+     * @param moves new device index by old device index
+     */
+    void move(final Map<Integer, Integer> moves) {
+        if (moves.isEmpty() || publishers.isEmpty()) {
+            return;
+        }
+        // Take every moved publisher out first, so devices swapping indexes do not overwrite each other
+        List<InputPublisher> moved = new ArrayList<>();
+        publishers.values().removeIf(publisher -> {
+            if (!moves.containsKey(publisher.getDeviceIndex())) {
+                return false;
+            }
+            moved.add(publisher);
+            return true;
+        });
+        for (InputPublisher publisher : moved) {
+            int index = moves.get(publisher.getDeviceIndex());
+            publisher.setDeviceIndex(index);
+            publishers.put(key(index, publisher.getFeatureIndex(), publisher.getInput()), publisher);
+        }
+    }
+
+    /**
+     * Send the subscription of every publisher with subscribers again.
+     */
+    void resubscribe() {
+        for (InputPublisher publisher : publishers.values()) {
+            publisher.resubscribe();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builder for a batch of messages that are written to the server as a single frame.
+ * <p>
+ * The Buttplug wire format is an array of messages, so several commands can share one frame. Message ids are assigned
+ * as messages are added, and each message still gets its own reply future.
+ */
+public final class MessageBatch {
+
+    /**
+     * Buttplug client.
+     */
+    private final ButtplugClient client;
+    /**
+     * Queued messages.
+     */
+    private final List<ButtplugMessage> msgs = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param aClient client
+     */
+    MessageBatch(final ButtplugClient aClient) {
+        client = aClient;
+    }
+
+    /**
+     * Add a message to the batch, assigning it the next message id.
+     *
+     * @param msg message
+     * @return this batch
+     */
+    public MessageBatch add(final ButtplugMessage msg) {
+        msg.setId(client.getNextMsgId());
+        msgs.add(msg);
+        return this;
+    }
+
+    /**
+     * Get the number of queued messages.
+     *
+     * @return number of messages
+     */
+    public int size() {
+        return msgs.size();
+    }
+
+    /**
+     * Send the queued messages as one frame. The batch is empty afterwards and can be reused.
+     *
+     * @return one future per message, in the order the messages were added
+     */
+    public List<CompletableFuture<ButtplugMessage>> send() {
+        if (msgs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ButtplugMessage> frame = new ArrayList<>(msgs);
+        msgs.clear();
+        return client.sendMessages(frame);
+    }
+}
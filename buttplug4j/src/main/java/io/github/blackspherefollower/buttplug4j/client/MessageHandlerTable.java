@@ -0,0 +1,132 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Table of message handlers indexed by a small integer type tag.
+ * <p>
+ * Each message class is given a tag the first time it is seen, so dispatch is a class lookup plus an array index
+ * rather than a chain of instanceof checks. Registration copies the array, so dispatch never locks.
+ */
+final class MessageHandlerTable {
+
+    /**
+     * Initial table size, enough for the built-in message types.
+     */
+    private static final int INITIAL_SIZE = 32;
+    /**
+     * Next type tag to hand out.
+     */
+    private static final AtomicInteger NEXT_TAG = new AtomicInteger();
+    /**
+     * Type tag per message class.
+     */
+    private static final ClassValue<Integer> TAGS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(final Class<?> type) {
+            return NEXT_TAG.getAndIncrement();
+        }
+    };
+
+    /**
+     * Placeholder for types that were looked up and have no handler.
+     */
+    private static final IMessageHandler<ButtplugMessage> NONE = msg -> {
+    };
+
+    /**
+     * Registered handlers, indexed by type tag.
+     */
+    private IMessageHandler<?>[] registered = new IMessageHandler<?>[INITIAL_SIZE];
+    /**
+     * Handlers resolved for each type seen so far, including inherited handlers and {@link #NONE}. Rebuilt from
+     * {@link #registered} whenever a handler is registered.
+     */
+    private volatile IMessageHandler<?>[] resolved = new IMessageHandler<?>[INITIAL_SIZE];
+
+    /**
+     * Get the type tag for a message class.
+     *
+     * @param type message class
+     * @return type tag
+     */
+    static int tagOf(final Class<?> type) {
+        return TAGS.get(type);
+    }
+
+    /**
+     * Register a handler, replacing any existing handler for the same type.
+     *
+     * @param type    message class
+     * @param handler handler, or null to remove the handler
+     * @param <T>     message type
+     */
+    synchronized <T extends ButtplugMessage> void put(final Class<T> type, final IMessageHandler<? super T> handler) {
+        int tag = tagOf(type);
+        IMessageHandler<?>[] table = Arrays.copyOf(registered, Math.max(tag + 1, registered.length));
+        table[tag] = handler;
+        registered = table;
+        resolved = table.clone();
+    }
+
+    /**
+     * Get the handler registered for exactly this type.
+     *
+     * @param type message class
+     * @return handler, or null if none is registered
+     */
+    synchronized IMessageHandler<?> get(final Class<?> type) {
+        int tag = tagOf(type);
+        return tag < registered.length ? registered[tag] : null;
+    }
+
+    /**
+     * Pass a message to the handler for its type. Messages whose exact class has no handler use the handler of the
+     * nearest registered superclass; the result is cached so later messages of the same class are a single index.
+     *
+     * @param msg message
+     * @return true if a handler was found
+     */
+    @SuppressWarnings("unchecked")
+    boolean dispatch(final ButtplugMessage msg) {
+        int tag = tagOf(msg.getClass());
+        IMessageHandler<?>[] table = resolved;
+        IMessageHandler<?> handler = tag < table.length ? table[tag] : null;
+        if (handler == null) {
+            handler = resolve(msg.getClass(), tag);
+        }
+        if (handler == NONE) {
+            return false;
+        }
+        ((IMessageHandler<ButtplugMessage>) handler).messageReceived(msg);
+        return true;
+    }
+
+    /**
+     * Resolve and cache the handler for a type that has not been dispatched since the last registration.
+     *
+     * @param type message class
+     * @param tag  type tag of the class
+     * @return handler, or {@link #NONE}
+     */
+    private synchronized IMessageHandler<?> resolve(final Class<?> type, final int tag) {
+        IMessageHandler<?> handler = null;
+        for (Class<?> c = type; handler == null && ButtplugMessage.class.isAssignableFrom(c); c = c.getSuperclass()) {
+            int t = tagOf(c);
+            handler = t < registered.length ? registered[t] : null;
+        }
+        if (handler == null) {
+            handler = NONE;
+        }
+        IMessageHandler<?>[] table = resolved;
+        if (tag >= table.length) {
+            table = Arrays.copyOf(table, Math.max(tag + 1, table.length * 2));
+        }
+        table[tag] = handler;
+        resolved = table;
+        return handler;
+    }
+}
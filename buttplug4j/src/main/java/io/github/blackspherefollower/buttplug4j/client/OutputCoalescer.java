@@ -0,0 +1,133 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latest-value-wins sender for one output of one device feature.
+ * <p>
+ * Values submitted faster than the device's message timing gap are not queued: a new value replaces the one waiting
+ * to be sent, and the replaced caller's future is completed at once with an Ok, as its value was never going to
+ * reach the device. At most one command is sent per timing gap. A device without a timing gap gets every value
+ * sent as it arrives.
+ */
+final class OutputCoalescer {
+
+    /**
+     * Device to send to.
+     */
+    private final ButtplugClientDevice device;
+    /**
+     * Feature index.
+     */
+    private final int featureIndex;
+    /**
+     * Command waiting to be sent, or null.
+     */
+    private OutputCmd.IOutputCommand pending;
+    /**
+     * Future of the waiting command's caller.
+     */
+    private CompletableFuture<ButtplugMessage> pendingPromise;
+    /**
+     * Whether a flush is scheduled.
+     */
+    private boolean scheduled;
+    /**
+     * Time of the last flush, in nanoseconds.
+     */
+    private long lastFlush;
+    /**
+     * Whether a command has been sent yet.
+     */
+    private boolean flushed;
+
+    /**
+     * Constructor.
+     *
+     * @param aDevice       device to send to
+     * @param aFeatureIndex feature index
+     */
+    OutputCoalescer(final ButtplugClientDevice aDevice, final int aFeatureIndex) {
+        device = aDevice;
+        featureIndex = aFeatureIndex;
+    }
+
+    /**
+     * Submit a command, replacing any command still waiting to be sent.
+     *
+     * @param cmd command
+     * @return future completed with the reply, or with an Ok once a newer command replaces this one
+     */
+    CompletableFuture<ButtplugMessage> submit(final OutputCmd.IOutputCommand cmd) {
+        CompletableFuture<ButtplugMessage> promise = new CompletableFuture<>();
+        CompletableFuture<ButtplugMessage> superseded;
+        boolean waiting;
+        long delay = 0;
+        synchronized (this) {
+            superseded = pendingPromise;
+            pending = cmd;
+            pendingPromise = promise;
+            waiting = scheduled;
+            if (!waiting && flushed) {
+                delay = lastFlush + gapNanos() - System.nanoTime();
+                scheduled = delay > 0;
+            }
+        }
+        if (superseded != null) {
+            superseded.complete(new Ok(ButtplugConsts.SYSTEM_MSG_ID));
+        }
+        if (waiting) {
+            // The scheduled flush sends this value
+            return promise;
+        }
+        if (delay > 0) {
+            device.getClient().schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+        } else {
+            flush();
+        }
+        return promise;
+    }
+
+    /**
+     * Send the waiting command, if any.
+     */
+    void flush() {
+        OutputCmd.IOutputCommand cmd;
+        CompletableFuture<ButtplugMessage> promise;
+        synchronized (this) {
+            scheduled = false;
+            cmd = pending;
+            promise = pendingPromise;
+            pending = null;
+            pendingPromise = null;
+            if (cmd == null) {
+                return;
+            }
+            lastFlush = System.nanoTime();
+            flushed = true;
+        }
+        device.sendOutputCmd(featureIndex, cmd).whenComplete((reply, ex) -> {
+            if (ex != null) {
+                promise.completeExceptionally(ex);
+            } else {
+                promise.complete(reply);
+            }
+        });
+    }
+
+    /**
+     * Get the device's timing gap.
+     *
+     * @return gap in nanoseconds, 0 if the device has none
+     */
+    private long gapNanos() {
+        Integer gap = device.getMessageTimingGap();
+        return gap == null || gap <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(gap);
+    }
+}
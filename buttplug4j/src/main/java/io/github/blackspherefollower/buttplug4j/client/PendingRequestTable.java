@@ -0,0 +1,356 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Requests waiting for a reply, each with a deadline.
+ * <p>
+ * Message IDs are handed out sequentially, so requests live in a power-of-two ring indexed by ID modulo its capacity,
+ * and each slot remembers the full ID it holds. Registering and answering a request is then an array CAS with no
+ * boxing or hashing. A request whose slot is still held by another ID (more requests in flight than the ring holds,
+ * or IDs reused after a reset) goes to an overflow map instead, which is only consulted while it is non-empty.
+ * <p>
+ * The ring doubles as the timer structure: a single periodic task sweeps it once per tick and completes requests past
+ * their deadline exceptionally with a {@link TimeoutException}. Deadlines are taken from a clock the sweep updates,
+ * so registering a request does not read the system time either.
+ */
+final class PendingRequestTable {
+
+    /**
+     * Waiting requests, indexed by message ID modulo the capacity.
+     */
+    private final AtomicReferenceArray<Entry> slots;
+    /**
+     * Slot index mask.
+     */
+    private final int mask;
+    /**
+     * Waiting requests whose slot was taken.
+     */
+    private final ConcurrentHashMap<Integer, Entry> overflow = new ConcurrentHashMap<>();
+    /**
+     * Tick length in nanoseconds.
+     */
+    private final long tickNanos;
+    /**
+     * Number of requests that timed out.
+     */
+    private final AtomicLong expired = new AtomicLong();
+    /**
+     * Time of the last sweep, in nanoseconds.
+     */
+    private volatile long clock = System.nanoTime();
+    /**
+     * Scheduler to run the sweeps on.
+     */
+    private final Supplier<ScheduledExecutorService> scheduler;
+    /**
+     * Task driving the sweeps, or null when stopped.
+     */
+    private volatile ScheduledFuture<?> sweep;
+
+    /**
+     * Constructor.
+     *
+     * @param aTickNanos tick length in nanoseconds, which is the precision of the deadlines
+     * @param capacity   number of ring slots, a power of two
+     */
+    PendingRequestTable(final long aTickNanos, final int capacity) {
+        this(aTickNanos, capacity, ButtplugClient::getDefaultScheduler);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aTickNanos tick length in nanoseconds, which is the precision of the deadlines
+     * @param capacity   number of ring slots, a power of two
+     * @param aScheduler supplies the scheduler to run the sweeps on, looked up each time the sweeps start
+     */
+    PendingRequestTable(final long aTickNanos, final int capacity,
+                        final Supplier<ScheduledExecutorService> aScheduler) {
+        scheduler = aScheduler;
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        tickNanos = aTickNanos;
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the tick length.
+     *
+     * @return tick length in nanoseconds
+     */
+    long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Register a request. A request already registered under the same ID is completed with an Error.
+     *
+     * @param id           message ID
+     * @param promise      future to complete with the reply
+     * @param timeoutNanos time to wait for the reply, in nanoseconds
+     * @return the promise
+     */
+    CompletableFuture<ButtplugMessage> register(final int id, final CompletableFuture<ButtplugMessage> promise,
+                                                final long timeoutNanos) {
+        if (sweep == null) {
+            start();
+        }
+        // The clock may be up to a tick behind, so push the deadline out by a tick rather than expire early
+        Entry entry = new Entry(id, promise, clock + tickNanos + timeoutNanos);
+        int idx = id & mask;
+        while (true) {
+            Entry cur = slots.get(idx);
+            if (cur != null && cur.id != id) {
+                supersede(overflow.put(id, entry), promise);
+                return promise;
+            }
+            if (slots.compareAndSet(idx, cur, entry)) {
+                supersede(cur, promise);
+                if (!overflow.isEmpty()) {
+                    supersede(overflow.remove(id), promise);
+                }
+                return promise;
+            }
+        }
+    }
+
+    /**
+     * Give a waiting request a new deadline, counted from now.
+     *
+     * @param id           message ID
+     * @param timeoutNanos time to wait for the reply, in nanoseconds
+     * @return true if the request was still waiting
+     */
+    boolean reschedule(final int id, final long timeoutNanos) {
+        Entry entry = slots.get(id & mask);
+        if (entry == null || entry.id != id) {
+            entry = overflow.isEmpty() ? null : overflow.get(id);
+        }
+        if (entry == null || entry.promise == null) {
+            return false;
+        }
+        entry.deadline = clock + tickNanos + timeoutNanos;
+        return true;
+    }
+
+    /**
+     * Remove a request, e.g. because its reply arrived.
+     *
+     * @param id message ID
+     * @return the request's future, or null if no request is waiting under this ID
+     */
+    CompletableFuture<ButtplugMessage> remove(final int id) {
+        int idx = id & mask;
+        Entry entry = slots.get(idx);
+        if (entry == null || entry.id != id || !slots.compareAndSet(idx, entry, null)) {
+            entry = overflow.isEmpty() ? null : overflow.remove(id);
+            if (entry == null) {
+                return null;
+            }
+        }
+        CompletableFuture<ButtplugMessage> promise = entry.promise;
+        entry.promise = null;
+        return promise;
+    }
+
+    /**
+     * Get the number of waiting requests. This walks the ring, so it is meant for metrics rather than hot paths.
+     *
+     * @return number of requests
+     */
+    int size() {
+        int size = overflow.size();
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Check if no requests are waiting.
+     *
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the number of requests that timed out.
+     *
+     * @return expiry count
+     */
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * Remove every waiting request and complete it with a reply.
+     *
+     * @param reply supplies the reply for each request
+     */
+    void completeAll(final Supplier<? extends ButtplugMessage> reply) {
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null) {
+                complete(entry, reply.get());
+            }
+        }
+        for (Entry entry : overflow.values()) {
+            complete(entry, reply.get());
+        }
+    }
+
+    /**
+     * Stop the sweeps. They restart when the next request is registered.
+     */
+    synchronized void stop() {
+        if (sweep != null) {
+            sweep.cancel(false);
+            sweep = null;
+        }
+    }
+
+    /**
+     * Start the sweeps if they are not running.
+     */
+    private synchronized void start() {
+        if (sweep != null) {
+            return;
+        }
+        clock = System.nanoTime();
+        long ms = Math.max(1, TimeUnit.NANOSECONDS.toMillis(tickNanos));
+        // Timeouts complete requests on the sweep, so callbacks sending from there must not wait for the window
+        sweep = scheduler.get().scheduleAtFixedRate(RequestWindow.noWait(() -> advance(System.nanoTime())), ms, ms,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Advance the clock and expire every request whose deadline has passed.
+     *
+     * @param now current time in nanoseconds
+     */
+    void advance(final long now) {
+        clock = now;
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && now - entry.deadline >= 0) {
+                expire(entry);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            for (Entry entry : overflow.values()) {
+                if (now - entry.deadline >= 0) {
+                    expire(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Expire a request, unless it was answered in the meantime.
+     *
+     * @param entry entry
+     */
+    private void expire(final Entry entry) {
+        CompletableFuture<ButtplugMessage> promise = entry.promise;
+        if (promise != null && removeEntry(entry)) {
+            entry.promise = null;
+            expired.incrementAndGet();
+            promise.completeExceptionally(new TimeoutException("No reply received for message " + entry.id));
+        }
+    }
+
+    /**
+     * Remove an entry and complete it with a reply.
+     *
+     * @param entry entry
+     * @param reply reply
+     */
+    private void complete(final Entry entry, final ButtplugMessage reply) {
+        CompletableFuture<ButtplugMessage> promise = entry.promise;
+        if (removeEntry(entry)) {
+            entry.promise = null;
+            if (promise != null) {
+                promise.complete(reply);
+            }
+        }
+    }
+
+    /**
+     * Remove a specific entry, if it is still registered.
+     *
+     * @param entry entry
+     * @return true if the entry was removed
+     */
+    private boolean removeEntry(final Entry entry) {
+        return slots.compareAndSet(entry.id & mask, entry, null) || overflow.remove(entry.id, entry);
+    }
+
+    /**
+     * Complete the future of a replaced entry with an Error, so it does not wait forever and its in-flight slot is
+     * released.
+     *
+     * @param entry       entry, may be null
+     * @param replacement future of the request replacing it
+     */
+    private static void supersede(final Entry entry, final CompletableFuture<ButtplugMessage> replacement) {
+        if (entry == null) {
+            return;
+        }
+        CompletableFuture<ButtplugMessage> promise = entry.promise;
+        entry.promise = null;
+        if (promise != null && promise != replacement) {
+            promise.complete(new Error("Replaced by a request with the same ID", Error.ErrorClass.ERROR_MSG,
+                    entry.id));
+        }
+    }
+
+    /**
+     * A waiting request.
+     */
+    private static final class Entry {
+        /**
+         * Message ID.
+         */
+        private final int id;
+        /**
+         * Time at which the request expires, in nanoseconds.
+         */
+        private volatile long deadline;
+        /**
+         * Future for the reply, or null once the request is answered, expired or replaced.
+         */
+        private volatile CompletableFuture<ButtplugMessage> promise;
+
+        /**
+         * Constructor.
+         *
+         * @param aId       message ID
+         * @param aPromise  future for the reply
+         * @param aDeadline time at which the request expires
+         */
+        Entry(final int aId, final CompletableFuture<ButtplugMessage> aPromise, final long aDeadline) {
+            id = aId;
+            promise = aPromise;
+            deadline = aDeadline;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a client tries to reconnect after losing its connection, set with
+ * {@link ButtplugClient#setReconnectPolicy(ReconnectPolicy)}.
+ * <p>
+ * The delay before an attempt doubles with every failed attempt, from the initial delay up to the maximum delay.
+ * Each delay is jittered to between half and all of its nominal value, so clients that lost the same server do not
+ * all come back at once.
+ */
+public final class ReconnectPolicy {
+
+    /**
+     * Default delay before the first attempt, in milliseconds.
+     */
+    public static final long DEFAULT_INITIAL_DELAY = 500;
+    /**
+     * Default longest delay between attempts, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 30_000;
+
+    /**
+     * Delay before the first attempt, in nanoseconds.
+     */
+    private final long initialDelay;
+    /**
+     * Longest delay between attempts, in nanoseconds.
+     */
+    private final long maxDelay;
+    /**
+     * Number of attempts before giving up, or 0 to never give up.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Constructor for a policy with the default delays that never gives up.
+     */
+    public ReconnectPolicy() {
+        this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, TimeUnit.MILLISECONDS, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aInitialDelay delay before the first attempt
+     * @param aMaxDelay     longest delay between attempts
+     * @param unit          unit of the delays
+     * @param aMaxAttempts  number of attempts before giving up, or 0 to never give up
+     */
+    public ReconnectPolicy(final long aInitialDelay, final long aMaxDelay, final TimeUnit unit,
+                           final int aMaxAttempts) {
+        if (aInitialDelay <= 0 || aMaxDelay < aInitialDelay) {
+            throw new IllegalArgumentException("Delays must be positive and the maximum at least the initial: "
+                    + aInitialDelay + ", " + aMaxDelay);
+        }
+        if (aMaxAttempts < 0) {
+            throw new IllegalArgumentException("Attempts must not be negative: " + aMaxAttempts);
+        }
+        initialDelay = unit.toNanos(aInitialDelay);
+        maxDelay = unit.toNanos(aMaxDelay);
+        maxAttempts = aMaxAttempts;
+    }
+
+    /**
+     * Get the delay before the first attempt.
+     *
+     * @param unit unit of the result
+     * @return initial delay
+     */
+    public long getInitialDelay(final TimeUnit unit) {
+        return unit.convert(initialDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest delay between attempts.
+     *
+     * @param unit unit of the result
+     * @return maximum delay
+     */
+    public long getMaxDelay(final TimeUnit unit) {
+        return unit.convert(maxDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of attempts before giving up.
+     *
+     * @return attempts, or 0 if the client never gives up
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Check whether another attempt may follow a failed one.
+     *
+     * @param attempt number of the failed attempt, from 1
+     * @return true if the client should try again
+     */
+    public boolean allowsRetry(final int attempt) {
+        return maxAttempts == 0 || attempt < maxAttempts;
+    }
+
+    /**
+     * Get the jittered delay before an attempt.
+     *
+     * @param attempt attempt number, from 1
+     * @return delay in nanoseconds
+     */
+    public long getDelayNanos(final int attempt) {
+        long delay = initialDelay;
+        for (int i = 1; i < attempt && delay < maxDelay; i++) {
+            delay = delay > maxDelay >>> 1 ? maxDelay : delay << 1;
+        }
+        long half = delay >>> 1;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
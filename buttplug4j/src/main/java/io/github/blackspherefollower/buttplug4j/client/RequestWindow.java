@@ -0,0 +1,242 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of requests in flight on a connection.
+ * <p>
+ * Each admitted request holds a permit until its future completes, whether by reply, timeout or disconnect. When
+ * the window is full the {@link ButtplugClient.BackpressurePolicy} decides whether the sender waits for a permit,
+ * is turned away, or takes the permit of the oldest output command still waiting for its reply.
+ */
+final class RequestWindow {
+
+    /**
+     * Set on threads that must not wait for a permit: the client's scheduler threads, and transport threads while
+     * they dispatch received messages. Waiting there could hold up the replies that free the window.
+     */
+    private static final ThreadLocal<Boolean> NO_WAIT = new ThreadLocal<>();
+
+    /**
+     * Maximum number of requests in flight.
+     */
+    private final int capacity;
+    /**
+     * What to do when the window is full.
+     */
+    private final ButtplugClient.BackpressurePolicy policy;
+    /**
+     * Free slots.
+     */
+    private final Semaphore permits;
+    /**
+     * Output commands in flight, oldest first. Only tracked for DROP_OLDEST_OUTPUT.
+     */
+    private final Map<Integer, CompletableFuture<ButtplugMessage>> outputs;
+
+    /**
+     * Constructor.
+     *
+     * @param aCapacity maximum number of requests in flight
+     * @param aPolicy   what to do when the window is full
+     */
+    RequestWindow(final int aCapacity, final ButtplugClient.BackpressurePolicy aPolicy) {
+        if (aCapacity <= 0) {
+            throw new IllegalArgumentException("Window must hold at least one request: " + aCapacity);
+        }
+        capacity = aCapacity;
+        policy = aPolicy;
+        permits = new Semaphore(aCapacity, policy == ButtplugClient.BackpressurePolicy.BLOCK);
+        outputs = policy == ButtplugClient.BackpressurePolicy.DROP_OLDEST_OUTPUT ? new LinkedHashMap<>() : null;
+    }
+
+    /**
+     * Mark the current thread as one that must not wait for a permit.
+     *
+     * @return true if the thread was not marked yet, in which case the caller clears the mark with
+     * {@link #endNoWait()}
+     */
+    static boolean beginNoWait() {
+        if (NO_WAIT.get() != null) {
+            return false;
+        }
+        NO_WAIT.set(Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Clear the mark set by {@link #beginNoWait()}.
+     */
+    static void endNoWait() {
+        NO_WAIT.remove();
+    }
+
+    /**
+     * Wrap a task so that requests it sends never wait for a permit, e.g. because it runs on the client's scheduler.
+     *
+     * @param task task
+     * @return wrapped task
+     */
+    static Runnable noWait(final Runnable task) {
+        return () -> {
+            boolean marked = beginNoWait();
+            try {
+                task.run();
+            } finally {
+                if (marked) {
+                    endNoWait();
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the maximum number of requests in flight.
+     *
+     * @return capacity
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the policy.
+     *
+     * @return policy
+     */
+    ButtplugClient.BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the number of requests holding a permit.
+     *
+     * @return requests in flight
+     */
+    int getInFlight() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Get the number of senders waiting for a permit.
+     *
+     * @return waiting senders
+     */
+    int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Take a permit without waiting.
+     *
+     * @return true if a permit was taken
+     */
+    boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    /**
+     * Take a permit, waiting up to a timeout.
+     *
+     * @param timeoutNanos time to wait, in nanoseconds
+     * @return true if a permit was taken
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean acquire(final long timeoutNanos) throws InterruptedException {
+        return permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Take a permit, applying the policy if the window is full. Under BLOCK, threads that must not wait are turned
+     * away instead.
+     *
+     * @param timeoutNanos time to wait for a permit under BLOCK, in nanoseconds
+     * @param pending      pending requests, to drop the oldest output command from
+     * @param rejected     count of turned away and dropped requests
+     * @return true if the request may be sent
+     */
+    boolean admit(final long timeoutNanos, final PendingRequestTable pending, final AtomicLong rejected) {
+        if (tryAcquire()) {
+            return true;
+        }
+        switch (policy) {
+            case BLOCK:
+                if (NO_WAIT.get() != null) {
+                    return false;
+                }
+                try {
+                    return acquire(timeoutNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case DROP_OLDEST_OUTPUT:
+                for (Integer oldest = pollOldestOutput(); oldest != null; oldest = pollOldestOutput()) {
+                    // Completing the dropped request releases its permit
+                    CompletableFuture<ButtplugMessage> dropped = pending.remove(oldest);
+                    if (dropped != null) {
+                        rejected.incrementAndGet();
+                        dropped.complete(new Error("Dropped for a newer request", Error.ErrorClass.ERROR_MSG, oldest));
+                    }
+                    if (tryAcquire()) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Hold a permit until a request's future completes.
+     *
+     * @param id      message ID
+     * @param output  whether the request is an output command that may be dropped
+     * @param promise future for the reply
+     */
+    void track(final int id, final boolean output, final CompletableFuture<ButtplugMessage> promise) {
+        if (output && outputs != null) {
+            synchronized (outputs) {
+                outputs.put(id, promise);
+            }
+        }
+        promise.whenComplete((reply, ex) -> {
+            if (output && outputs != null) {
+                synchronized (outputs) {
+                    outputs.remove(id, promise);
+                }
+            }
+            permits.release();
+        });
+    }
+
+    /**
+     * Stop tracking the oldest output command in flight. Its permit is released once its future is completed.
+     *
+     * @return the command's message ID, or null if no output command is in flight
+     */
+    Integer pollOldestOutput() {
+        if (outputs == null) {
+            return null;
+        }
+        synchronized (outputs) {
+            Iterator<Integer> it = outputs.keySet().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            Integer id = it.next();
+            it.remove();
+            return id;
+        }
+    }
+}
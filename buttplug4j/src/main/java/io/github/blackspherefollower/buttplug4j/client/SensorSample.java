@@ -0,0 +1,108 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latest reading of one input, as kept by the client.
+ */
+public final class SensorSample {
+
+    /**
+     * Feature index.
+     */
+    private final int featureIndex;
+    /**
+     * Input type.
+     */
+    private final ButtplugInput input;
+    /**
+     * Reading value.
+     */
+    private final int value;
+    /**
+     * Time the reading arrived, from {@link System#nanoTime()}.
+     */
+    private final long timestampNanos;
+    /**
+     * Number of readings received for this input, including this one.
+     */
+    private final long sequence;
+
+    /**
+     * Constructor.
+     *
+     * @param aFeatureIndex   feature index
+     * @param aInput          input type
+     * @param aValue          reading value
+     * @param aTimestampNanos time the reading arrived
+     * @param aSequence       number of readings received
+     */
+    SensorSample(final int aFeatureIndex, final ButtplugInput aInput, final int aValue, final long aTimestampNanos,
+                 final long aSequence) {
+        featureIndex = aFeatureIndex;
+        input = aInput;
+        value = aValue;
+        timestampNanos = aTimestampNanos;
+        sequence = aSequence;
+    }
+
+    /**
+     * Get the feature index.
+     *
+     * @return feature index
+     */
+    public int getFeatureIndex() {
+        return featureIndex;
+    }
+
+    /**
+     * Get the input type.
+     *
+     * @return input type
+     */
+    public ButtplugInput getInput() {
+        return input;
+    }
+
+    /**
+     * Get the reading value.
+     *
+     * @return value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Get the time the reading arrived.
+     *
+     * @return timestamp from {@link System#nanoTime()}
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Get the number of readings received for this input, including this one.
+     *
+     * @return sequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the time since the reading arrived.
+     *
+     * @param unit unit to return the age in
+     * @return age
+     */
+    public long getAge(final TimeUnit unit) {
+        return unit.convert(System.nanoTime() - timestampNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "SensorSample{" + input.getName() + "@" + featureIndex + "=" + value + ", #" + sequence + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest reading of every input of a device, kept in primitive arrays with one slot per feature and input type.
+ * <p>
+ * Each slot is guarded by a sequence number, seqlock style: a writer makes it odd, stores the value and timestamp,
+ * then makes it even again. A reader takes the value and timestamp between two reads of an even, unchanged sequence
+ * and retries otherwise, so reads take no lock and only retry while a write to the same slot is in progress.
+ * Reading just the value is a single array read. The arrays are atomic, which orders the accesses without fences.
+ */
+final class SensorStateTable {
+
+    /**
+     * Number of input types.
+     */
+    private static final int INPUT_TYPES = ButtplugInput.values().length;
+
+    /**
+     * Slot sequences: twice the number of writes, odd while a write is in progress.
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * Slot values.
+     */
+    private final AtomicIntegerArray values;
+    /**
+     * Slot timestamps, from {@link System#nanoTime()}.
+     */
+    private final AtomicLongArray timestamps;
+
+    /**
+     * Constructor.
+     *
+     * @param features number of feature indexes to track, from 0
+     */
+    SensorStateTable(final int features) {
+        int slots = features * INPUT_TYPES;
+        sequences = new AtomicLongArray(slots);
+        values = new AtomicIntegerArray(slots);
+        timestamps = new AtomicLongArray(slots);
+    }
+
+    /**
+     * Get the number of slots.
+     *
+     * @return slots
+     */
+    int size() {
+        return sequences.length();
+    }
+
+    /**
+     * Get a table tracking a different number of feature indexes, holding the readings of the indexes both track.
+     * A write to this table racing with the copy may not be carried over.
+     *
+     * @param features number of feature indexes to track, from 0
+     * @return this table if it already tracks that many, otherwise a new table
+     */
+    SensorStateTable resize(final int features) {
+        int current = size() / INPUT_TYPES;
+        if (features == current) {
+            return this;
+        }
+        SensorStateTable next = new SensorStateTable(features);
+        for (int featureIndex = 0; featureIndex < Math.min(features, current); featureIndex++) {
+            for (ButtplugInput input : ButtplugInput.values()) {
+                SensorSample sample = read(featureIndex, input);
+                if (sample != null) {
+                    next.write(featureIndex, input, sample.getValue(), sample.getTimestampNanos());
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Store a reading.
+     *
+     * @param featureIndex feature index
+     * @param input        input type
+     * @param value        value
+     * @param nanos        time the reading arrived
+     */
+    void write(final int featureIndex, final ButtplugInput input, final int value, final long nanos) {
+        int slot = slot(featureIndex, input);
+        if (slot < 0) {
+            return;
+        }
+        while (true) {
+            long seq = sequences.get(slot);
+            if ((seq & 1) == 0 && sequences.compareAndSet(slot, seq, seq + 1)) {
+                values.set(slot, value);
+                timestamps.set(slot, nanos);
+                sequences.set(slot, seq + 2);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the latest reading.
+     *
+     * @param featureIndex feature index
+     * @param input        input type
+     * @return reading, or null if none has arrived
+     */
+    SensorSample read(final int featureIndex, final ButtplugInput input) {
+        int slot = slot(featureIndex, input);
+        if (slot < 0) {
+            return null;
+        }
+        while (true) {
+            long seq = sequences.get(slot);
+            if (seq == 0) {
+                return null;
+            }
+            if ((seq & 1) == 0) {
+                int value = values.get(slot);
+                long nanos = timestamps.get(slot);
+                if (sequences.get(slot) == seq) {
+                    return new SensorSample(featureIndex, input, value, nanos, seq >>> 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the latest value.
+     *
+     * @param featureIndex feature index
+     * @param input        input type
+     * @param defaultValue value to return if no reading has arrived
+     * @return value
+     */
+    int readValue(final int featureIndex, final ButtplugInput input, final int defaultValue) {
+        int slot = slot(featureIndex, input);
+        // A sequence below 2 means the first write has not finished
+        return slot < 0 || sequences.get(slot) < 2 ? defaultValue : values.get(slot);
+    }
+
+    /**
+     * Get the slot of an input.
+     *
+     * @param featureIndex feature index
+     * @param input        input type
+     * @return slot, or -1 if not tracked
+     */
+    private int slot(final int featureIndex, final ButtplugInput input) {
+        if (featureIndex < 0 || featureIndex >= sequences.length() / INPUT_TYPES) {
+            return -1;
+        }
+        return featureIndex * INPUT_TYPES + input.ordinal();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Message IDs for fire-and-forget output commands, with the device and feature of the most recent ones so an Error
+ * reply can be reported with its target.
+ * <p>
+ * The memory is a ring indexed by ID modulo its size and is best effort: a slot overwritten by a newer command, or
+ * written concurrently, makes the reply fall back to being reported as is.
+ */
+final class UntrackedTargets {
+
+    /**
+     * Number of recent commands whose device and feature are remembered.
+     */
+    static final int SIZE = 1024;
+    /**
+     * Message ID counter.
+     */
+    private final AtomicInteger nextId = new AtomicInteger(ButtplugClient.UNTRACKED_ID_BASE);
+    /**
+     * Message IDs of recent commands, indexed by ID modulo the size.
+     */
+    private final int[] ids = new int[SIZE];
+    /**
+     * Device index (high half) and feature index (low half) of recent commands.
+     */
+    private final long[] targets = new long[SIZE];
+
+    /**
+     * Get the next message ID, remembering its target.
+     *
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @return message ID
+     */
+    int next(final long deviceIndex, final int featureIndex) {
+        int id = nextId.getAndUpdate(i -> i == Integer.MAX_VALUE ? ButtplugClient.UNTRACKED_ID_BASE : i + 1);
+        int slot = id & (SIZE - 1);
+        targets[slot] = deviceIndex << Integer.SIZE | Integer.toUnsignedLong(featureIndex);
+        ids[slot] = id;
+        return id;
+    }
+
+    /**
+     * Name the target of the command an Error replies to, if it is still remembered.
+     *
+     * @param err error
+     * @return error naming the device and feature, or err itself
+     */
+    Error describe(final Error err) {
+        int id = err.getId();
+        int slot = id & (SIZE - 1);
+        long target = targets[slot];
+        if (ids[slot] != id) {
+            return err;
+        }
+        return new Error("Output to device " + (target >>> Integer.SIZE) + " feature " + (int) target
+                + " failed: " + err.getErrorMessage(), err.getErrorCode(), id);
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Wire codec used by a ButtplugClient to turn Buttplug messages into transport frames and back.
+ * <p>
+ * The default implementation is {@link ButtplugJsonMessageParser}, which speaks the JSON framing used by Buttplug
+ * servers. Binary codecs produce frames that only a peer using the same codec can read, e.g. a relay under our
+ * control.
+ */
+public interface ButtplugCodec {
+
+    /**
+     * Check whether this codec produces binary frames. Text codecs produce UTF-8 text that can be sent as a
+     * websocket text frame; binary codecs must be sent as binary frames.
+     *
+     * @return true if frames are binary
+     */
+    boolean isBinary();
+
+    /**
+     * Decode a text frame, passing its messages to the consumer in order once the whole frame has been decoded. A
+     * malformed frame passes none on.
+     *
+     * @param frame text frame
+     * @param sink  message consumer
+     * @throws ButtplugProtocolException if decoding fails, or if this is a binary codec
+     */
+    void decode(String frame, Consumer<ButtplugMessage> sink) throws ButtplugProtocolException;
+
+    /**
+     * Decode a binary frame, passing its messages to the consumer in order once the whole frame has been decoded.
+     * A malformed frame passes none on. Text codecs decode the bytes as UTF-8.
+     *
+     * @param frame  frame bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @param sink   message consumer
+     * @throws ButtplugProtocolException if decoding fails
+     */
+    void decode(byte[] frame, int offset, int length, Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException;
+
+    /**
+     * Decode a binary frame, passing its messages to the consumer in order once the whole frame has been decoded.
+     * A malformed frame passes none on.
+     * <p>
+     * Heap buffers are decoded in place; the buffer position is advanced past the consumed bytes.
+     *
+     * @param frame frame buffer
+     * @param sink  message consumer
+     * @throws ButtplugProtocolException if decoding fails
+     */
+    default void decode(final ByteBuffer frame, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        if (frame.hasArray()) {
+            decode(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), sink);
+            frame.position(frame.limit());
+            return;
+        }
+        byte[] copy = new byte[frame.remaining()];
+        frame.get(copy);
+        decode(copy, 0, copy.length, sink);
+    }
+
+    /**
+     * Encode messages into a text frame.
+     *
+     * @param msgs messages
+     * @return text frame
+     * @throws ButtplugProtocolException if encoding fails, or if this is a binary codec
+     */
+    String encodeText(List<ButtplugMessage> msgs) throws ButtplugProtocolException;
+
+    /**
+     * Encode messages into a binary frame. Text codecs return the UTF-8 bytes of the text frame.
+     *
+     * @param msgs messages
+     * @return frame bytes
+     * @throws ButtplugProtocolException if encoding fails
+     */
+    byte[] encode(List<ButtplugMessage> msgs) throws ButtplugProtocolException;
+}
@@ -0,0 +1,628 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ping;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.StopCmd;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hand-written streaming codec for the high-frequency message types (OutputCmd, StopCmd, Ok, Ping and
+ * InputReading).
+ * <p>
+ * These are read and written directly against the JsonParser/JsonGenerator, bypassing the polymorphic databind
+ * machinery. Anything this codec does not recognise is handed to the supplied ObjectMapper, so the produced JSON and
+ * the decoded objects are the same as those of the databind path.
+ */
+final class ButtplugHotMessageCodec {
+
+    /**
+     * OutputCmd type name.
+     */
+    private static final String OUTPUT_CMD = "OutputCmd";
+    /**
+     * InputReading type name.
+     */
+    private static final String INPUT_READING = "InputReading";
+    /**
+     * StopCmd type name.
+     */
+    private static final String STOP_CMD = "StopCmd";
+    /**
+     * Ok type name.
+     */
+    private static final String OK = "Ok";
+    /**
+     * Ping type name.
+     */
+    private static final String PING = "Ping";
+    /**
+     * Id property.
+     */
+    private static final String ID = "Id";
+    /**
+     * DeviceIndex property.
+     */
+    private static final String DEVICE_INDEX = "DeviceIndex";
+    /**
+     * FeatureIndex property.
+     */
+    private static final String FEATURE_INDEX = "FeatureIndex";
+    /**
+     * Command property.
+     */
+    private static final String COMMAND = "Command";
+    /**
+     * Reading property.
+     */
+    private static final String READING = "Reading";
+    /**
+     * Inputs property.
+     */
+    private static final String INPUTS = "Inputs";
+    /**
+     * Outputs property.
+     */
+    private static final String OUTPUTS = "Outputs";
+    /**
+     * Value property.
+     */
+    private static final String VALUE = "Value";
+    /**
+     * Duration property.
+     */
+    private static final String DURATION = "Duration";
+    /**
+     * Output command type names.
+     */
+    private static final Map<Class<?>, String> OUTPUT_NAMES;
+    /**
+     * Input data type names.
+     */
+    private static final Map<Class<?>, String> INPUT_NAMES;
+
+    static {
+        Map<Class<?>, String> outputs = new HashMap<>();
+        outputs.put(OutputCmd.Vibrate.class, "Vibrate");
+        outputs.put(OutputCmd.Rotate.class, "Rotate");
+        outputs.put(OutputCmd.Oscillate.class, "Oscillate");
+        outputs.put(OutputCmd.Constrict.class, "Constrict");
+        outputs.put(OutputCmd.Spray.class, "Spray");
+        outputs.put(OutputCmd.Temperature.class, "Temperature");
+        outputs.put(OutputCmd.Led.class, "Led");
+        outputs.put(OutputCmd.Position.class, "Position");
+        outputs.put(OutputCmd.HwPositionWithDuration.class, "HwPositionWithDuration");
+        OUTPUT_NAMES = Collections.unmodifiableMap(outputs);
+
+        Map<Class<?>, String> inputs = new HashMap<>();
+        inputs.put(InputReading.BatteryData.class, "Battery");
+        inputs.put(InputReading.RssiData.class, "RSSI");
+        inputs.put(InputReading.ButtonData.class, "Button");
+        inputs.put(InputReading.PresureData.class, "Pressure");
+        inputs.put(InputReading.Position.class, "Position");
+        INPUT_NAMES = Collections.unmodifiableMap(inputs);
+    }
+
+    /**
+     * Fallback mapper.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructor.
+     *
+     * @param aMapper mapper used for the message types not handled here
+     */
+    ButtplugHotMessageCodec(final ObjectMapper aMapper) {
+        this.mapper = aMapper;
+    }
+
+    /**
+     * Write a message, using the hand-written path where possible.
+     *
+     * @param gen generator
+     * @param msg message
+     * @throws IOException if writing fails
+     */
+    void write(final JsonGenerator gen, final ButtplugMessage msg) throws IOException {
+        if (msg == null || !canWrite(msg)) {
+            mapper.writeValue(gen, msg);
+            return;
+        }
+
+        gen.writeStartObject();
+        if (msg instanceof OutputCmd) {
+            OutputCmd cmd = (OutputCmd) msg;
+            gen.writeFieldName(OUTPUT_CMD);
+            gen.writeStartObject();
+            gen.writeNumberField(ID, cmd.getId());
+            gen.writeNumberField(DEVICE_INDEX, cmd.getDeviceIndex());
+            gen.writeNumberField(FEATURE_INDEX, cmd.getFeatureIndex());
+            gen.writeFieldName(COMMAND);
+            writeOutputCommand(gen, cmd.getCommand());
+            gen.writeEndObject();
+        } else if (msg instanceof InputReading) {
+            InputReading reading = (InputReading) msg;
+            gen.writeFieldName(INPUT_READING);
+            gen.writeStartObject();
+            gen.writeNumberField(ID, reading.getId());
+            gen.writeNumberField(DEVICE_INDEX, reading.getDeviceIndex());
+            gen.writeNumberField(FEATURE_INDEX, reading.getFeatureIndex());
+            gen.writeFieldName(READING);
+            writeInputData(gen, reading.getData());
+            gen.writeEndObject();
+        } else if (msg instanceof StopCmd) {
+            StopCmd stop = (StopCmd) msg;
+            gen.writeFieldName(STOP_CMD);
+            gen.writeStartObject();
+            gen.writeNumberField(ID, stop.getId());
+            if (stop.getInputs() != null) {
+                gen.writeBooleanField(INPUTS, stop.getInputs());
+            }
+            if (stop.getOutputs() != null) {
+                gen.writeBooleanField(OUTPUTS, stop.getOutputs());
+            }
+            if (stop.getDeviceIndex() != null) {
+                gen.writeNumberField(DEVICE_INDEX, stop.getDeviceIndex());
+            }
+            if (stop.getFeatureIndex() != null) {
+                gen.writeNumberField(FEATURE_INDEX, stop.getFeatureIndex());
+            }
+            gen.writeEndObject();
+        } else {
+            gen.writeFieldName(msg instanceof Ok ? OK : PING);
+            gen.writeStartObject();
+            gen.writeNumberField(ID, msg.getId());
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Read a message, using the hand-written path where possible.
+     *
+     * @param p parser positioned on the first token of the message
+     * @return message
+     * @throws IOException if the input is malformed
+     */
+    ButtplugMessage read(final JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT || p.nextToken() != JsonToken.FIELD_NAME) {
+            return mapper.readValue(p, ButtplugMessage.class);
+        }
+
+        ButtplugMessage msg;
+        switch (p.currentName()) {
+            case OUTPUT_CMD:
+                msg = readOutputCmd(p);
+                break;
+            case INPUT_READING:
+                msg = readInputReading(p);
+                break;
+            case STOP_CMD:
+                msg = readStopCmd(p);
+                break;
+            case OK:
+                msg = readIdOnly(p, new Ok(ButtplugConsts.DEFAULT_MSG_ID));
+                break;
+            case PING:
+                msg = readIdOnly(p, new Ping(ButtplugConsts.DEFAULT_MSG_ID));
+                break;
+            default:
+                // Wrapper deserialisation picks up from the type name
+                return mapper.readValue(p, ButtplugMessage.class);
+        }
+
+        if (p.nextToken() != JsonToken.END_OBJECT) {
+            throw MismatchedInputException.from(p, ButtplugMessage.class,
+                    "Expected a single message type per wrapper object");
+        }
+        return msg;
+    }
+
+    /**
+     * Check whether a message can be written by the hand-written path.
+     *
+     * @param msg message
+     * @return true if it can
+     */
+    static boolean canWrite(final ButtplugMessage msg) {
+        Class<?> type = msg.getClass();
+        if (type == Ok.class || type == Ping.class || type == StopCmd.class) {
+            return true;
+        }
+        if (type == OutputCmd.class) {
+            OutputCmd.IOutputCommand cmd = ((OutputCmd) msg).getCommand();
+            return cmd == null || OUTPUT_NAMES.containsKey(cmd.getClass());
+        }
+        if (type == InputReading.class) {
+            InputReading.InputData data = ((InputReading) msg).getData();
+            return data == null || INPUT_NAMES.containsKey(data.getClass());
+        }
+        return false;
+    }
+
+    /**
+     * Write an output command.
+     *
+     * @param gen generator
+     * @param cmd command
+     * @throws IOException if writing fails
+     */
+    private static void writeOutputCommand(final JsonGenerator gen, final OutputCmd.IOutputCommand cmd)
+            throws IOException {
+        if (cmd == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeFieldName(OUTPUT_NAMES.get(cmd.getClass()));
+        gen.writeStartObject();
+        gen.writeNumberField(VALUE, ((OutputCmd.ValueCommand) cmd).getValue());
+        if (cmd instanceof OutputCmd.HwPositionWithDuration) {
+            gen.writeNumberField(DURATION, ((OutputCmd.HwPositionWithDuration) cmd).getDuration());
+        }
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Write input data.
+     *
+     * @param gen  generator
+     * @param data data
+     * @throws IOException if writing fails
+     */
+    private static void writeInputData(final JsonGenerator gen, final InputReading.InputData data)
+            throws IOException {
+        if (data == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeFieldName(INPUT_NAMES.get(data.getClass()));
+        gen.writeStartObject();
+        gen.writeNumberField(VALUE, ((InputReading.InputIntegerData) data).getValue());
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Read an OutputCmd body.
+     *
+     * @param p parser positioned on the type name
+     * @return message
+     * @throws IOException if the input is malformed
+     */
+    private OutputCmd readOutputCmd(final JsonParser p) throws IOException {
+        OutputCmd msg = new OutputCmd();
+        expectStartObject(p, OutputCmd.class);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case ID:
+                    msg.setId(readInt(p));
+                    break;
+                case DEVICE_INDEX:
+                    msg.setDeviceIndex(readLong(p));
+                    break;
+                case FEATURE_INDEX:
+                    msg.setFeatureIndex(readLong(p));
+                    break;
+                case COMMAND:
+                    msg.setCommand(readOutputCommand(p));
+                    break;
+                default:
+                    throw UnrecognizedPropertyException.from(p, msg, field, null);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Read an output command.
+     *
+     * @param p parser positioned on the command value
+     * @return command
+     * @throws IOException if the input is malformed
+     */
+    private OutputCmd.IOutputCommand readOutputCommand(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_OBJECT || p.nextToken() != JsonToken.FIELD_NAME) {
+            return mapper.readValue(p, OutputCmd.IOutputCommand.class);
+        }
+
+        OutputCmd.ValueCommand cmd;
+        switch (p.currentName()) {
+            case "Vibrate":
+                cmd = new OutputCmd.Vibrate();
+                break;
+            case "Rotate":
+                cmd = new OutputCmd.Rotate();
+                break;
+            case "Oscillate":
+                cmd = new OutputCmd.Oscillate();
+                break;
+            case "Constrict":
+                cmd = new OutputCmd.Constrict();
+                break;
+            case "Spray":
+                cmd = new OutputCmd.Spray();
+                break;
+            case "Temperature":
+                cmd = new OutputCmd.Temperature();
+                break;
+            case "Led":
+                cmd = new OutputCmd.Led();
+                break;
+            case "Position":
+                cmd = new OutputCmd.Position();
+                break;
+            case "HwPositionWithDuration":
+                cmd = new OutputCmd.HwPositionWithDuration();
+                break;
+            default:
+                return mapper.readValue(p, OutputCmd.IOutputCommand.class);
+        }
+
+        expectStartObject(p, cmd.getClass());
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (VALUE.equals(field)) {
+                cmd.setValue(readInt(p));
+            } else if (DURATION.equals(field) && cmd instanceof OutputCmd.HwPositionWithDuration) {
+                ((OutputCmd.HwPositionWithDuration) cmd).setDuration(readInt(p));
+            } else {
+                throw UnrecognizedPropertyException.from(p, cmd, field, null);
+            }
+        }
+        expectEndObject(p, OutputCmd.IOutputCommand.class);
+        return cmd;
+    }
+
+    /**
+     * Read an InputReading body.
+     *
+     * @param p parser positioned on the type name
+     * @return message
+     * @throws IOException if the input is malformed
+     */
+    private InputReading readInputReading(final JsonParser p) throws IOException {
+        InputReading msg = new InputReading();
+        expectStartObject(p, InputReading.class);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case ID:
+                    msg.setId(readInt(p));
+                    break;
+                case DEVICE_INDEX:
+                    msg.setDeviceIndex(readLong(p));
+                    break;
+                case FEATURE_INDEX:
+                    msg.setFeatureIndex(readInt(p));
+                    break;
+                case READING:
+                    msg.setData(readInputData(p));
+                    break;
+                default:
+                    throw UnrecognizedPropertyException.from(p, msg, field, null);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Read input data.
+     *
+     * @param p parser positioned on the reading value
+     * @return data
+     * @throws IOException if the input is malformed
+     */
+    private InputReading.InputData readInputData(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_OBJECT || p.nextToken() != JsonToken.FIELD_NAME) {
+            return mapper.readValue(p, InputReading.InputData.class);
+        }
+
+        InputReading.InputIntegerData data;
+        switch (p.currentName()) {
+            case "Battery":
+                data = new InputReading.BatteryData();
+                break;
+            case "RSSI":
+                data = new InputReading.RssiData();
+                break;
+            case "Button":
+                data = new InputReading.ButtonData();
+                break;
+            case "Pressure":
+                data = new InputReading.PresureData();
+                break;
+            case "Position":
+                data = new InputReading.Position();
+                break;
+            default:
+                return mapper.readValue(p, InputReading.InputData.class);
+        }
+
+        expectStartObject(p, data.getClass());
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (VALUE.equals(field)) {
+                data.setValue(readInt(p));
+            } else {
+                throw UnrecognizedPropertyException.from(p, data, field, null);
+            }
+        }
+        expectEndObject(p, InputReading.InputData.class);
+        return data;
+    }
+
+    /**
+     * Read a StopCmd body.
+     *
+     * @param p parser positioned on the type name
+     * @return message
+     * @throws IOException if the input is malformed
+     */
+    private StopCmd readStopCmd(final JsonParser p) throws IOException {
+        StopCmd msg = new StopCmd(ButtplugConsts.DEFAULT_MSG_ID);
+        expectStartObject(p, StopCmd.class);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case ID:
+                    msg.setId(readInt(p));
+                    break;
+                case INPUTS:
+                    msg.setInputs(readBoolean(p));
+                    break;
+                case OUTPUTS:
+                    msg.setOutputs(readBoolean(p));
+                    break;
+                case DEVICE_INDEX:
+                    msg.setDeviceIndex(readInteger(p));
+                    break;
+                case FEATURE_INDEX:
+                    msg.setFeatureIndex(readInteger(p));
+                    break;
+                default:
+                    throw UnrecognizedPropertyException.from(p, msg, field, null);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Read the body of a message that only carries an Id.
+     *
+     * @param p   parser positioned on the type name
+     * @param msg message to populate
+     * @return message
+     * @throws IOException if the input is malformed
+     */
+    private static ButtplugMessage readIdOnly(final JsonParser p, final ButtplugMessage msg) throws IOException {
+        expectStartObject(p, msg.getClass());
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (ID.equals(field)) {
+                msg.setId(readInt(p));
+            } else {
+                throw UnrecognizedPropertyException.from(p, msg, field, null);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Advance to the start of an object body.
+     *
+     * @param p    parser
+     * @param type type being read, for error reporting
+     * @throws IOException if the next token does not start an object
+     */
+    private static void expectStartObject(final JsonParser p, final Class<?> type) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw MismatchedInputException.from(p, type, "Expected an object");
+        }
+    }
+
+    /**
+     * Advance past the end of a type wrapper object.
+     *
+     * @param p    parser
+     * @param type type being read, for error reporting
+     * @throws IOException if the next token does not end the wrapper
+     */
+    private static void expectEndObject(final JsonParser p, final Class<?> type) throws IOException {
+        if (p.nextToken() != JsonToken.END_OBJECT) {
+            throw MismatchedInputException.from(p, type, "Expected a single type per wrapper object");
+        }
+    }
+
+    /**
+     * Read an int value.
+     *
+     * @param p parser positioned on the value
+     * @return value, 0 for null
+     * @throws IOException if the value is not a number
+     */
+    private static int readInt(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        if (!p.currentToken().isNumeric()) {
+            throw MismatchedInputException.from(p, int.class, "Expected a number");
+        }
+        return p.getIntValue();
+    }
+
+    /**
+     * Read a long value.
+     *
+     * @param p parser positioned on the value
+     * @return value, 0 for null
+     * @throws IOException if the value is not a number
+     */
+    private static long readLong(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        if (!p.currentToken().isNumeric()) {
+            throw MismatchedInputException.from(p, long.class, "Expected a number");
+        }
+        return p.getLongValue();
+    }
+
+    /**
+     * Read a nullable Integer value.
+     *
+     * @param p parser positioned on the value
+     * @return value
+     * @throws IOException if the value is not a number
+     */
+    private static Integer readInteger(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return readInt(p);
+    }
+
+    /**
+     * Read a nullable Boolean value.
+     *
+     * @param p parser positioned on the value
+     * @return value
+     * @throws IOException if the value is not a boolean
+     */
+    private static Boolean readBoolean(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!p.currentToken().isBoolean()) {
+            throw MismatchedInputException.from(p, Boolean.class, "Expected a boolean");
+        }
+        return p.getBooleanValue();
+    }
+}
@@ -0,0 +1,277 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeInfo.As;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectMapper.DefaultTypeResolverBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper.DefaultTyping;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Base for codecs built on a Jackson ObjectMapper.
+ * <p>
+ * The message model is format agnostic, so any Jackson data format (JSON, CBOR, Smile...) can be used: subclasses
+ * only supply the mapper for their format. Options such as the hand-written codec and lazy devices work the same way
+ * for every format.
+ */
+public abstract class ButtplugJacksonCodec implements ButtplugCodec {
+
+    /**
+     * Object mapper.
+     */
+    private final ObjectMapper mapper;
+    /**
+     * Hand-written codec for the high-frequency message types, or null if disabled.
+     */
+    private final ButtplugHotMessageCodec hotCodec;
+    /**
+     * Whether devices in a DeviceList are decoded lazily.
+     */
+    private final boolean lazyDevices;
+
+    /**
+     * Constructor.
+     *
+     * @param aMapper          mapper for the wire format; it is configured for the Buttplug message model
+     * @param handWrittenCodec true to encode and decode OutputCmd, StopCmd, Ok, Ping and InputReading with the
+     *                         hand-written streaming codec instead of databind
+     * @param aLazyDevices     true to keep the raw encoding of each device in a DeviceList and only decode it when
+     *                         first accessed, see {@link Device#LAZY_DEVICES}
+     */
+    protected ButtplugJacksonCodec(final ObjectMapper aMapper, final boolean handWrittenCodec,
+                                   final boolean aLazyDevices) {
+        mapper = aMapper;
+        TypeResolverBuilder<?> typer = DefaultTypeResolverBuilder.construct(DefaultTyping.JAVA_LANG_OBJECT,
+                this.mapper.getPolymorphicTypeValidator());
+        typer = typer.init(JsonTypeInfo.Id.NAME, null);
+        typer = typer.inclusion(As.WRAPPER_OBJECT);
+        mapper.setDefaultTyping(typer);
+        if (aLazyDevices) {
+            mapper.setConfig(mapper.getDeserializationConfig()
+                    .withAttribute(Device.LAZY_DEVICES, mapper.readerFor(Device.class)));
+        }
+        hotCodec = handWrittenCodec ? new ButtplugHotMessageCodec(mapper) : null;
+        lazyDevices = aLazyDevices;
+    }
+
+    /**
+     * Get the object mapper.
+     *
+     * @return mapper
+     */
+    protected final ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Check whether the hand-written codec is in use.
+     *
+     * @return true if the hand-written codec is in use
+     */
+    public final boolean isHandWrittenCodec() {
+        return hotCodec != null;
+    }
+
+    /**
+     * Check whether devices in a DeviceList are decoded lazily.
+     *
+     * @return true if devices are decoded lazily
+     */
+    public final boolean isLazyDevices() {
+        return lazyDevices;
+    }
+
+    /**
+     * Register an additional message type, so that the codec can encode and decode messages which are not part of the
+     * built-in protocol. Types must be registered before the codec is first used.
+     *
+     * @param type message class, which must be deserialisable by Jackson like the built-in messages
+     * @param name message name on the wire, e.g. "RawReading"
+     */
+    public final void registerMessageType(final Class<? extends ButtplugMessage> type, final String name) {
+        mapper.registerSubtypes(new NamedType(type, name));
+    }
+
+    @Override
+    public final void decode(final String frame, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        if (isBinary()) {
+            throw new ButtplugProtocolException("Text frames are not supported by this codec");
+        }
+        try (JsonParser parser = mapper.createParser(frame)) {
+            readFrame(parser, sink);
+        } catch (IOException e) {
+            throw new ButtplugProtocolException(e);
+        }
+    }
+
+    @Override
+    public final void decode(final byte[] frame, final int offset, final int length,
+                             final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        try (JsonParser parser = mapper.createParser(frame, offset, length)) {
+            readFrame(parser, sink);
+        } catch (IOException e) {
+            throw new ButtplugProtocolException(e);
+        }
+    }
+
+    /**
+     * Decode a stream, passing each message to the consumer as soon as it has been decoded. The stream is not
+     * closed. Unlike a frame, a stream is not validated as a whole first: if a later message is malformed, the
+     * messages before it have already been passed on when the exception is thrown.
+     *
+     * @param frame frame stream
+     * @param sink  message consumer
+     * @throws ButtplugProtocolException if decoding fails
+     */
+    public final void decode(final InputStream frame, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        try (JsonParser parser = mapper.createParser(frame)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            readMessages(parser, sink);
+        } catch (IOException e) {
+            throw new ButtplugProtocolException(e);
+        }
+    }
+
+    @Override
+    public final String encodeText(final List<ButtplugMessage> msgs) throws ButtplugProtocolException {
+        if (isBinary()) {
+            throw new ButtplugProtocolException("Text frames are not supported by this codec");
+        }
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = mapper.createGenerator(out)) {
+            writeMessages(gen, msgs);
+        } catch (IOException e) {
+            throw new ButtplugProtocolException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public final byte[] encode(final List<ButtplugMessage> msgs) throws ButtplugProtocolException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        try (JsonGenerator gen = mapper.createGenerator(out)) {
+            writeMessages(gen, msgs);
+        } catch (IOException e) {
+            throw new ButtplugProtocolException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the top level message array.
+     *
+     * @param gen  generator
+     * @param msgs messages
+     * @throws IOException if writing fails
+     */
+    private void writeMessages(final JsonGenerator gen, final List<ButtplugMessage> msgs) throws IOException {
+        if (hotCodec == null) {
+            mapper.writeValue(gen, msgs);
+            return;
+        }
+        gen.writeStartArray();
+        for (ButtplugMessage msg : msgs) {
+            hotCodec.write(gen, msg);
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Decode a whole frame before passing any of its messages on, so a malformed frame delivers none. Frames nearly
+     * always hold a single message, which is held without allocating a list.
+     *
+     * @param parser positioned before the array
+     * @param sink   message consumer
+     * @throws IOException if the input is malformed
+     */
+    private void readFrame(final JsonParser parser, final Consumer<ButtplugMessage> sink) throws IOException {
+        FrameBuffer frame = new FrameBuffer();
+        readMessages(parser, frame);
+        frame.flush(sink);
+    }
+
+    /**
+     * Step through the top level message array, decoding one message at a time.
+     *
+     * @param parser positioned before the array
+     * @param sink   message consumer
+     * @throws IOException if the input is malformed
+     */
+    private void readMessages(final JsonParser parser, final Consumer<ButtplugMessage> sink)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw MismatchedInputException.from(parser, ButtplugMessage[].class,
+                    "Expected an array of Buttplug messages");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == null) {
+                throw MismatchedInputException.from(parser, ButtplugMessage[].class,
+                        "Unexpected end of input");
+            }
+            if (hotCodec != null) {
+                sink.accept(hotCodec.read(parser));
+            } else {
+                sink.accept(mapper.readValue(parser, ButtplugMessage.class));
+            }
+        }
+    }
+
+    /**
+     * Messages of one frame, held until the whole frame has been decoded.
+     */
+    private static final class FrameBuffer implements Consumer<ButtplugMessage> {
+        /**
+         * First message.
+         */
+        private ButtplugMessage first;
+        /**
+         * Further messages, or null if there were none.
+         */
+        private List<ButtplugMessage> rest;
+
+        @Override
+        public void accept(final ButtplugMessage msg) {
+            if (first == null) {
+                first = msg;
+                return;
+            }
+            if (rest == null) {
+                rest = new ArrayList<>();
+            }
+            rest.add(msg);
+        }
+
+        /**
+         * Pass the held messages on, in order.
+         *
+         * @param sink message consumer
+         */
+        void flush(final Consumer<ButtplugMessage> sink) {
+            if (first != null) {
+                sink.accept(first);
+            }
+            if (rest != null) {
+                for (ButtplugMessage msg : rest) {
+                    sink.accept(msg);
+                }
+            }
+        }
+    }
+}
@@ -1,40 +1,59 @@
 package io.github.blackspherefollower.buttplug4j.protocol;
 
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.fasterxml.jackson.annotation.JsonTypeInfo.As;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.StreamReadFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectMapper.DefaultTypeResolverBuilder;
-import com.fasterxml.jackson.databind.ObjectMapper.DefaultTyping;
 import com.fasterxml.jackson.databind.json.JsonMapper;
-import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * ButtplugJsonMessageParser.
+ * <p>
+ * The JSON codec used by default: it speaks the framing used by Buttplug servers.
  */
-public final class ButtplugJsonMessageParser {
+public final class ButtplugJsonMessageParser extends ButtplugJacksonCodec {
 
     /**
-     * JSON mapper.
+     * Constructor.
      */
-    private final ObjectMapper mapper;
+    public ButtplugJsonMessageParser() {
+        this(false);
+    }
 
     /**
      * Constructor.
+     *
+     * @param handWrittenCodec true to encode and decode OutputCmd, StopCmd, Ok, Ping and InputReading with the
+     *                         hand-written streaming codec instead of databind
      */
-    public ButtplugJsonMessageParser() {
-        mapper = JsonMapper.builder()
+    public ButtplugJsonMessageParser(final boolean handWrittenCodec) {
+        this(handWrittenCodec, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param handWrittenCodec true to encode and decode OutputCmd, StopCmd, Ok, Ping and InputReading with the
+     *                         hand-written streaming codec instead of databind
+     * @param aLazyDevices     true to keep the raw JSON of each device in a DeviceList and only decode it when
+     *                         first accessed, see {@link Device#LAZY_DEVICES}
+     */
+    public ButtplugJsonMessageParser(final boolean handWrittenCodec, final boolean aLazyDevices) {
+        super(JsonMapper.builder()
                 .enable(StreamReadFeature.INCLUDE_SOURCE_IN_LOCATION)
-                .build();
-        TypeResolverBuilder<?> typer = DefaultTypeResolverBuilder.construct(DefaultTyping.JAVA_LANG_OBJECT,
-                this.mapper.getPolymorphicTypeValidator());
-        typer = typer.init(JsonTypeInfo.Id.NAME, null);
-        typer = typer.inclusion(As.WRAPPER_OBJECT);
-        mapper.setDefaultTyping(typer);
+                .build(), handWrittenCodec, aLazyDevices);
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
     }
 
     /**
@@ -46,13 +65,134 @@ public final class ButtplugJsonMessageParser {
      */
     public List<ButtplugMessage> parseJson(final String json)
             throws ButtplugProtocolException {
+        if (isHandWrittenCodec()) {
+            List<ButtplugMessage> msgs = new ArrayList<>();
+            decode(json, msgs::add);
+            return msgs;
+        }
         try {
-            return Arrays.asList(mapper.readValue(json, ButtplugMessage[].class));
+            return Arrays.asList(getMapper().readValue(json, ButtplugMessage[].class));
         } catch (JsonProcessingException e) {
             throw new ButtplugProtocolException(e);
         }
     }
 
+    /**
+     * Parse UTF-8 encoded JSON to Buttplug messages.
+     *
+     * @param json JSON bytes
+     * @return list of messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public List<ButtplugMessage> parseJson(final byte[] json)
+            throws ButtplugProtocolException {
+        return parseJson(json, 0, json.length);
+    }
+
+    /**
+     * Parse a range of UTF-8 encoded JSON to Buttplug messages.
+     *
+     * @param json   JSON bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @return list of messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public List<ButtplugMessage> parseJson(final byte[] json, final int offset, final int length)
+            throws ButtplugProtocolException {
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        decode(json, offset, length, msgs::add);
+        return msgs;
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON to Buttplug messages.
+     * <p>
+     * Heap buffers are parsed in place; the buffer position is advanced past the consumed bytes.
+     *
+     * @param json JSON buffer
+     * @return list of messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public List<ButtplugMessage> parseJson(final ByteBuffer json)
+            throws ButtplugProtocolException {
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        decode(json, msgs::add);
+        return msgs;
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON to Buttplug messages.
+     *
+     * @param json JSON stream
+     * @return list of messages
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public List<ButtplugMessage> parseJson(final InputStream json)
+            throws ButtplugProtocolException {
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        decode(json, msgs::add);
+        return msgs;
+    }
+
+    /**
+     * Parse JSON, passing the Buttplug messages to the consumer once all of them have been decoded. Malformed JSON
+     * passes none on.
+     *
+     * @param json JSON string
+     * @param sink message consumer
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public void parseJson(final String json, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        decode(json, sink);
+    }
+
+    /**
+     * Parse a range of UTF-8 encoded JSON, passing the Buttplug messages to the consumer once all of them have
+     * been decoded. Malformed JSON passes none on.
+     *
+     * @param json   JSON bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @param sink   message consumer
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public void parseJson(final byte[] json, final int offset, final int length,
+                          final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        decode(json, offset, length, sink);
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON, passing the Buttplug messages to the consumer once all of them have been decoded.
+     * Malformed JSON passes none on.
+     * <p>
+     * Heap buffers are parsed in place; the buffer position is advanced past the consumed bytes.
+     *
+     * @param json JSON buffer
+     * @param sink message consumer
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public void parseJson(final ByteBuffer json, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        decode(json, sink);
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON, passing each Buttplug message to the consumer as soon as it has been decoded.
+     * The stream is not closed. If a later message is malformed, the messages before it have already been passed
+     * on when the exception is thrown.
+     *
+     * @param json JSON stream
+     * @param sink message consumer
+     * @throws ButtplugProtocolException if parsing fails
+     */
+    public void parseJson(final InputStream json, final Consumer<ButtplugMessage> sink)
+            throws ButtplugProtocolException {
+        decode(json, sink);
+    }
+
     /**
      * Format Buttplug messages to JSON.
      *
@@ -62,11 +202,7 @@ public final class ButtplugJsonMessageParser {
      */
     public String formatJson(final List<ButtplugMessage> msgs)
             throws ButtplugProtocolException {
-        try {
-            return mapper.writeValueAsString(msgs);
-        } catch (JsonProcessingException e) {
-            throw new ButtplugProtocolException(e);
-        }
+        return encodeText(msgs);
     }
 
     /**
@@ -78,10 +214,6 @@ public final class ButtplugJsonMessageParser {
      */
     public String formatJson(final ButtplugMessage msg)
             throws ButtplugProtocolException {
-        try {
-            return mapper.writeValueAsString(new ButtplugMessage[]{msg});
-        } catch (JsonProcessingException e) {
-            throw new ButtplugProtocolException(e);
-        }
+        return encodeText(Collections.singletonList(msg));
     }
 }
@@ -6,6 +6,15 @@ import io.github.blackspherefollower.buttplug4j.ButtplugException;
  * ButtplugProtocolException.
  */
 public class ButtplugProtocolException extends ButtplugException {
+    /**
+     * Constructor.
+     *
+     * @param errorMessage error message
+     */
+    public ButtplugProtocolException(final String errorMessage) {
+        setMessage(errorMessage);
+    }
+
     /**
      * Constructor.
      *
@@ -0,0 +1,162 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Writes single OutputCmd JSON frames straight into a reusable buffer.
+ * <p>
+ * This is the allocation-free path for high rate output commands: no message objects are built and nothing goes
+ * through Jackson. The output is byte-for-byte what {@link ButtplugJsonMessageParser} produces for the same command.
+ * Instances are not thread safe, and the returned buffer is only valid until the next call to {@link #write}.
+ */
+public final class OutputCmdFrameWriter {
+
+    /**
+     * Initial buffer size, enough for any built-in command.
+     */
+    private static final int INITIAL_CAPACITY = 160;
+    /**
+     * Upper bound on the bytes needed for the numbers in a frame (three longs and an int).
+     */
+    private static final int MAX_NUMBER_BYTES = 80;
+    /**
+     * Maximum number of decimal digits in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 20;
+    /**
+     * Decimal radix.
+     */
+    private static final int RADIX = 10;
+    /**
+     * Frame start, up to the message id.
+     */
+    private static final byte[] HEAD = ascii("[{\"OutputCmd\":{\"Id\":");
+    /**
+     * Device index field.
+     */
+    private static final byte[] DEVICE_INDEX = ascii(",\"DeviceIndex\":");
+    /**
+     * Feature index field.
+     */
+    private static final byte[] FEATURE_INDEX = ascii(",\"FeatureIndex\":");
+    /**
+     * Command field, up to the command name.
+     */
+    private static final byte[] COMMAND = ascii(",\"Command\":{\"");
+    /**
+     * Value field.
+     */
+    private static final byte[] VALUE = ascii("\":{\"Value\":");
+    /**
+     * Frame end.
+     */
+    private static final byte[] TAIL = ascii("}}}}]");
+
+    /**
+     * Encoded command names.
+     */
+    private final HashMap<String, byte[]> names = new HashMap<>();
+    /**
+     * Scratch space for number digits.
+     */
+    private final byte[] digits = new byte[MAX_LONG_DIGITS];
+    /**
+     * Frame buffer.
+     */
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    /**
+     * View over the frame buffer handed out to callers.
+     */
+    private ByteBuffer view = ByteBuffer.wrap(buf);
+    /**
+     * Write position.
+     */
+    private int pos;
+
+    /**
+     * Write an OutputCmd frame.
+     *
+     * @param id           message ID
+     * @param deviceIndex  device index
+     * @param featureIndex feature index
+     * @param command      command name on the wire, e.g. "Vibrate"
+     * @param value        command value in steps
+     * @return the frame, valid until the next call
+     */
+    public ByteBuffer write(final int id, final long deviceIndex, final long featureIndex, final String command,
+                            final int value) {
+        byte[] name = names.get(command);
+        if (name == null) {
+            name = command.getBytes(StandardCharsets.UTF_8);
+            names.put(command, name);
+        }
+        int needed = HEAD.length + DEVICE_INDEX.length + FEATURE_INDEX.length + COMMAND.length + name.length
+                + VALUE.length + TAIL.length + MAX_NUMBER_BYTES;
+        if (buf.length < needed) {
+            buf = Arrays.copyOf(buf, needed);
+            view = ByteBuffer.wrap(buf);
+        }
+
+        pos = 0;
+        put(HEAD);
+        putLong(id);
+        put(DEVICE_INDEX);
+        putLong(deviceIndex);
+        put(FEATURE_INDEX);
+        putLong(featureIndex);
+        put(COMMAND);
+        put(name);
+        put(VALUE);
+        putLong(value);
+        put(TAIL);
+
+        view.clear();
+        view.limit(pos);
+        return view;
+    }
+
+    /**
+     * Append bytes.
+     *
+     * @param bytes bytes
+     */
+    private void put(final byte[] bytes) {
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Append a number in decimal. Works on the negative value so that Long.MIN_VALUE needs no special case.
+     *
+     * @param value number
+     */
+    private void putLong(final long value) {
+        long v = value;
+        if (v < 0) {
+            buf[pos++] = '-';
+        } else {
+            v = -v;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' - (v % RADIX));
+            v /= RADIX;
+        } while (v != 0);
+        while (n > 0) {
+            buf[pos++] = digits[--n];
+        }
+    }
+
+    /**
+     * Encode a constant.
+     *
+     * @param str string
+     * @return bytes
+     */
+    private static byte[] ascii(final String str) {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,15 +1,49 @@
 package io.github.blackspherefollower.buttplug4j.protocol.messages;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.ContentReference;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * Device.
+ * <p>
+ * When the deserialization context carries a {@link #LAZY_DEVICES} attribute, devices inside a DeviceList are not
+ * decoded up front: the raw JSON of each device is kept along with a fingerprint of its bytes, and the device is
+ * only materialized when one of its getters is first called. Lazy devices are not thread safe until materialized.
  */
 public class Device {
 
+    /**
+     * Deserialization attribute enabling lazy devices. The value must be an {@link ObjectReader} for Device.
+     */
+    public static final String LAZY_DEVICES = "buttplug4j.lazyDevices";
+    /**
+     * FNV-1a 64-bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /**
+     * FNV-1a 64-bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * Mask to read a byte as unsigned.
+     */
+    private static final int BYTE_MASK = 0xff;
+
     /**
      * Device index.
      */
@@ -42,6 +76,24 @@ public class Device {
     @JsonProperty(value = "DeviceFeatures", required = true)
     private HashMap<Integer, DeviceFeature> deviceFeatures;
 
+    /**
+     * Raw JSON of a lazy device that has not been materialized yet.
+     */
+    @JsonIgnore
+    private byte[] raw;
+
+    /**
+     * Reader used to materialize a lazy device.
+     */
+    @JsonIgnore
+    private ObjectReader rawReader;
+
+    /**
+     * Fingerprint of the raw JSON, or 0 for eagerly decoded devices.
+     */
+    @JsonIgnore
+    private long fingerprint;
+
     /**
      * Constructor.
      *
@@ -79,6 +131,7 @@ public class Device {
      * @return index
      */
     public int getDeviceIndex() {
+        materialize();
         return deviceIndex;
     }
 
@@ -88,6 +141,7 @@ public class Device {
      * @param aDeviceIndex index
      */
     public void setDeviceIndex(final int aDeviceIndex) {
+        materialize();
         this.deviceIndex = aDeviceIndex;
     }
 
@@ -97,6 +151,7 @@ public class Device {
      * @return name
      */
     public String getDeviceName() {
+        materialize();
         return deviceName;
     }
 
@@ -106,6 +161,7 @@ public class Device {
      * @param aDeviceName name
      */
     public void setDeviceName(final String aDeviceName) {
+        materialize();
         this.deviceName = aDeviceName;
     }
 
@@ -115,6 +171,7 @@ public class Device {
      * @return gap
      */
     public Integer getDeviceMessageTimingGap() {
+        materialize();
         return deviceMessageTimingGap;
     }
 
@@ -124,6 +181,7 @@ public class Device {
      * @param aDeviceMessageTimingGap gap
      */
     public void setDeviceMessageTimingGap(final Integer aDeviceMessageTimingGap) {
+        materialize();
         this.deviceMessageTimingGap = aDeviceMessageTimingGap;
     }
 
@@ -133,6 +191,7 @@ public class Device {
      * @return display name
      */
     public String getDeviceDisplayName() {
+        materialize();
         return deviceDisplayName;
     }
 
@@ -142,6 +201,7 @@ public class Device {
      * @param aDeviceDisplayName display name
      */
     public void setDeviceDisplayName(final String aDeviceDisplayName) {
+        materialize();
         this.deviceDisplayName = aDeviceDisplayName;
     }
 
@@ -151,6 +211,7 @@ public class Device {
      * @return features
      */
     public HashMap<Integer, DeviceFeature> getDeviceFeatures() {
+        materialize();
         return deviceFeatures;
     }
 
@@ -160,6 +221,118 @@ public class Device {
      * @param aDeviceFeatures features
      */
     public void setDeviceFeatures(final HashMap<Integer, DeviceFeature> aDeviceFeatures) {
+        materialize();
         this.deviceFeatures = aDeviceFeatures;
     }
+
+    /**
+     * Get the fingerprint of the raw device JSON. Two lazy devices with the same fingerprint were decoded from
+     * byte-identical JSON.
+     *
+     * @return fingerprint, or 0 if the device was not decoded lazily
+     */
+    @JsonIgnore
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Check whether the device has been decoded.
+     *
+     * @return false if this is a lazy device whose JSON has not been decoded yet
+     */
+    @JsonIgnore
+    public boolean isMaterialized() {
+        return raw == null;
+    }
+
+    /**
+     * Decode the raw JSON of a lazy device.
+     *
+     * @throws UncheckedIOException if the raw JSON cannot be decoded
+     */
+    private void materialize() {
+        if (raw == null) {
+            return;
+        }
+        Device full;
+        try {
+            full = rawReader.readValue(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        raw = null;
+        rawReader = null;
+        deviceIndex = full.deviceIndex;
+        deviceName = full.deviceName;
+        deviceMessageTimingGap = full.deviceMessageTimingGap;
+        deviceDisplayName = full.deviceDisplayName;
+        deviceFeatures = full.deviceFeatures;
+    }
+
+    /**
+     * LazyDeviceDeserialiser.
+     * <p>
+     * Decodes devices normally unless the {@link #LAZY_DEVICES} attribute is set, in which case the device JSON is
+     * copied out and fingerprinted instead.
+     */
+    static class LazyDeviceDeserialiser extends JsonDeserializer<Device> {
+
+        @Override
+        public Device deserialize(final JsonParser jsonParser,
+                                  final DeserializationContext deserializationContext) throws IOException {
+            Object reader = deserializationContext.getAttribute(LAZY_DEVICES);
+            if (!(reader instanceof ObjectReader)) {
+                return deserializationContext.readValue(jsonParser, Device.class);
+            }
+            if (!jsonParser.isExpectedStartObjectToken()) {
+                return (Device) deserializationContext.handleUnexpectedToken(Device.class, jsonParser);
+            }
+            ObjectReader rawReader = (ObjectReader) reader;
+            byte[] raw = sliceSource(jsonParser);
+            if (raw == null) {
+                ByteArrayBuilder buf = new ByteArrayBuilder();
+                try (JsonGenerator gen = rawReader.getFactory().createGenerator(buf)) {
+                    gen.copyCurrentStructure(jsonParser);
+                }
+                raw = buf.toByteArray();
+            }
+            Device device = new Device();
+            device.raw = raw;
+            device.rawReader = rawReader;
+            long hash = FNV_OFFSET;
+            for (byte b : device.raw) {
+                hash ^= b & BYTE_MASK;
+                hash *= FNV_PRIME;
+            }
+            device.fingerprint = hash == 0 ? 1 : hash;
+            return device;
+        }
+
+        /**
+         * Skip over the current object, returning its source text when the parser exposes the underlying byte
+         * array or string (see StreamReadFeature.INCLUDE_SOURCE_IN_LOCATION).
+         *
+         * @param p parser positioned on the START_OBJECT
+         * @return UTF-8 bytes of the object, or null if the source is not available and nothing was consumed
+         * @throws IOException if the object is malformed
+         */
+        private static byte[] sliceSource(final JsonParser p) throws IOException {
+            JsonLocation start = p.currentTokenLocation();
+            ContentReference ref = start.contentReference();
+            Object src = ref.getRawContent();
+            int base = Math.max(0, ref.contentOffset());
+            if (src instanceof byte[] && start.getByteOffset() >= 0) {
+                p.skipChildren();
+                return Arrays.copyOfRange((byte[]) src, base + (int) start.getByteOffset(),
+                        base + (int) p.currentLocation().getByteOffset());
+            }
+            if (src instanceof CharSequence && start.getCharOffset() >= 0) {
+                p.skipChildren();
+                return ((CharSequence) src).subSequence(base + (int) start.getCharOffset(),
+                        base + (int) p.currentLocation().getCharOffset()).toString().getBytes(StandardCharsets.UTF_8);
+            }
+            return null;
+        }
+    }
 }
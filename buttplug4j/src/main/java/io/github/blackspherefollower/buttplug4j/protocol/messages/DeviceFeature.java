@@ -1,26 +1,27 @@
 package io.github.blackspherefollower.buttplug4j.protocol.messages;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * DeviceFeature.
@@ -28,6 +29,49 @@ import java.util.Iterator;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public final class DeviceFeature {
 
+    /**
+     * Output descriptor type names.
+     */
+    private static final Map<Class<?>, String> OUTPUT_NAMES;
+    /**
+     * Input descriptor type names.
+     */
+    private static final Map<Class<?>, String> INPUT_NAMES;
+    /**
+     * Command property.
+     */
+    private static final String COMMAND = "Command";
+    /**
+     * Value property.
+     */
+    private static final String VALUE = "Value";
+    /**
+     * Duration property.
+     */
+    private static final String DURATION = "Duration";
+
+    static {
+        Map<Class<?>, String> outputs = new HashMap<>();
+        outputs.put(Vibrate.class, "Vibrate");
+        outputs.put(Rotate.class, "Rotate");
+        outputs.put(Oscillate.class, "Oscillate");
+        outputs.put(Constrict.class, "Constrict");
+        outputs.put(Spray.class, "Spray");
+        outputs.put(Temperature.class, "Temperature");
+        outputs.put(Led.class, "Led");
+        outputs.put(Position.class, "Position");
+        outputs.put(HwPositionWithDuration.class, "HwPositionWithDuration");
+        OUTPUT_NAMES = Collections.unmodifiableMap(outputs);
+
+        Map<Class<?>, String> inputs = new HashMap<>();
+        inputs.put(Battery.class, "Battery");
+        inputs.put(Rssi.class, "RSSI");
+        inputs.put(Button.class, "Button");
+        inputs.put(Pressure.class, "Pressure");
+        inputs.put(PositionInput.class, "Position");
+        INPUT_NAMES = Collections.unmodifiableMap(inputs);
+    }
+
     /**
      * Feature index.
      */
@@ -131,6 +175,172 @@ public final class DeviceFeature {
         this.input = aInput;
     }
 
+    /**
+     * Get the output descriptor types the parser did not recognise and skipped.
+     *
+     * @return type names, empty unless the output was parsed with unknown types
+     */
+    @JsonIgnore
+    public List<String> getUnknownOutputTypes() {
+        return unknownTypes(output);
+    }
+
+    /**
+     * Get the input descriptor types the parser did not recognise and skipped.
+     *
+     * @return type names, empty unless the input was parsed with unknown types
+     */
+    @JsonIgnore
+    public List<String> getUnknownInputTypes() {
+        return unknownTypes(input);
+    }
+
+    /**
+     * Get the unknown types recorded on a parsed descriptor list.
+     *
+     * @param descriptors descriptor list, may be null
+     * @return type names
+     */
+    private static List<String> unknownTypes(final List<?> descriptors) {
+        if (descriptors instanceof DescriptorList) {
+            return Collections.unmodifiableList(((DescriptorList<?>) descriptors).unknownTypes);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Copy a value returned by a problem handler into a typed list.
+     *
+     * @param value value, may be null
+     * @param type  element type
+     * @param <T>   element type
+     * @return list, or null if the value is not a list
+     */
+    private static <T> ArrayList<T> toList(final Object value, final Class<T> type) {
+        if (!(value instanceof List)) {
+            return null;
+        }
+        ArrayList<T> list = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            list.add(type.cast(element));
+        }
+        return list;
+    }
+
+    /**
+     * Create an empty output descriptor for a type name.
+     *
+     * @param name type name
+     * @return descriptor, or null if the type is unknown
+     */
+    private static SteppedOutputDescriptor newOutputDescriptor(final String name) {
+        switch (name) {
+            case "Vibrate":
+                return new Vibrate();
+            case "Rotate":
+                return new Rotate();
+            case "Oscillate":
+                return new Oscillate();
+            case "Constrict":
+                return new Constrict();
+            case "Spray":
+                return new Spray();
+            case "Temperature":
+                return new Temperature();
+            case "Led":
+                return new Led();
+            case "Position":
+                return new Position();
+            case "HwPositionWithDuration":
+                return new HwPositionWithDuration();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Create an empty input descriptor for a type name.
+     *
+     * @param name type name
+     * @return descriptor, or null if the type is unknown
+     */
+    private static RangedInputDescriptor newInputDescriptor(final String name) {
+        switch (name) {
+            case "Battery":
+                return new Battery();
+            case "RSSI":
+                return new Rssi();
+            case "Button":
+                return new Button();
+            case "Pressure":
+                return new Pressure();
+            case "Position":
+                return new PositionInput();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Read an int array.
+     *
+     * @param p    parser positioned on the array
+     * @param ctxt deserialization context
+     * @return array, or null for a JSON null
+     * @throws IOException if the value is not an array of ints
+     */
+    private static int[] readIntArray(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (int[]) ctxt.handleUnexpectedToken(int[].class, p);
+        }
+        int[] values = new int[2];
+        int count = 0;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (!p.currentToken().isNumeric()) {
+                return (int[]) ctxt.handleUnexpectedToken(int[].class, p);
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = p.getIntValue();
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Write an int array.
+     *
+     * @param gen    generator
+     * @param values array, may be null
+     * @throws IOException if writing fails
+     */
+    private static void writeIntArray(final JsonGenerator gen, final int[] values) throws IOException {
+        if (values == null) {
+            gen.writeNull();
+        } else {
+            gen.writeArray(values, 0, values.length);
+        }
+    }
+
+    /**
+     * Descriptor list that also records the descriptor types skipped while parsing it.
+     *
+     * @param <T> descriptor type
+     */
+    private static final class DescriptorList<T> extends ArrayList<T> {
+        /**
+         * Serial version.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Skipped type names.
+         */
+        private final ArrayList<String> unknownTypes = new ArrayList<>();
+    }
+
     /**
      * OutputDescriptor interface.
      */
@@ -702,6 +912,9 @@ public final class DeviceFeature {
 
     /**
      * OutputDescriptorSetDeserialiser.
+     * <p>
+     * Reads the Output map in a single pass. Unknown descriptor types and fields are skipped, so a newer server does
+     * not fail the whole device list; the skipped types are available from {@link #getUnknownOutputTypes()}.
      */
     static class OutputDescriptorSetDeserialiser extends JsonDeserializer<ArrayList<OutputDescriptor>> {
 
@@ -709,18 +922,41 @@ public final class DeviceFeature {
         public ArrayList<OutputDescriptor> deserialize(final JsonParser jsonParser,
                                                        final DeserializationContext deserializationContext)
                 throws IOException {
-            ObjectMapper mapper = ((ObjectMapper) jsonParser.getCodec());
-            ArrayList<OutputDescriptor> ret = new ArrayList<OutputDescriptor>();
-            try {
-                TreeNode tree = jsonParser.readValueAsTree();
-                for (Iterator<String> it = tree.fieldNames(); it.hasNext();) {
-                    String f = it.next();
-                    ObjectNode node = mapper.createObjectNode();
-                    node.set(f, mapper.readTree(tree.get(f).traverse(mapper)));
-                    ret.add(node.traverse(mapper).readValueAs(OutputDescriptor.class));
+            if (!jsonParser.isExpectedStartObjectToken()) {
+                return toList(deserializationContext.handleUnexpectedToken(ArrayList.class, jsonParser),
+                        OutputDescriptor.class);
+            }
+            DescriptorList<OutputDescriptor> ret = new DescriptorList<>();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.currentName();
+                jsonParser.nextToken();
+                SteppedOutputDescriptor descriptor = newOutputDescriptor(name);
+                if (descriptor == null) {
+                    ret.unknownTypes.add(name);
+                    jsonParser.skipChildren();
+                    continue;
                 }
-            } catch (Exception e) {
-                // unknown type
+                if (!jsonParser.isExpectedStartObjectToken()) {
+                    Object value = deserializationContext.handleUnexpectedToken(descriptor.getClass(), jsonParser);
+                    jsonParser.skipChildren();
+                    if (value instanceof OutputDescriptor) {
+                        ret.add((OutputDescriptor) value);
+                    }
+                    continue;
+                }
+                while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = jsonParser.currentName();
+                    jsonParser.nextToken();
+                    if (VALUE.equals(field)) {
+                        descriptor.setStepCount(readIntArray(jsonParser, deserializationContext));
+                    } else if (DURATION.equals(field) && descriptor instanceof HwPositionWithDuration) {
+                        ((HwPositionWithDuration) descriptor).setDuration(
+                                readIntArray(jsonParser, deserializationContext));
+                    } else {
+                        jsonParser.skipChildren();
+                    }
+                }
+                ret.add(descriptor);
             }
             return ret;
         }
@@ -728,6 +964,8 @@ public final class DeviceFeature {
 
     /**
      * OutputDescriptorSetSerialiser.
+     * <p>
+     * Writes the Output map in a single pass, or null for an empty list.
      */
     static class OutputDescriptorSetSerialiser extends JsonSerializer<ArrayList<OutputDescriptor>> {
 
@@ -735,27 +973,37 @@ public final class DeviceFeature {
         public void serialize(final ArrayList<OutputDescriptor> outputDescriptors,
                               final JsonGenerator jsonGenerator,
                               final SerializerProvider serializerProvider) throws IOException {
-
-            ObjectMapper mapper = ((ObjectMapper) jsonGenerator.getCodec());
-            ObjectNode node = null;
+            if (outputDescriptors.isEmpty()) {
+                jsonGenerator.writeNull();
+                return;
+            }
+            jsonGenerator.writeStartObject();
             for (OutputDescriptor outputDescriptor : outputDescriptors) {
-                if (node == null) {
-                    node = mapper.createObjectNode();
+                String name = outputDescriptor == null ? null : OUTPUT_NAMES.get(outputDescriptor.getClass());
+                if (name == null) {
+                    serializerProvider.reportMappingProblem("Unsupported output descriptor: %s", outputDescriptor);
+                    return;
                 }
-
-                TreeNode n = mapper.readValue(mapper.writeValueAsString(outputDescriptor), JsonNode.class)
-                        .traverse(mapper).readValueAsTree();
-                for (Iterator<String> it = n.fieldNames(); it.hasNext();) {
-                    String f = it.next();
-                    node.set(f, mapper.readTree(n.get(f).traverse(mapper)));
+                SteppedOutputDescriptor stepped = (SteppedOutputDescriptor) outputDescriptor;
+                jsonGenerator.writeFieldName(name);
+                jsonGenerator.writeStartObject();
+                jsonGenerator.writeFieldName(VALUE);
+                writeIntArray(jsonGenerator, stepped.getValue());
+                if (stepped instanceof HwPositionWithDuration) {
+                    jsonGenerator.writeFieldName(DURATION);
+                    writeIntArray(jsonGenerator, ((HwPositionWithDuration) stepped).getDuration());
                 }
+                jsonGenerator.writeEndObject();
             }
-            jsonGenerator.writeObject(node);
+            jsonGenerator.writeEndObject();
         }
     }
 
     /**
      * InputDescriptorSetDeserialiser.
+     * <p>
+     * Reads the Input map in a single pass. Unknown descriptor types and fields are skipped, so a newer server does
+     * not fail the whole device list; the skipped types are available from {@link #getUnknownInputTypes()}.
      */
     static class InputDescriptorSetDeserialiser extends JsonDeserializer<ArrayList<InputDescriptor>> {
 
@@ -763,25 +1011,108 @@ public final class DeviceFeature {
         public ArrayList<InputDescriptor> deserialize(final JsonParser jsonParser,
                                                       final DeserializationContext deserializationContext)
                 throws IOException {
-            ObjectMapper mapper = ((ObjectMapper) jsonParser.getCodec());
-            ArrayList<InputDescriptor> ret = new ArrayList<InputDescriptor>();
-            try {
-                TreeNode tree = jsonParser.readValueAsTree();
-                for (Iterator<String> it = tree.fieldNames(); it.hasNext();) {
-                    String f = it.next();
-                    ObjectNode node = mapper.createObjectNode();
-                    node.set(f, mapper.readTree(tree.get(f).traverse(mapper)));
-                    ret.add(node.traverse(mapper).readValueAs(InputDescriptor.class));
+            if (!jsonParser.isExpectedStartObjectToken()) {
+                return toList(deserializationContext.handleUnexpectedToken(ArrayList.class, jsonParser),
+                        InputDescriptor.class);
+            }
+            DescriptorList<InputDescriptor> ret = new DescriptorList<>();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.currentName();
+                jsonParser.nextToken();
+                RangedInputDescriptor descriptor = newInputDescriptor(name);
+                if (descriptor == null) {
+                    ret.unknownTypes.add(name);
+                    jsonParser.skipChildren();
+                    continue;
                 }
-            } catch (Exception e) {
-                // unknown type
+                if (!jsonParser.isExpectedStartObjectToken()) {
+                    Object value = deserializationContext.handleUnexpectedToken(descriptor.getClass(), jsonParser);
+                    jsonParser.skipChildren();
+                    if (value instanceof InputDescriptor) {
+                        ret.add((InputDescriptor) value);
+                    }
+                    continue;
+                }
+                while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = jsonParser.currentName();
+                    jsonParser.nextToken();
+                    if (COMMAND.equals(field)) {
+                        descriptor.setInput(readCommands(jsonParser, deserializationContext));
+                    } else if (VALUE.equals(field)) {
+                        descriptor.setValueRange(readRanges(jsonParser, deserializationContext));
+                    } else {
+                        jsonParser.skipChildren();
+                    }
+                }
+                ret.add(descriptor);
             }
             return ret;
         }
+
+        /**
+         * Read the supported command types.
+         *
+         * @param p    parser positioned on the array
+         * @param ctxt deserialization context
+         * @return command types, or null for a JSON null
+         * @throws IOException if the value is not an array of command types
+         */
+        private static ArrayList<InputCommandType> readCommands(final JsonParser p,
+                                                                final DeserializationContext ctxt)
+                throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (p.currentToken() != JsonToken.START_ARRAY) {
+                return toList(ctxt.handleUnexpectedToken(ArrayList.class, p), InputCommandType.class);
+            }
+            ArrayList<InputCommandType> commands = new ArrayList<>();
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                String text = p.getValueAsString();
+                InputCommandType match = null;
+                for (InputCommandType type : InputCommandType.values()) {
+                    if (type.getSpecName().equals(text)) {
+                        match = type;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    match = (InputCommandType) ctxt.handleWeirdStringValue(InputCommandType.class, text,
+                            "not one of the values accepted for Enum class InputCommandType");
+                }
+                commands.add(match);
+            }
+            return commands;
+        }
+
+        /**
+         * Read the value ranges.
+         *
+         * @param p    parser positioned on the array
+         * @param ctxt deserialization context
+         * @return ranges, or null for a JSON null
+         * @throws IOException if the value is not an array of int arrays
+         */
+        private static int[][] readRanges(final JsonParser p, final DeserializationContext ctxt)
+                throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (p.currentToken() != JsonToken.START_ARRAY) {
+                return (int[][]) ctxt.handleUnexpectedToken(int[][].class, p);
+            }
+            ArrayList<int[]> ranges = new ArrayList<>(2);
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                ranges.add(readIntArray(p, ctxt));
+            }
+            return ranges.toArray(new int[ranges.size()][]);
+        }
     }
 
     /**
      * InputDescriptorSetSerialiser.
+     * <p>
+     * Writes the Input map in a single pass, or null for an empty list.
      */
     static class InputDescriptorSetSerialiser extends JsonSerializer<ArrayList<InputDescriptor>> {
 
@@ -789,22 +1120,43 @@ public final class DeviceFeature {
         public void serialize(final ArrayList<InputDescriptor> inputDescriptors,
                               final JsonGenerator jsonGenerator,
                               final SerializerProvider serializerProvider) throws IOException {
-
-            ObjectMapper mapper = ((ObjectMapper) jsonGenerator.getCodec());
-            ObjectNode node = null;
+            if (inputDescriptors.isEmpty()) {
+                jsonGenerator.writeNull();
+                return;
+            }
+            jsonGenerator.writeStartObject();
             for (InputDescriptor inputDescriptor : inputDescriptors) {
-                if (node == null) {
-                    node = mapper.createObjectNode();
+                String name = inputDescriptor == null ? null : INPUT_NAMES.get(inputDescriptor.getClass());
+                if (name == null) {
+                    serializerProvider.reportMappingProblem("Unsupported input descriptor: %s", inputDescriptor);
+                    return;
                 }
-
-                TreeNode n = mapper.readValue(mapper.writeValueAsString(inputDescriptor), JsonNode.class)
-                        .traverse(mapper).readValueAsTree();
-                for (Iterator<String> it = n.fieldNames(); it.hasNext();) {
-                    String f = it.next();
-                    node.set(f, mapper.readTree(n.get(f).traverse(mapper)));
+                jsonGenerator.writeFieldName(name);
+                jsonGenerator.writeStartObject();
+                jsonGenerator.writeFieldName(COMMAND);
+                if (inputDescriptor.getInput() == null) {
+                    jsonGenerator.writeNull();
+                } else {
+                    jsonGenerator.writeStartArray();
+                    for (InputCommandType type : inputDescriptor.getInput()) {
+                        jsonGenerator.writeString(type.getSpecName());
+                    }
+                    jsonGenerator.writeEndArray();
+                }
+                int[][] ranges = ((RangedInputDescriptor) inputDescriptor).getValueRange();
+                jsonGenerator.writeFieldName(VALUE);
+                if (ranges == null) {
+                    jsonGenerator.writeNull();
+                } else {
+                    jsonGenerator.writeStartArray();
+                    for (int[] range : ranges) {
+                        writeIntArray(jsonGenerator, range);
+                    }
+                    jsonGenerator.writeEndArray();
                 }
+                jsonGenerator.writeEndObject();
             }
-            jsonGenerator.writeObject(node);
+            jsonGenerator.writeEndObject();
         }
     }
 }
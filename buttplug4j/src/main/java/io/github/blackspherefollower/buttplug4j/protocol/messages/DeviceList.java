@@ -1,6 +1,7 @@
 package io.github.blackspherefollower.buttplug4j.protocol.messages;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
 
@@ -15,6 +16,7 @@ public final class DeviceList extends ButtplugMessage {
      * Devices.
      */
     @JsonProperty(value = "Devices", required = true)
+    @JsonDeserialize(contentUsing = Device.LazyDeviceDeserialiser.class)
     private HashMap<Integer, Device> devices;
 
     /**
@@ -11,7 +11,9 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
@@ -312,5 +314,15 @@ class ButtplugClientDeviceTest {
 
         Device differentDevice = new Device(6, "Different", new HashMap<>(), 0, "Different");
         assertNotEquals(clientDevice, new ButtplugClientDevice(mockClient, differentDevice));
+        assertNotEquals(clientDevice, new ButtplugClientDevice(mock(ButtplugClient.class), testDevice));
+    }
+
+    @Test
+    void testHashCodeSurvivesUpdate() {
+        Set<ButtplugClientDevice> set = new HashSet<>();
+        set.add(clientDevice);
+        clientDevice.setDeviceIndex(9);
+        clientDevice.update(new Device(9, "Renamed", new HashMap<>(), 50, "Renamed"));
+        assertTrue(set.contains(clientDevice));
     }
 }
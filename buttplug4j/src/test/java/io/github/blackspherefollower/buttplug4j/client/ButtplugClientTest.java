@@ -1,19 +1,32 @@
 package io.github.blackspherefollower.buttplug4j.client;
 
+import io.github.blackspherefollower.buttplug4j.ButtplugException;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugConsts;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugJsonMessageParser;
 import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugProtocolException;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.*;
 import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -27,6 +40,7 @@ import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 
 class ButtplugClientTest {
 
@@ -177,6 +191,46 @@ class ButtplugClientTest {
         assertNotNull(sensorReadingReceived.get());
     }
 
+    @Test
+    void testRegisterMessageHandler() {
+        List<ButtplugMessage> received = new ArrayList<>();
+        client.registerMessageHandler(CustomMessage.class, received::add);
+        assertNotNull(client.getMessageHandler(CustomMessage.class));
+
+        client.onMessage(new CustomMessage(0));
+        assertEquals(1, received.size());
+
+        // Replies complete the pending future and are not dispatched
+        CompletableFuture<ButtplugMessage> future = new CompletableFuture<>();
+        client.scheduleWait(7, future);
+        client.onMessage(new CustomMessage(7));
+        assertTrue(future.isDone());
+        assertEquals(1, received.size());
+
+        client.registerMessageHandler(CustomMessage.class, null);
+        client.onMessage(new CustomMessage(0));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    void testMessageHandlerReplacesBuiltIn() {
+        AtomicInteger calls = new AtomicInteger();
+        client.setErrorHandler(error -> errorReceived.set(error));
+        client.registerMessageHandler(Error.class, error -> calls.incrementAndGet());
+
+        client.onMessage(new Error("Test error", Error.ErrorClass.ERROR_DEVICE, 0));
+        assertEquals(1, calls.get());
+        assertNull(errorReceived.get());
+    }
+
+    @Test
+    void testMessageHandlerMatchesSubclasses() {
+        client.setInputHandler(reading -> sensorReadingReceived.set(reading));
+        client.onMessage(new InputReading(0, 1, 1) {
+        });
+        assertNotNull(sensorReadingReceived.get());
+    }
+
     @Test
     void testStartScanningAsync() {
         CompletableFuture<ButtplugMessage> future = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
@@ -388,6 +442,188 @@ class ButtplugClientTest {
         assertTrue(foundPing);
     }
 
+    @Test
+    void testSharedScheduler() throws Exception {
+        assertSame(ButtplugClient.getDefaultScheduler(), client.getScheduler());
+        assertSame(client.getScheduler(), new TestButtplugClient("Other").getScheduler());
+
+        ScheduledThreadPoolExecutor shared = new ScheduledThreadPoolExecutor(1);
+        shared.setRemoveOnCancelPolicy(true);
+        try {
+            client.setScheduler(shared);
+            client.setNextResponse(new ServerInfo("Test Server", 4, 0, 500, 1));
+            client.setNextResponse(new DeviceList(new HashMap<>(), 2));
+            client.doHandshakeAsync().get(1, TimeUnit.SECONDS);
+            assertEquals(ButtplugClient.ConnectionState.CONNECTED, client.getConnectionState());
+
+            // The ping and the request timeout sweep both run on the shared scheduler
+            assertEquals(2, shared.getQueue().size());
+            client.disconnect();
+            assertEquals(0, shared.getQueue().size());
+        } finally {
+            shared.shutdownNow();
+            client.setScheduler(null);
+        }
+        assertSame(ButtplugClient.getDefaultScheduler(), client.getScheduler());
+    }
+
+    @Test
+    void testReconnectRemapsDevicesAndResubscribes() throws Exception {
+        HashMap<Integer, Device> devices = new HashMap<>();
+        devices.put(0, new Device(0, "Dev A", new HashMap<>(), 0, ""));
+        devices.put(1, new Device(1, "Dev B", new HashMap<>(), 0, ""));
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(devices, 2));
+        client.doHandshake();
+        ButtplugClientDevice devB = client.getDevice(1);
+        devB.runInputSubscribe(0, ButtplugInput.PRESSURE);
+        InputPublisher publisher = client.getInputPublisher(1, 0, ButtplugInput.BATTERY);
+        RecordingSubscriber subscriber = new RecordingSubscriber(new AtomicReference<>(), new ArrayList<>());
+        publisher.subscribe(subscriber);
+
+        // Without a policy a lost connection is left to the connector
+        assertFalse(client.connectionLost(null));
+
+        client.setReconnectPolicy(new ReconnectPolicy(1, 1, TimeUnit.MILLISECONDS, 3));
+        // Nor is it by a connector that cannot reconnect
+        client.reconnectable = false;
+        assertFalse(client.connectionLost(null));
+        client.reconnectable = true;
+        client.failReopens = 1;
+        client.silent = true;
+        CompletableFuture<ButtplugMessage> pending = client.scheduleWait(50, new CompletableFuture<>());
+        client.silent = false;
+
+        CountDownLatch connected = new CountDownLatch(1);
+        client.setOnConnected(c -> connected.countDown());
+        client.setDeviceAddedHandler(dev -> addedDevice.set(dev));
+        client.setDeviceRemovedHandler(dev -> removedDevice.set(dev));
+        client.setDeviceChangedHandler(dev -> updatedDevice.set(dev));
+        HashMap<Integer, Device> relisted = new HashMap<>();
+        relisted.put(0, new Device(0, "Dev B", new HashMap<>(), 0, ""));
+        relisted.put(2, new Device(2, "Dev C", new HashMap<>(), 0, ""));
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(relisted, 2));
+        int sent = client.sentMessages.size();
+
+        assertTrue(client.connectionLost(new IOException("dropped")));
+        assertTrue(client.isReconnecting());
+        assertFalse(client.isConnected());
+        assertEquals("Connection lost!", ((Error) pending.getNow(null)).getErrorMessage());
+
+        assertTrue(connected.await(1, TimeUnit.SECONDS));
+        assertEquals(2, client.reopens);
+        assertFalse(client.isReconnecting());
+        assertTrue(client.isConnected());
+        assertFalse(client.cleanupCalled);
+
+        // Dev B kept its instance under its new index, Dev A went away and Dev C is new
+        assertSame(devB, client.getDevice(0));
+        assertEquals(0, devB.getDeviceIndex());
+        assertSame(devB, updatedDevice.get());
+        assertEquals(0, removedDevice.get());
+        assertEquals("Dev C", addedDevice.get().getName());
+        assertEquals(2, client.getDevices().size());
+
+        // Both subscriptions were sent again for the new index, and the publisher followed the device
+        assertSame(publisher, client.getInputPublisher(0, 0, ButtplugInput.BATTERY));
+        assertFalse(subscriber.completed);
+        List<String> resubscribed = new ArrayList<>();
+        for (ButtplugMessage msg : client.sentMessages.subList(sent, client.sentMessages.size())) {
+            if (msg instanceof InputCmd && ((InputCmd) msg).getInputCommand() == InputCommandType.SUBSCRIBE) {
+                assertEquals(0, ((InputCmd) msg).getDeviceIndex());
+                resubscribed.add(((InputCmd) msg).getInputType());
+            }
+        }
+        Collections.sort(resubscribed);
+        assertEquals(Arrays.asList(ButtplugInput.BATTERY.getName(), ButtplugInput.PRESSURE.getName()), resubscribed);
+    }
+
+    @Test
+    void testReconnectLeavesOlderSnapshots() throws Exception {
+        // Indexes past the snapshot's lookup table, so lookups search the sorted devices
+        HashMap<Integer, Device> devices = new HashMap<>();
+        devices.put(300, new Device(300, "Dev A", new HashMap<>(), 0, ""));
+        devices.put(301, new Device(301, "Dev B", new HashMap<>(), 0, ""));
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(devices, 2));
+        client.doHandshake();
+        ButtplugClientDevice devA = client.getDevice(300);
+        ButtplugClientDevice devB = client.getDevice(301);
+        DeviceSnapshot before = client.getDeviceSnapshot();
+
+        CountDownLatch connected = new CountDownLatch(1);
+        client.setOnConnected(c -> connected.countDown());
+        client.setReconnectPolicy(new ReconnectPolicy(1, 1, TimeUnit.MILLISECONDS, 3));
+        HashMap<Integer, Device> relisted = new HashMap<>();
+        relisted.put(299, new Device(299, "Dev B", new HashMap<>(), 0, ""));
+        relisted.put(300, new Device(300, "Dev A", new HashMap<>(), 0, ""));
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(relisted, 2));
+        assertTrue(client.connectionLost(null));
+        assertTrue(connected.await(1, TimeUnit.SECONDS));
+
+        assertSame(devB, client.getDevice(299));
+        assertEquals(299, devB.getDeviceIndex());
+        assertEquals(Arrays.asList(devB, devA), client.getDevices());
+
+        // The snapshot taken before the reconnect still files Dev B under its old index
+        assertSame(devA, before.getDevice(300));
+        assertSame(devB, before.getDevice(301));
+        assertNull(before.getDevice(299));
+        assertEquals(Arrays.asList(devA, devB), before.getDevices());
+    }
+
+    @Test
+    void testReconnectGivesUp() throws Exception {
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(new HashMap<>(), 2));
+        client.doHandshake();
+        RecordingSubscriber subscriber = new RecordingSubscriber(new AtomicReference<>(), new ArrayList<>());
+        client.getInputPublisher(0, 0, ButtplugInput.BATTERY).subscribe(subscriber);
+        CountDownLatch failed = new CountDownLatch(1);
+        client.setErrorHandler(error -> {
+            errorReceived.set(error);
+            failed.countDown();
+        });
+
+        // Both attempts and the give-up run on the blocking executor
+        assertSame(ButtplugClient.getDefaultBlockingExecutor(), client.getBlockingExecutor());
+        AtomicInteger blockingTasks = new AtomicInteger();
+        client.setBlockingExecutor(task -> {
+            blockingTasks.incrementAndGet();
+            ButtplugClient.getDefaultBlockingExecutor().execute(task);
+        });
+
+        client.setReconnectPolicy(new ReconnectPolicy(1, 2, TimeUnit.MILLISECONDS, 2));
+        client.failReopens = Integer.MAX_VALUE;
+        assertTrue(client.connectionLost(null));
+
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+        assertEquals("Reconnect failed after 2 attempts: refused", errorReceived.get().getErrorMessage());
+        assertEquals(2, client.reopens);
+        assertEquals(3, blockingTasks.get());
+        client.setBlockingExecutor(null);
+        assertSame(ButtplugClient.getDefaultBlockingExecutor(), client.getBlockingExecutor());
+        assertFalse(client.isReconnecting());
+        assertEquals(ButtplugClient.ConnectionState.DISCONNECTED, client.getConnectionState());
+        assertTrue(client.cleanupCalled);
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    void testReconnectPolicyBackoff() {
+        ReconnectPolicy policy = new ReconnectPolicy(100, 1000, TimeUnit.MILLISECONDS, 0);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long nominal = Math.min(100L << (attempt - 1), 1000);
+            long delay = TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(attempt));
+            assertTrue(delay >= nominal / 2 && delay <= nominal, attempt + ": " + delay);
+        }
+        assertTrue(policy.allowsRetry(Integer.MAX_VALUE - 1));
+        assertFalse(new ReconnectPolicy(1, 1, TimeUnit.SECONDS, 2).allowsRetry(2));
+        assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(2, 1, TimeUnit.SECONDS, 0));
+    }
+
     @Test
     void testDoHandshakeWithError() {
         client.setNextResponse(new Error("Handshake failed", Error.ErrorClass.ERROR_UNKNOWN, 1));
@@ -398,6 +634,43 @@ class ButtplugClientTest {
         assertNotNull(errorReceived.get());
     }
 
+    @Test
+    void testEventListenersOffReceivingThread() throws InterruptedException {
+        ExecutorService events = Executors.newSingleThreadExecutor();
+        try {
+            client.setEventExecutor(events);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            AtomicReference<Thread> handlerThread = new AtomicReference<>();
+            client.setErrorHandler(error -> {
+                handlerThread.set(Thread.currentThread());
+                done.countDown();
+            });
+            IErrorEvent slow = error -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                errorReceived.set(error);
+                done.countDown();
+            };
+            client.getEventBus().addListener(IErrorEvent.class, slow);
+
+            // Returns while the listener is still blocked
+            client.onMessage(new Error("Test error", Error.ErrorClass.ERROR_DEVICE, 0));
+            assertEquals(1, client.getEventBus().getQueueDepth(IErrorEvent.class, slow));
+
+            release.countDown();
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertEquals("Test error", errorReceived.get().getErrorMessage());
+            assertNotNull(handlerThread.get());
+            assertFalse(handlerThread.get() == Thread.currentThread());
+        } finally {
+            events.shutdownNow();
+        }
+    }
+
     @Test
     void testMultipleDevicesInDeviceList() throws Exception {
         Device device1 = new Device(0, "Device 1", new HashMap<>(), 100, "");
@@ -518,6 +791,737 @@ class ButtplugClientTest {
         assertTrue(scanningFinishedCalled.get());
     }
 
+    @Test
+    void testLazyDeviceListSkipsUnchangedDevices() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser(false, true);
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        AtomicInteger changed = new AtomicInteger();
+        client.setDeviceAddedHandler(addedDevice::set);
+        client.setDeviceChangedHandler(device -> changed.incrementAndGet());
+
+        client.onMessage(parser.parseJson(json));
+        assertNotNull(addedDevice.get());
+        assertEquals("A", addedDevice.get().getName());
+
+        DeviceList again = (DeviceList) parser.parseJson(json).get(0);
+        client.onMessage(again);
+        assertFalse(again.getDevices().get(0).isMaterialized());
+        assertEquals(0, changed.get());
+
+        client.onMessage(parser.parseJson(json.replace("\"A\"", "\"B\"")));
+        assertEquals(1, changed.get());
+        assertEquals("B", client.getDevices().get(0).getName());
+    }
+
+    @Test
+    void testBatchSendsInOrder() throws Exception {
+        MessageBatch batch = client.batch();
+        assertEquals(0, batch.size());
+        assertTrue(batch.send().isEmpty());
+
+        batch.add(new Ping(0)).add(new StopScanning(0));
+        assertEquals(2, batch.size());
+        List<CompletableFuture<ButtplugMessage>> futures = batch.send();
+        assertEquals(0, batch.size());
+
+        assertEquals(2, client.sentMessages.size());
+        assertInstanceOf(Ping.class, client.sentMessages.get(0));
+        assertEquals(1, client.sentMessages.get(0).getId());
+        assertInstanceOf(StopScanning.class, client.sentMessages.get(1));
+        assertEquals(2, client.sentMessages.get(1).getId());
+        assertEquals(2, futures.size());
+        assertEquals(1, futures.get(0).get().getId());
+        assertEquals(2, futures.get(1).get().getId());
+    }
+
+    @Test
+    void testSendOutputFloat() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDeviceFeature feature = client.getDevices().get(0).getDeviceFeatures().get(1);
+
+        // Transport without raw frame support falls back to a regular message
+        feature.sendOutputFloat(ButtplugOutput.VIBRATE, 0.5f);
+        assertEquals(1, client.sentMessages.size());
+        OutputCmd cmd = (OutputCmd) client.sentMessages.get(0);
+        assertEquals(3, cmd.getDeviceIndex());
+        assertEquals(1, cmd.getFeatureIndex());
+        assertEquals(10, ((OutputCmd.Vibrate) cmd.getCommand()).getValue());
+
+        TestButtplugClient rawClient = new TestButtplugClient("Raw");
+        rawClient.acceptRawFrames = true;
+        rawClient.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        rawClient.getDevices().get(0).getDeviceFeatures().get(1).sendOutputFloat(ButtplugOutput.VIBRATE, 0.25f);
+        assertEquals(0, rawClient.sentMessages.size());
+        assertEquals(Collections.singletonList("[{\"OutputCmd\":{\"Id\":1073741824,\"DeviceIndex\":3,\"FeatureIndex\":1,"
+                + "\"Command\":{\"Vibrate\":{\"Value\":5}}}}]"), rawClient.rawFrames);
+
+        // A frame the transport cannot write right now is reported, and raw frames stay in use
+        rawClient.setErrorHandler(errorReceived::set);
+        rawClient.silent = true;
+        rawClient.getDevices().get(0).getDeviceFeatures().get(1).sendOutputFloat(ButtplugOutput.VIBRATE, 0.5f);
+        assertEquals("Bad WS state!", errorReceived.get().getErrorMessage());
+        rawClient.silent = false;
+        rawClient.getDevices().get(0).getDeviceFeatures().get(1).sendOutputFloat(ButtplugOutput.VIBRATE, 0.75f);
+        assertEquals(0, rawClient.sentMessages.size());
+        assertEquals(2, rawClient.rawFrames.size());
+
+        assertThrows(ButtplugDeviceFeatureException.class, () -> feature.sendOutputFloat(ButtplugOutput.VIBRATE, 1.5f));
+        assertThrows(ButtplugDeviceFeatureException.class, () -> feature.sendOutputFloat(ButtplugOutput.ROTATE, 0.5f));
+        assertThrows(ButtplugDeviceFeatureException.class,
+                () -> feature.sendOutputFloat(ButtplugOutput.HW_POSITION_WITH_DURATION, 0.5f));
+    }
+
+    @Test
+    void testCoalesceOutputFloat() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceMessageTimingGap\":50,"
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDeviceFeature feature = client.getDevices().get(0).getDeviceFeatures().get(1);
+
+        // The first value goes out at once, later ones wait for the timing gap
+        CompletableFuture<ButtplugMessage> first = feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, 0.25f);
+        assertInstanceOf(Ok.class, first.get(1, TimeUnit.SECONDS));
+        CompletableFuture<ButtplugMessage> second = feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, 0.5f);
+        CompletableFuture<ButtplugMessage> third = feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, 0.75f);
+        assertInstanceOf(Ok.class, second.getNow(null));
+        assertEquals(ButtplugConsts.SYSTEM_MSG_ID, second.getNow(null).getId());
+        assertFalse(third.isDone());
+
+        assertInstanceOf(Ok.class, third.get(5, TimeUnit.SECONDS));
+        assertEquals(2, client.sentMessages.size());
+        assertEquals(5, ((OutputCmd.Vibrate) ((OutputCmd) client.sentMessages.get(0)).getCommand()).getValue());
+        assertEquals(15, ((OutputCmd.Vibrate) ((OutputCmd) client.sentMessages.get(1)).getCommand()).getValue());
+
+        // Once the gap has passed a value goes out at once again
+        Thread.sleep(60);
+        CompletableFuture<ButtplugMessage> fourth = feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, 1f);
+        assertInstanceOf(Ok.class, fourth.getNow(null));
+        assertEquals(3, client.sentMessages.size());
+        assertEquals(20, ((OutputCmd.Vibrate) ((OutputCmd) client.sentMessages.get(2)).getCommand()).getValue());
+
+        assertThrows(ButtplugDeviceFeatureException.class,
+                () -> feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, 1.5f));
+        assertThrows(ButtplugDeviceFeatureException.class,
+                () -> feature.coalesceOutputFloat(ButtplugOutput.HW_POSITION_WITH_DURATION, 0.5f));
+    }
+
+    @Test
+    void testCoalesceOutputFloatWithoutGap() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDeviceFeature feature = client.getDevices().get(0).getDeviceFeatures().get(1);
+
+        // Every value goes out as it arrives
+        for (int i = 1; i <= 3; i++) {
+            CompletableFuture<ButtplugMessage> sent = feature.coalesceOutputFloat(ButtplugOutput.VIBRATE, i / 4f);
+            assertInstanceOf(Ok.class, sent.getNow(null));
+            assertEquals(client.lastSentMessage.getId(), sent.getNow(null).getId());
+            assertEquals(i, client.sentMessages.size());
+            assertEquals(i * 5, ((OutputCmd.Vibrate) ((OutputCmd) client.lastSentMessage).getCommand()).getValue());
+        }
+    }
+
+    @Test
+    void testDeviceTimingGap() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceMessageTimingGap\":50,"
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDevice device = client.getDevices().get(0);
+        ButtplugClientDeviceFeature feature = device.getDeviceFeatures().get(1);
+
+        long start = System.nanoTime();
+        feature.runVibrate(1);
+        CompletableFuture<ButtplugMessage> second = (CompletableFuture<ButtplugMessage>) feature.runVibrate(2);
+        CompletableFuture<ButtplugMessage> third = (CompletableFuture<ButtplugMessage>) feature.runVibrate(3);
+        assertEquals(1, client.sentMessages.size());
+        assertEquals(2, device.getQueuedMessageCount());
+        assertTrue(device.getSendDelay(TimeUnit.MILLISECONDS) > 50);
+
+        assertInstanceOf(Ok.class, third.get(5, TimeUnit.SECONDS));
+        assertTrue(second.isDone());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(3, client.sentMessages.size());
+        assertEquals(3, ((OutputCmd.Vibrate) ((OutputCmd) client.sentMessages.get(2)).getCommand()).getValue());
+        assertEquals(0, device.getQueuedMessageCount());
+
+        // A stop goes out at once and drops the queued output commands
+        Thread.sleep(60);
+        client.sentMessages.clear();
+        feature.runVibrate(4);
+        CompletableFuture<ButtplugMessage> dropped = (CompletableFuture<ButtplugMessage>) feature.runVibrate(5);
+        device.sendStopDeviceCmd();
+        assertEquals(ButtplugConsts.SYSTEM_MSG_ID, dropped.getNow(null).getId());
+        assertEquals(0, device.getQueuedMessageCount());
+        assertEquals(2, client.sentMessages.size());
+        assertInstanceOf(StopCmd.class, client.sentMessages.get(1));
+
+        // A queued send that throws fails the caller's future
+        Thread.sleep(60);
+        feature.runVibrate(6);
+        client.throwOnSend = true;
+        CompletableFuture<ButtplugMessage> failed = (CompletableFuture<ButtplugMessage>) feature.runVibrate(7);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertEquals("Transport gone", ex.getCause().getMessage());
+        assertEquals(0, device.getQueuedMessageCount());
+        client.throwOnSend = false;
+    }
+
+    @Test
+    void testPacedAsyncRequestKeepsCallerTimeout() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceMessageTimingGap\":50,"
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}},"
+                + "\"Input\":{\"Battery\":{\"Value\":[[0,100]],\"Command\":[\"Read\"]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDevice device = client.getDevices().get(0);
+        client.setRequestTimeout(5, TimeUnit.SECONDS);
+        client.silent = true;
+
+        device.getDeviceFeatures().get(1).runVibrate(1);
+        CompletableFuture<ButtplugMessage> read = device.runInputAsync(1, ButtplugInput.BATTERY, InputCommandType.READ,
+                100, TimeUnit.MILLISECONDS).toCompletableFuture();
+        assertEquals(1, device.getQueuedMessageCount());
+
+        // Once sent, the queued read waits for its reply only as long as its caller does
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> read.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, ex.getCause());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (client.getPendingRequestCount() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, client.getPendingRequestCount());
+        client.disconnect();
+    }
+
+    @Test
+    void testFireAndForgetOutputs() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDeviceFeature feature = client.getDevices().get(0).getDeviceFeatures().get(1);
+        client.setErrorHandler(errorReceived::set);
+        client.setFireAndForgetOutputs(true);
+        assertTrue(client.isFireAndForgetOutputs());
+
+        CompletableFuture<ButtplugMessage> future = (CompletableFuture<ButtplugMessage>) feature.runVibrate(5);
+        assertEquals(ButtplugConsts.SYSTEM_MSG_ID, future.getNow(null).getId());
+        int id = client.lastSentMessage.getId();
+        assertTrue(ButtplugClient.isUntrackedMsgId(id));
+        assertEquals(0, client.getPendingRequestCount());
+
+        // The Ok reply is dropped, an Error reply names the command's target
+        client.onMessage(new Ok(id));
+        assertNull(errorReceived.get());
+        client.onMessage(new Error("Device busy", Error.ErrorClass.ERROR_DEVICE, id));
+        assertEquals("Output to device 3 feature 1 failed: Device busy", errorReceived.get().getErrorMessage());
+        assertEquals(Error.ErrorClass.ERROR_DEVICE, errorReceived.get().getErrorCode());
+
+        // Per-call fire-and-forget uses the reserved range too
+        client.setFireAndForgetOutputs(false);
+        feature.sendOutputFloat(ButtplugOutput.VIBRATE, 0.5f);
+        assertTrue(ButtplugClient.isUntrackedMsgId(client.lastSentMessage.getId()));
+        assertFalse(ButtplugClient.isUntrackedMsgId(client.getNextMsgId()));
+        assertEquals(0, client.getPendingRequestCount());
+
+        // Device-wide outputs follow the mode too
+        client.setFireAndForgetOutputs(true);
+        client.sentMessages.clear();
+        List<Future<ButtplugMessage>> all = client.getDevices().get(0).runVibrateFloat(0.5f);
+        assertEquals(1, all.size());
+        assertEquals(ButtplugConsts.SYSTEM_MSG_ID, all.get(0).get().getId());
+        assertEquals(1, client.sentMessages.size());
+        assertTrue(ButtplugClient.isUntrackedMsgId(client.lastSentMessage.getId()));
+        assertEquals(0, client.getPendingRequestCount());
+    }
+
+    @Test
+    void testInputPublisher() {
+        InputPublisher publisher = client.getInputPublisher(3, 1, ButtplugInput.PRESSURE);
+        assertSame(publisher, client.getInputPublisher(3, 1, ButtplugInput.PRESSURE));
+        List<Integer> seen = new ArrayList<>();
+        AtomicReference<IInputSubscription> subscription = new AtomicReference<>();
+        RecordingSubscriber subscriber = new RecordingSubscriber(subscription, seen);
+
+        publisher.subscribe(subscriber, 2);
+        InputCmd cmd = (InputCmd) client.lastSentMessage;
+        assertEquals(InputCommandType.SUBSCRIBE, cmd.getInputCommand());
+        assertEquals("Pressure", cmd.getInputType());
+        assertEquals(1, publisher.getSubscriberCount());
+
+        // Nothing is delivered before it is requested, and the buffer keeps the latest two readings
+        for (int i = 1; i <= 4; i++) {
+            client.onMessage(pressure(1, i));
+        }
+        client.onMessage(pressure(2, 9));
+        assertTrue(seen.isEmpty());
+        subscription.get().request(1);
+        assertEquals(Collections.singletonList(3), seen);
+        subscription.get().request(5);
+        assertEquals(Arrays.asList(3, 4), seen);
+        assertEquals(2, publisher.getDroppedCount());
+
+        // Cancelling the last subscriber unsubscribes
+        subscription.get().cancel();
+        assertEquals(InputCommandType.UNSUBSCRIBE, ((InputCmd) client.lastSentMessage).getInputCommand());
+        assertEquals(0, publisher.getSubscriberCount());
+        client.onMessage(pressure(1, 5));
+        assertEquals(Arrays.asList(3, 4), seen);
+
+        // Subscribers complete on disconnect
+        publisher.subscribe(subscriber);
+        client.disconnect();
+        assertTrue(subscriber.completed);
+        assertFalse(publisher == client.getInputPublisher(3, 1, ButtplugInput.PRESSURE));
+    }
+
+    @Test
+    void testInputPublisherSampling() throws InterruptedException {
+        InputPublisher publisher = client.getInputPublisher(3, 1, ButtplugInput.PRESSURE);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<IInputSubscription> subscription = new AtomicReference<>();
+        publisher.subscribe(new RecordingSubscriber(subscription, seen), 1, 50, TimeUnit.MILLISECONDS);
+        subscription.get().request(Long.MAX_VALUE);
+
+        for (int i = 1; i <= 4; i++) {
+            client.onMessage(pressure(1, i));
+        }
+        assertEquals(Collections.singletonList(1), seen);
+        Thread.sleep(150);
+        assertEquals(Arrays.asList(1, 4), seen);
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    void testInputPublisherSubscribeRejected() {
+        client.setNextResponse(new Error("No such input", Error.ErrorClass.ERROR_DEVICE, 0));
+        AtomicReference<IInputSubscription> subscription = new AtomicReference<>();
+        RecordingSubscriber subscriber = new RecordingSubscriber(subscription, new ArrayList<>());
+
+        client.getInputPublisher(3, 1, ButtplugInput.POSITION).subscribe(subscriber);
+
+        assertNotNull(subscriber.error);
+        assertEquals(0, client.getInputPublisher(3, 1, ButtplugInput.POSITION).getSubscriberCount());
+    }
+
+    @Test
+    void testDeviceAndFeatureInputListeners() throws ButtplugProtocolException {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Input\":{\"Pressure\":{\"Value\":[[0,0],[0,100]],"
+                + "\"Command\":[\"Subscribe\"]}}},\"1\":{\"FeatureIndex\":1,\"Input\":{\"Pressure\":{"
+                + "\"Value\":[[0,0],[0,100]],\"Command\":[\"Subscribe\"]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDevice device = client.getDevices().get(0);
+        List<Integer> deviceSeen = new ArrayList<>();
+        List<Integer> featureSeen = new ArrayList<>();
+        List<Integer> globalSeen = new ArrayList<>();
+        IInputEvent deviceListener = r -> deviceSeen.add(((InputReading.InputIntegerData) r.getData()).getValue());
+        device.addInputListener(deviceListener);
+        device.getDeviceFeatures().get(1).addInputListener(
+                r -> featureSeen.add(((InputReading.InputIntegerData) r.getData()).getValue()));
+        client.setInputHandler(r -> globalSeen.add(((InputReading.InputIntegerData) r.getData()).getValue()));
+
+        client.onMessage(pressure(0, 10));
+        client.onMessage(pressure(1, 11));
+        assertEquals(Arrays.asList(10, 11), deviceSeen);
+        assertEquals(Collections.singletonList(11), featureSeen);
+        assertEquals(Arrays.asList(10, 11), globalSeen);
+
+        // Listeners stay with the device when it changes
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json.replace("\"A\"", "\"B\"")));
+        assertSame(device, client.getDevices().get(0));
+        client.onMessage(pressure(1, 12));
+        assertEquals(Arrays.asList(10, 11, 12), deviceSeen);
+        assertEquals(Arrays.asList(11, 12), featureSeen);
+
+        assertTrue(client.getDevices().get(0).removeInputListener(deviceListener));
+        client.onMessage(pressure(1, 13));
+        assertEquals(Arrays.asList(10, 11, 12), deviceSeen);
+        assertEquals(Arrays.asList(11, 12, 13), featureSeen);
+    }
+
+    @Test
+    void testDeviceListReconciliation() throws ButtplugProtocolException {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}},"
+                + "\"1\":{\"FeatureIndex\":1,\"Input\":{\"Pressure\":{\"Value\":[[0,0],[0,100]],"
+                + "\"Command\":[\"Subscribe\"]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        List<ButtplugClientDevice> changed = new ArrayList<>();
+        client.setDeviceChangedHandler(changed::add);
+        ButtplugClientDevice device = client.getDevices().get(0);
+        ButtplugClientDeviceFeature motor = device.getDeviceFeatures().get(0);
+        ButtplugClientDeviceFeature sensor = device.getDeviceFeatures().get(1);
+        List<Integer> seen = new ArrayList<>();
+        sensor.addInputListener(r -> seen.add(((InputReading.InputIntegerData) r.getData()).getValue()));
+
+        // An unchanged list changes nothing
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        assertTrue(changed.isEmpty());
+        assertSame(motor, device.getDeviceFeatures().get(0));
+
+        // Only the changed feature is replaced, and it keeps its listeners
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json.replace("[0,100]", "[0,50]")));
+        assertEquals(Collections.singletonList(device), changed);
+        assertSame(device, client.getDevices().get(0));
+        assertSame(motor, device.getDeviceFeatures().get(0));
+        assertNotSame(sensor, device.getDeviceFeatures().get(1));
+        client.onMessage(pressure(1, 7));
+        assertEquals(Collections.singletonList(7), seen);
+        assertEquals(7, device.getLatestValue(1, ButtplugInput.PRESSURE, -1));
+
+        // Dropping a feature keeps the others and the readings of the ones still present
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json.replace("[0,100]", "[0,50]")
+                .replace("\"0\":{\"FeatureIndex\":0,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}},", "")));
+        assertEquals(2, changed.size());
+        assertNull(device.getDeviceFeatures().get(0));
+        assertEquals(7, device.getLatestValue(1, ButtplugInput.PRESSURE, -1));
+    }
+
+    @Test
+    void testDeviceSnapshot() throws ButtplugProtocolException {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{"
+                + "\"1000\":{\"DeviceIndex\":1000,\"DeviceName\":\"Far\",\"DeviceFeatures\":{}},"
+                + "\"2\":{\"DeviceIndex\":2,\"DeviceName\":\"Near\",\"DeviceFeatures\":{}}}}}]";
+        DeviceSnapshot empty = client.getDeviceSnapshot();
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        DeviceSnapshot snapshot = client.getDeviceSnapshot();
+        assertTrue(snapshot.getVersion() > empty.getVersion());
+        assertEquals(0, empty.size());
+        assertEquals(2, snapshot.size());
+        assertEquals("Near", snapshot.getDevices().get(0).getName());
+        assertEquals("Far", client.getDevice(1000).getName());
+        assertNull(client.getDevice(999));
+        assertSame(client.getDevices(), client.getDevices());
+        assertThrows(UnsupportedOperationException.class, () -> client.getDevices().clear());
+
+        // An unchanged list keeps the snapshot, a change publishes a new one
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        assertSame(snapshot, client.getDeviceSnapshot());
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json.replace("\"Near\"", "\"Nearer\"")));
+        assertTrue(client.getDeviceSnapshot().getVersion() > snapshot.getVersion());
+        assertEquals("Nearer", snapshot.getDevice(2).getName());
+        client.onMessage(new ButtplugJsonMessageParser().parseJson("[{\"DeviceList\":{\"Id\":0,\"Devices\":{}}}]"));
+        assertEquals(0, client.getDevices().size());
+        assertEquals(2, snapshot.size());
+    }
+
+    @Test
+    void testLatestReadings() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Input\":{\"Pressure\":{"
+                + "\"Value\":[[0,0],[0,100]],\"Command\":[\"Read\",\"Subscribe\"]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDevice device = client.getDevices().get(0);
+        ButtplugClientDeviceFeature feature = device.getDeviceFeatures().get(1);
+        assertNull(feature.getLatestReading(ButtplugInput.PRESSURE));
+        assertEquals(-1, feature.getLatestValue(ButtplugInput.PRESSURE, -1));
+
+        // Subscription events and read replies both update the store
+        client.onMessage(pressure(1, 20));
+        assertEquals(20, feature.getLatestValue(ButtplugInput.PRESSURE, -1));
+        client.setNextResponse(pressure(1, 30));
+        device.runInputRead(1, ButtplugInput.PRESSURE).get(1, TimeUnit.SECONDS);
+        SensorSample sample = device.getLatestReading(1, ButtplugInput.PRESSURE);
+        assertEquals(30, sample.getValue());
+        assertEquals(2, sample.getSequence());
+        assertTrue(sample.getAge(TimeUnit.SECONDS) < 1);
+        assertNull(device.getLatestReading(1, ButtplugInput.BATTERY));
+    }
+
+    @Test
+    void testCachedBatteryReads() throws Exception {
+        String json = "[{\"DeviceList\":{\"Id\":0,\"Devices\":{\"3\":{\"DeviceIndex\":3,\"DeviceName\":\"A\","
+                + "\"DeviceFeatures\":{\"1\":{\"FeatureIndex\":1,\"Input\":{\"Battery\":{"
+                + "\"Value\":[[0,0],[0,100]],\"Command\":[\"Read\"]}}}}}}}}]";
+        client.onMessage(new ButtplugJsonMessageParser().parseJson(json));
+        ButtplugClientDeviceFeature feature = client.getDevices().get(0).getDeviceFeatures().get(1);
+        client.setInputCache(1, 0, TimeUnit.MINUTES);
+        assertEquals(60, client.getInputCacheTtl(TimeUnit.SECONDS));
+        client.silent = true;
+
+        // Concurrent reads share one request
+        CompletionStage<Integer> first = feature.readBatteryAsync(1, TimeUnit.SECONDS);
+        CompletionStage<Integer> second = feature.readBatteryAsync(1, TimeUnit.SECONDS);
+        assertSame(first, second);
+        assertEquals(1, client.sentMessages.size());
+        client.onMessage(battery(client.lastSentMessage.getId(), 80));
+        assertEquals(80, first.toCompletableFuture().get(1, TimeUnit.SECONDS));
+
+        // Fresh readings are served without a request
+        assertEquals(80, feature.readBattery());
+        assertEquals(1, client.sentMessages.size());
+
+        // Past the refresh age the cached value is returned and refreshed in the background
+        client.setInputCache(60_000, 1, TimeUnit.MILLISECONDS);
+        Thread.sleep(5);
+        assertEquals(80, feature.readBatteryAsync(1, TimeUnit.SECONDS).toCompletableFuture().getNow(null));
+        assertEquals(2, client.sentMessages.size());
+        client.onMessage(battery(client.lastSentMessage.getId(), 75));
+        assertEquals(75, feature.getLatestValue(ButtplugInput.BATTERY, -1));
+
+        // Errors reach the callers waiting for the server
+        client.setInputCache(1, 0, TimeUnit.NANOSECONDS);
+        CompletionStage<Integer> failed = feature.readBatteryAsync(1, TimeUnit.SECONDS);
+        client.onMessage(new Error("Read failed", Error.ErrorClass.ERROR_DEVICE, client.lastSentMessage.getId()));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> failed.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ButtplugException.class, e.getCause());
+    }
+
+    private static InputReading battery(final int id, final int value) {
+        InputReading reading = new InputReading(id, 3, 1);
+        InputReading.BatteryData data = new InputReading.BatteryData();
+        data.setValue(value);
+        reading.setData(data);
+        return reading;
+    }
+
+    private static InputReading pressure(final int featureIndex, final int value) {
+        InputReading reading = new InputReading(0, 3, featureIndex);
+        InputReading.PresureData data = new InputReading.PresureData();
+        data.setValue(value);
+        reading.setData(data);
+        return reading;
+    }
+
+    private static class RecordingSubscriber implements IInputSubscriber {
+        private final AtomicReference<IInputSubscription> subscription;
+        private final List<Integer> seen;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        RecordingSubscriber(final AtomicReference<IInputSubscription> aSubscription, final List<Integer> aSeen) {
+            subscription = aSubscription;
+            seen = aSeen;
+        }
+
+        @Override
+        public void onSubscribe(final IInputSubscription aSubscription) {
+            subscription.set(aSubscription);
+        }
+
+        @Override
+        public void onNext(final InputReading reading) {
+            seen.add(((InputReading.InputIntegerData) reading.getData()).getValue());
+        }
+
+        @Override
+        public void onError(final Throwable aError) {
+            error = aError;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    void testRequestTimeout() {
+        assertEquals(60, client.getRequestTimeout(TimeUnit.SECONDS));
+        client.setRequestTimeout(50, TimeUnit.MILLISECONDS);
+        assertEquals(50, client.getRequestTimeout(TimeUnit.MILLISECONDS));
+
+        CompletableFuture<ButtplugMessage> lost = client.scheduleWait(100, new CompletableFuture<>());
+        CompletableFuture<ButtplugMessage> answered = client.scheduleWait(101, new CompletableFuture<>());
+        assertEquals(2, client.getPendingRequestCount());
+        client.onMessage(new Ok(101));
+        assertEquals(1, client.getPendingRequestCount());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> lost.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(answered.isDone());
+        assertEquals(0, client.getPendingRequestCount());
+        assertEquals(1, client.getExpiredRequestCount());
+
+        // waitForOk reports the expiry as a timeout
+        assertThrows(TimeoutException.class,
+                () -> client.waitForOk(client.scheduleWait(102, new CompletableFuture<>())));
+        client.disconnect();
+    }
+
+    @Test
+    void testAsyncStages() throws Exception {
+        client.startScanningAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertInstanceOf(StartScanning.class, client.lastSentMessage);
+
+        client.setNextResponse(new Error("Test error", Error.ErrorClass.ERROR_DEVICE, 1));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.stopScanningAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ButtplugDeviceException.class, e.getCause());
+        assertEquals("Test error", e.getCause().getMessage());
+
+        client.setNextResponse(new Ping(1));
+        e = assertThrows(ExecutionException.class,
+                () -> client.stopAllDevicesAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ButtplugClientException.class, e.getCause());
+
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        client.setNextResponse(parser.parseJson("[{\"DeviceList\":{\"Id\":1,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Input\":{\"Battery\":{\"Command\":[\"Read\"],\"Value\":[[0,0],[0,100]]}}}}}}}}]").get(0));
+        List<ButtplugClientDevice> devices = client.requestDeviceListAsync(1, TimeUnit.SECONDS)
+                .toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertEquals(1, devices.size());
+        ButtplugClientDevice device = devices.get(0);
+
+        client.setNextResponse(parser.parseJson("[{\"InputReading\":{\"Id\":0,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Reading\":{\"Battery\":{\"Value\":50}}}}]").get(0));
+        assertEquals(50, device.readBatteryAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+        e = assertThrows(ExecutionException.class,
+                () -> device.readRSSIAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ButtplugDeviceException.class, e.getCause());
+        e = assertThrows(ExecutionException.class, () -> device.getDeviceFeatures().get(0)
+                .readRSSIAsync(1, TimeUnit.SECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ButtplugDeviceFeatureException.class, e.getCause());
+
+        // A caller-supplied timeout overrides the client's request timeout
+        client.silent = true;
+        CompletableFuture<Void> stop = device.sendStopDeviceCmdAsync(20, TimeUnit.MILLISECONDS).toCompletableFuture();
+        e = assertThrows(ExecutionException.class, () -> stop.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(60, client.getRequestTimeout(TimeUnit.SECONDS));
+        client.disconnect();
+    }
+
+    @Test
+    void testInFlightWindowFailFast() {
+        assertEquals(0, client.getMaxInFlight());
+        client.setMaxInFlight(2, ButtplugClient.BackpressurePolicy.FAIL_FAST);
+        assertEquals(2, client.getMaxInFlight());
+        assertEquals(ButtplugClient.BackpressurePolicy.FAIL_FAST, client.getBackpressurePolicy());
+        client.silent = true;
+
+        CompletableFuture<ButtplugMessage> first = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
+        CompletableFuture<ButtplugMessage> second = (CompletableFuture<ButtplugMessage>) client.stopScanningAsync();
+        assertEquals(2, client.getQueueDepth());
+        CompletableFuture<ButtplugMessage> third = (CompletableFuture<ButtplugMessage>) client.stopAllDevicesAsync();
+        assertInstanceOf(Error.class, third.getNow(null));
+        assertEquals(1, client.getRejectedRequestCount());
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        client.onMessage(new Ok(client.sentMessages.get(0).getId()));
+        assertTrue(first.isDone());
+        assertEquals(1, client.getQueueDepth());
+        assertFalse(((CompletableFuture<ButtplugMessage>) client.stopAllDevicesAsync()).isDone());
+        assertEquals(2, client.getQueueDepth());
+
+        // Pings and the handshake are never turned away
+        CompletableFuture<ButtplugMessage> ping = client.sendMessage(new Ping(client.getNextMsgId()));
+        assertFalse(ping.isDone());
+        assertEquals(2, client.getQueueDepth());
+        assertEquals(1, client.getRejectedRequestCount());
+
+        client.disconnect();
+        assertEquals(0, client.getQueueDepth());
+        client.setMaxInFlight(0, ButtplugClient.BackpressurePolicy.FAIL_FAST);
+        assertNull(client.getBackpressurePolicy());
+    }
+
+    @Test
+    void testHandshakeFailsWaitingRequests() throws Exception {
+        client.setMaxInFlight(1, ButtplugClient.BackpressurePolicy.FAIL_FAST);
+        client.silent = true;
+        CompletableFuture<ButtplugMessage> stale = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
+        assertEquals(1, client.getQueueDepth());
+
+        client.silent = false;
+        client.setNextResponse(new ServerInfo("Test Server", 4, 0, 0, 1));
+        client.setNextResponse(new DeviceList(new HashMap<>(), 2));
+        client.doHandshakeAsync().get(1, TimeUnit.SECONDS);
+        assertEquals("Connection reset", ((Error) stale.getNow(null)).getErrorMessage());
+        assertEquals(0, client.getQueueDepth());
+        assertEquals(0, client.getPendingRequestCount());
+        assertInstanceOf(Ok.class, client.stopScanningAsync().get(1, TimeUnit.SECONDS));
+        client.disconnect();
+    }
+
+    @Test
+    void testFailedSendReleasesWindow() {
+        client.setMaxInFlight(1, ButtplugClient.BackpressurePolicy.FAIL_FAST);
+        client.failSends = true;
+
+        CompletableFuture<ButtplugMessage> failed = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
+        assertEquals("Bad WS state!", ((Error) failed.getNow(null)).getErrorMessage());
+        assertEquals(0, client.getQueueDepth());
+        assertEquals(0, client.getPendingRequestCount());
+
+        client.failSends = false;
+        client.silent = true;
+        assertFalse(((CompletableFuture<ButtplugMessage>) client.stopScanningAsync()).isDone());
+        assertEquals(0, client.getRejectedRequestCount());
+        client.disconnect();
+    }
+
+    @Test
+    void testInFlightWindowDropOldestOutput() {
+        client.setMaxInFlight(2, ButtplugClient.BackpressurePolicy.DROP_OLDEST_OUTPUT);
+        client.silent = true;
+
+        CompletableFuture<ButtplugMessage> scan = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
+        CompletableFuture<ButtplugMessage> output = client.sendMessage(new OutputCmd(client.getNextMsgId(), 0, 0));
+        CompletableFuture<ButtplugMessage> stop = (CompletableFuture<ButtplugMessage>) client.stopAllDevicesAsync();
+
+        assertInstanceOf(Error.class, output.getNow(null));
+        assertFalse(scan.isDone());
+        assertFalse(stop.isDone());
+        assertEquals(1, client.getRejectedRequestCount());
+
+        // No output command left to drop
+        CompletableFuture<ButtplugMessage> rejected = (CompletableFuture<ButtplugMessage>) client.stopScanningAsync();
+        assertInstanceOf(Error.class, rejected.getNow(null));
+        assertEquals(2, client.getRejectedRequestCount());
+        client.disconnect();
+    }
+
+    @Test
+    void testInFlightWindowBlock() throws Exception {
+        client.setMaxInFlight(1, ButtplugClient.BackpressurePolicy.BLOCK);
+        client.setRequestTimeout(50, TimeUnit.MILLISECONDS);
+        client.silent = true;
+
+        CompletableFuture<ButtplugMessage> first = (CompletableFuture<ButtplugMessage>) client.startScanningAsync();
+        int firstId = client.lastSentMessage.getId();
+
+        // Times out waiting for a slot
+        CompletableFuture<ButtplugMessage> second = (CompletableFuture<ButtplugMessage>) client.stopScanningAsync();
+        assertInstanceOf(Error.class, second.getNow(null));
+
+        // Unblocks once the first request is answered
+        client.setRequestTimeout(5, TimeUnit.SECONDS);
+        Thread answer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            client.onMessage(new Ok(firstId));
+        });
+        answer.start();
+        CompletableFuture<ButtplugMessage> third = (CompletableFuture<ButtplugMessage>) client.stopAllDevicesAsync();
+        answer.join();
+        assertTrue(first.isDone());
+        assertFalse(third.isDone());
+
+        // The scheduler's threads never wait for a slot
+        long start = System.nanoTime();
+        ButtplugMessage refused = client.getScheduler().submit(
+                () -> ((CompletableFuture<ButtplugMessage>) client.stopScanningAsync()).getNow(null)).get();
+        assertInstanceOf(Error.class, refused);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        // Nor do callers of the non-blocking API
+        start = System.nanoTime();
+        CompletableFuture<Void> async = client.stopScanningAsync(5, TimeUnit.SECONDS).toCompletableFuture();
+        assertTrue(async.isCompletedExceptionally());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        client.disconnect();
+    }
+
     @Test
     void testEventsAccessors() {
         IDeviceAddedEvent added = device -> {
@@ -556,6 +1560,15 @@ class ButtplugClientTest {
         assertEquals(connected, client.getOnConnectedHandler());
     }
 
+    /**
+     * Message type that is not part of the protocol.
+     */
+    private static final class CustomMessage extends ButtplugMessage {
+        CustomMessage(final int id) {
+            super(id);
+        }
+    }
+
     /**
      * Concrete implementation of ButtplugClient for testing purposes.
      */
@@ -564,6 +1577,14 @@ class ButtplugClientTest {
         ButtplugMessage lastSentMessage;
         List<ButtplugMessage> sentMessages = new ArrayList<>();
         boolean cleanupCalled = false;
+        boolean acceptRawFrames = false;
+        boolean silent = false;
+        boolean failSends = false;
+        volatile boolean throwOnSend = false;
+        volatile int failReopens;
+        volatile int reopens;
+        boolean reconnectable = true;
+        List<String> rawFrames = new ArrayList<>();
         private int queueIndex = 0;
 
         TestButtplugClient(final String clientName) {
@@ -576,21 +1597,58 @@ class ButtplugClientTest {
 
         @Override
         protected CompletableFuture<ButtplugMessage> sendMessage(final ButtplugMessage msg) {
-            lastSentMessage = msg;
-            sentMessages.add(msg);
-
-            CompletableFuture<ButtplugMessage> future = new CompletableFuture<>();
-            scheduleWait(msg.getId(), future);
-
-            if (queueIndex < messageQueue.size()) {
-                ButtplugMessage response = messageQueue.get(queueIndex++);
-                response.setId(msg.getId());
-                onMessage(Collections.singletonList(response));
-            } else {
-                onMessage(Collections.singletonList(new Ok(msg.getId())));
+            if (throwOnSend) {
+                throw new IllegalStateException("Transport gone");
             }
+            return super.sendMessage(msg);
+        }
+
+        @Override
+        protected void writeFrame(final List<ButtplugMessage> msgs) throws Exception {
+            if (failSends) {
+                throw new ButtplugClientException("Bad WS state!");
+            }
+            for (ButtplugMessage msg : msgs) {
+                lastSentMessage = msg;
+                sentMessages.add(msg);
+                if (silent) {
+                    continue;
+                } else if (queueIndex < messageQueue.size()) {
+                    ButtplugMessage response = messageQueue.get(queueIndex++);
+                    response.setId(msg.getId());
+                    onMessage(Collections.singletonList(response));
+                } else {
+                    onMessage(Collections.singletonList(new Ok(msg.getId())));
+                }
+            }
+        }
 
-            return future;
+        @Override
+        protected boolean supportsRawFrames() {
+            return acceptRawFrames;
+        }
+
+        @Override
+        protected void sendRawFrame(final ByteBuffer frame) {
+            if (silent) {
+                publishError(new Error("Bad WS state!", Error.ErrorClass.ERROR_UNKNOWN, ButtplugConsts.SYSTEM_MSG_ID));
+                return;
+            }
+            rawFrames.add(StandardCharsets.UTF_8.decode(frame).toString());
+        }
+
+        @Override
+        protected boolean canReconnect() {
+            return reconnectable;
+        }
+
+        @Override
+        protected void reopen() throws IOException {
+            reopens++;
+            if (failReopens-- > 0) {
+                throw new IOException("refused");
+            }
+            doHandshakeAsync();
         }
 
         @Override
@@ -0,0 +1,112 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ButtplugEventBusTest {
+
+    @Test
+    void testMultipleListeners() {
+        ButtplugEventBus bus = new ButtplugEventBus();
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        IDeviceRemovedEvent a = first::add;
+        IDeviceRemovedEvent b = second::add;
+
+        assertFalse(bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(0)));
+        bus.addListener(IDeviceRemovedEvent.class, a);
+        bus.addListener(IDeviceRemovedEvent.class, b);
+        assertEquals(Arrays.asList(a, b), bus.getListeners(IDeviceRemovedEvent.class));
+
+        assertTrue(bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(1)));
+        assertTrue(bus.removeListener(IDeviceRemovedEvent.class, a));
+        assertFalse(bus.removeListener(IDeviceRemovedEvent.class, a));
+        bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(2));
+
+        assertEquals(Collections.singletonList(1), first);
+        assertEquals(Arrays.asList(1, 2), second);
+    }
+
+    @Test
+    void testFailingListenerDoesNotStopOthers() {
+        ButtplugEventBus bus = new ButtplugEventBus();
+        List<Integer> seen = new ArrayList<>();
+        bus.addListener(IDeviceRemovedEvent.class, idx -> {
+            throw new IllegalStateException("listener failure");
+        });
+        bus.addListener(IDeviceRemovedEvent.class, seen::add);
+
+        bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(1));
+        bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(2));
+
+        assertEquals(Arrays.asList(1, 2), seen);
+    }
+
+    @Test
+    void testPerListenerOrderAndQueueDepth() throws InterruptedException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            ButtplugEventBus bus = new ButtplugEventBus();
+            bus.setExecutor(pool);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch slowDone = new CountDownLatch(3);
+            CountDownLatch fastDone = new CountDownLatch(3);
+            List<Integer> slowSeen = Collections.synchronizedList(new ArrayList<>());
+            List<Integer> fastSeen = Collections.synchronizedList(new ArrayList<>());
+            IDeviceRemovedEvent slow = idx -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowSeen.add(idx);
+                slowDone.countDown();
+            };
+            IDeviceRemovedEvent fast = idx -> {
+                fastSeen.add(idx);
+                fastDone.countDown();
+            };
+            bus.addListener(IDeviceRemovedEvent.class, slow);
+            bus.addListener(IDeviceRemovedEvent.class, fast);
+
+            for (int i = 0; i < 3; i++) {
+                int idx = i;
+                bus.publish(IDeviceRemovedEvent.class, l -> l.deviceRemoved(idx));
+            }
+
+            // The fast listener is not held up by the slow one
+            assertTrue(fastDone.await(1, TimeUnit.SECONDS));
+            assertEquals(3, bus.getQueueDepth(IDeviceRemovedEvent.class, slow));
+            awaitDepth(bus, fast, 0);
+
+            release.countDown();
+            assertTrue(slowDone.await(1, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(0, 1, 2), slowSeen);
+            assertEquals(Arrays.asList(0, 1, 2), fastSeen);
+            awaitDepth(bus, slow, 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void awaitDepth(final ButtplugEventBus bus, final IDeviceRemovedEvent listener, final int depth)
+            throws InterruptedException {
+        // The depth drops just after the listener returns
+        for (int i = 0; i < 100 && bus.getQueueDepth(IDeviceRemovedEvent.class, listener) != depth; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, bus.getQueueDepth(IDeviceRemovedEvent.class, listener));
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import io.github.blackspherefollower.buttplug4j.protocol.ButtplugMessage;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Error;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingRequestTableTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private PendingRequestTable table;
+
+    @BeforeEach
+    void setup() {
+        table = new PendingRequestTable(TICK, 4);
+    }
+
+    @AfterEach
+    void teardown() {
+        table.stop();
+    }
+
+    @Test
+    void testRemoveReturnsPromise() {
+        CompletableFuture<ButtplugMessage> promise = new CompletableFuture<>();
+        assertSame(promise, table.register(1, promise, TimeUnit.SECONDS.toNanos(10)));
+        assertEquals(1, table.size());
+        assertSame(promise, table.remove(1));
+        assertNull(table.remove(1));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testExpiry() throws Exception {
+        CompletableFuture<ButtplugMessage> quick = table.register(1, new CompletableFuture<>(), 3 * TICK);
+        CompletableFuture<ButtplugMessage> slow = table.register(2, new CompletableFuture<>(), 20 * TICK);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> quick.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertFalse(slow.isDone());
+        assertEquals(1, table.getExpiredCount());
+        assertEquals(1, table.size());
+
+        e = assertThrows(ExecutionException.class, () -> slow.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(2, table.getExpiredCount());
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testReschedule() {
+        CompletableFuture<ButtplugMessage> promise = table.register(1, new CompletableFuture<>(),
+                TimeUnit.SECONDS.toNanos(10));
+        long now = System.nanoTime();
+        table.advance(now);
+        assertTrue(table.reschedule(1, TICK));
+        assertFalse(table.reschedule(2, TICK));
+        table.advance(now + 3 * TICK);
+        assertTrue(promise.isCompletedExceptionally());
+        assertFalse(table.reschedule(1, TICK));
+    }
+
+    @Test
+    void testAnsweredRequestsDoNotExpire() {
+        CompletableFuture<ButtplugMessage> promise = table.register(1, new CompletableFuture<>(), TICK);
+        table.remove(1).complete(new Ok(1));
+        table.advance(System.nanoTime() + 10 * TICK);
+        assertEquals(0, table.getExpiredCount());
+        assertFalse(promise.isCompletedExceptionally());
+    }
+
+    @Test
+    void testReplacedRequestIsFailed() {
+        CompletableFuture<ButtplugMessage> first = table.register(1, new CompletableFuture<>(), TICK);
+        CompletableFuture<ButtplugMessage> second = table.register(1, new CompletableFuture<>(),
+                TimeUnit.SECONDS.toNanos(10));
+        assertInstanceOf(Error.class, first.getNow(null));
+        table.advance(System.nanoTime() + 10 * TICK);
+        assertEquals(0, table.getExpiredCount());
+        assertFalse(second.isDone());
+        assertSame(second, table.remove(1));
+    }
+
+    @Test
+    void testCompleteAll() throws Exception {
+        CompletableFuture<ButtplugMessage> a = table.register(1, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<ButtplugMessage> b = table.register(2, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        table.completeAll(() -> new Ok(0));
+        assertInstanceOf(Ok.class, a.get());
+        assertInstanceOf(Ok.class, b.get());
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testOverflow() {
+        // 1 and 5 share a slot in a ring of 4, as do the negative IDs left after a wraparound
+        CompletableFuture<ButtplugMessage> a = table.register(1, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<ButtplugMessage> b = table.register(5, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<ButtplugMessage> c = table.register(-3, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        assertEquals(3, table.size());
+        assertNull(table.remove(9));
+        assertSame(b, table.remove(5));
+        assertSame(a, table.remove(1));
+        assertSame(c, table.remove(-3));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testOverflowExpiry() throws Exception {
+        table.register(1, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<ButtplugMessage> b = table.register(5, new CompletableFuture<>(), TICK);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> b.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(1, table.size());
+        assertNull(table.remove(5));
+    }
+
+    @Test
+    void testReuseAfterReset() {
+        // After a reset the same ID can be registered again while the old request is still in the overflow map
+        table.register(1, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<ButtplugMessage> old = table.register(5, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        table.remove(1);
+        CompletableFuture<ButtplugMessage> fresh = table.register(5, new CompletableFuture<>(), TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, table.size());
+        assertSame(fresh, table.remove(5));
+        assertNull(table.remove(5));
+        assertEquals("Replaced by a request with the same ID", ((Error) old.getNow(null)).getErrorMessage());
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testCapacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new PendingRequestTable(TICK, 6));
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.blackspherefollower.buttplug4j.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SensorStateTableTest {
+
+    @Test
+    void testReadWrite() {
+        SensorStateTable table = new SensorStateTable(2);
+        assertNull(table.read(1, ButtplugInput.PRESSURE));
+        assertEquals(-1, table.readValue(1, ButtplugInput.PRESSURE, -1));
+
+        table.write(1, ButtplugInput.PRESSURE, 40, 100L);
+        table.write(1, ButtplugInput.PRESSURE, 42, 200L);
+        table.write(0, ButtplugInput.BATTERY, 90, 300L);
+
+        SensorSample sample = table.read(1, ButtplugInput.PRESSURE);
+        assertEquals(42, sample.getValue());
+        assertEquals(200L, sample.getTimestampNanos());
+        assertEquals(2, sample.getSequence());
+        assertEquals(ButtplugInput.PRESSURE, sample.getInput());
+        assertEquals(1, sample.getFeatureIndex());
+        assertEquals(90, table.readValue(0, ButtplugInput.BATTERY, -1));
+        assertNull(table.read(0, ButtplugInput.PRESSURE));
+    }
+
+    @Test
+    void testUntrackedFeatures() {
+        SensorStateTable table = new SensorStateTable(2);
+        table.write(2, ButtplugInput.BATTERY, 1, 1L);
+        table.write(-1, ButtplugInput.BATTERY, 1, 1L);
+        assertNull(table.read(2, ButtplugInput.BATTERY));
+        assertNull(table.read(Integer.MAX_VALUE, ButtplugInput.POSITION));
+        assertEquals(7, table.readValue(-1, ButtplugInput.BATTERY, 7));
+    }
+
+    @Test
+    void testResize() {
+        SensorStateTable table = new SensorStateTable(3);
+        table.write(0, ButtplugInput.BATTERY, 90, 100L);
+        table.write(2, ButtplugInput.PRESSURE, 5, 200L);
+        assertSame(table, table.resize(3));
+
+        SensorStateTable smaller = table.resize(1);
+        assertEquals(90, smaller.read(0, ButtplugInput.BATTERY).getValue());
+        assertEquals(100L, smaller.read(0, ButtplugInput.BATTERY).getTimestampNanos());
+        assertNull(smaller.read(2, ButtplugInput.PRESSURE));
+
+        SensorStateTable larger = smaller.resize(4);
+        assertEquals(90, larger.readValue(0, ButtplugInput.BATTERY, -1));
+        assertNull(larger.read(3, ButtplugInput.BATTERY));
+    }
+
+    @Test
+    void testReadersSeeConsistentSamples() throws InterruptedException {
+        SensorStateTable table = new SensorStateTable(1);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 200_000; i++) {
+                table.write(0, ButtplugInput.POSITION, i, i);
+            }
+            stop.set(true);
+        });
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                SensorSample sample = table.read(0, ButtplugInput.POSITION);
+                if (sample != null && (sample.getValue() != sample.getTimestampNanos()
+                        || sample.getSequence() != sample.getValue())) {
+                    torn.set(sample.toString());
+                }
+            }
+        });
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.join();
+        assertNull(torn.get());
+        assertEquals(200_000, table.read(0, ButtplugInput.POSITION).getSequence());
+    }
+}
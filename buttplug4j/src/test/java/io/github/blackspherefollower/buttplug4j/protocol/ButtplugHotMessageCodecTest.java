@@ -0,0 +1,156 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.StopCmd;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ButtplugHotMessageCodecTest {
+
+    // The round-trip strings used by the message tests
+    private static final String[] MESSAGES = {
+            "[{\"DeviceList\":{\"Id\":5,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test Vibrator\",\"DeviceMessageTimingGap\":100,\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Clitoral Stimulator\",\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}},\"1\":{\"FeatureIndex\":1,\"FeatureDescription\":\"Insertable Stimulator\",\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}},\"2\":{\"FeatureIndex\":2,\"FeatureDescription\":\"Battery\",\"Input\":{\"Battery\":{\"Command\":[\"Read\"],\"Value\":[[0,0],[0,100]]}}}}},\"2\":{\"DeviceIndex\":2,\"DeviceName\":\"Test Stroker\",\"DeviceMessageTimingGap\":100,\"DeviceDisplayName\":\"User set name\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Stroker\",\"Output\":{\"Oscillate\":{\"Value\":[0,20]},\"HwPositionWithDuration\":{\"Value\":[0,100],\"Duration\":[0,2000]}},\"Input\":{\"Position\":{\"Command\":[\"Subscribe\",\"Read\"],\"Value\":[[0,0],[0,100]]}}},\"1\":{\"FeatureIndex\":1,\"FeatureDescription\":\"Bluetooth Radio RSSI\",\"Input\":{\"RSSI\":{\"Command\":[\"Read\"],\"Value\":[[-10,0],[-100,0]]}}}}}}}}]",
+            "[{\"Error\":{\"Id\":7,\"ErrorCode\":4,\"ErrorMessage\":\"TestError\"}}]",
+            "[{\"InputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Type\":\"Battery\",\"Command\":\"Subscribe\"}}]",
+            "[{\"InputCmd\":{\"Id\":2,\"DeviceIndex\":1,\"FeatureIndex\":1,\"Type\":\"RSSI\",\"Command\":\"Unsubscribe\"}}]",
+            "[{\"InputCmd\":{\"Id\":3,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Type\":\"Button\",\"Command\":\"Read\"}}]",
+            "[{\"InputReading\":{\"Id\":10,\"DeviceIndex\":0,\"FeatureIndex\":1,\"Reading\":{\"Battery\":{\"Value\":100}}}}]",
+            "[{\"Ok\":{\"Id\":3}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Vibrate\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Rotate\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Rotate\":{\"Value\":-5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Position\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Spray\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Constrict\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Oscillate\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Temperature\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Led\":{\"Value\":5}}}}]",
+            "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"HwPositionWithDuration\":{\"Value\":5,\"Duration\":10}}}}]",
+            "[{\"Ping\":{\"Id\":4}}]",
+            "[{\"RequestDeviceList\":{\"Id\":7}}]",
+            "[{\"RequestServerInfo\":{\"Id\":7,\"ProtocolVersionMajor\":4,\"ProtocolVersionMinor\":0,\"ClientName\":\"UnitTest\"}}]",
+            "[{\"ScanningFinished\":{\"Id\":0}}]",
+            "[{\"ServerInfo\":{\"Id\":1,\"ProtocolVersionMajor\":4,\"ProtocolVersionMinor\":0,\"MaxPingTime\":500,\"ServerName\":\"Websocket Server\"}}]",
+            "[{\"StartScanning\":{\"Id\":6}}]",
+            "[{\"StopCmd\":{\"Id\":7}}]",
+            "[{\"StopCmd\":{\"Id\":7,\"Inputs\":true,\"Outputs\":false}}]",
+            "[{\"StopCmd\":{\"Id\":7,\"DeviceIndex\":4}}]",
+            "[{\"StopCmd\":{\"Id\":7,\"Inputs\":true,\"Outputs\":false,\"DeviceIndex\":4}}]",
+            "[{\"StopCmd\":{\"Id\":7,\"DeviceIndex\":4,\"FeatureIndex\":2}}]",
+            "[{\"StopCmd\":{\"Id\":7,\"Inputs\":false,\"Outputs\":true,\"DeviceIndex\":4,\"FeatureIndex\":2}}]",
+            "[{\"StopScanning\":{\"Id\":7}}]"
+    };
+
+    @Test
+    public void testRoundTripMatchesDatabind() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser databind = new ButtplugJsonMessageParser();
+        ButtplugJsonMessageParser handWritten = new ButtplugJsonMessageParser(true);
+        assertFalse(databind.isHandWrittenCodec());
+        assertTrue(handWritten.isHandWrittenCodec());
+
+        for (String testStr : MESSAGES) {
+            List<ButtplugMessage> msgs = handWritten.parseJson(testStr);
+            assertEquals(1, msgs.size(), testStr);
+            assertEquals(databind.parseJson(testStr).get(0).getClass(), msgs.get(0).getClass(), testStr);
+
+            // Each codec must be able to write what the other decoded
+            assertEquals(testStr, handWritten.formatJson(msgs), testStr);
+            assertEquals(testStr, handWritten.formatJson(msgs.get(0)), testStr);
+            assertEquals(testStr, databind.formatJson(msgs), testStr);
+            assertEquals(testStr, handWritten.formatJson(databind.parseJson(testStr)), testStr);
+        }
+    }
+
+    @Test
+    public void testMixedBatch() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser databind = new ButtplugJsonMessageParser();
+        ButtplugJsonMessageParser handWritten = new ButtplugJsonMessageParser(true);
+
+        StringBuilder sb = new StringBuilder("[");
+        for (String testStr : MESSAGES) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(testStr, 1, testStr.length() - 1);
+        }
+        String batch = sb.append(']').toString();
+
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        handWritten.parseJson(batch, msgs::add);
+        assertEquals(MESSAGES.length, msgs.size());
+        assertEquals(batch, handWritten.formatJson(msgs));
+        assertEquals(batch, databind.formatJson(msgs));
+    }
+
+    @Test
+    public void testDecodedFields() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser(true);
+
+        OutputCmd cmd = (OutputCmd) parser.parseJson("[{\"OutputCmd\":{\"Id\":9,\"DeviceIndex\":3,\"FeatureIndex\":2,"
+                + "\"Command\":{\"HwPositionWithDuration\":{\"Value\":40,\"Duration\":500}}}}]").get(0);
+        assertEquals(9, cmd.getId());
+        assertEquals(3, cmd.getDeviceIndex());
+        assertEquals(2, cmd.getFeatureIndex());
+        assertEquals(40, ((OutputCmd.HwPositionWithDuration) cmd.getCommand()).getValue());
+        assertEquals(500, ((OutputCmd.HwPositionWithDuration) cmd.getCommand()).getDuration());
+
+        InputReading reading = (InputReading) parser.parseJson("[{\"InputReading\":{\"Id\":0,\"DeviceIndex\":1,"
+                + "\"FeatureIndex\":4,\"Reading\":{\"RSSI\":{\"Value\":-60}}}}]").get(0);
+        assertEquals(1, reading.getDeviceIndex());
+        assertEquals(4, reading.getFeatureIndex());
+        assertEquals(InputReading.RssiData.class, reading.getData().getClass());
+        assertEquals(-60, ((InputReading.RssiData) reading.getData()).getValue());
+
+        StopCmd stop = (StopCmd) parser.parseJson("[{\"StopCmd\":{\"Id\":7,\"Outputs\":true}}]").get(0);
+        assertEquals(7, stop.getId());
+        assertNull(stop.getInputs());
+        assertTrue(stop.getOutputs());
+        assertNull(stop.getDeviceIndex());
+    }
+
+    @Test
+    public void testNullCommand() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser databind = new ButtplugJsonMessageParser();
+        ButtplugJsonMessageParser handWritten = new ButtplugJsonMessageParser(true);
+
+        OutputCmd cmd = new OutputCmd(1, 0, 0);
+        assertEquals(databind.formatJson(cmd), handWritten.formatJson(cmd));
+        InputReading reading = new InputReading(1, 0, 0);
+        assertEquals(databind.formatJson(reading), handWritten.formatJson(reading));
+    }
+
+    @Test
+    public void testInvalid() {
+        ButtplugJsonMessageParser databind = new ButtplugJsonMessageParser();
+        ButtplugJsonMessageParser handWritten = new ButtplugJsonMessageParser(true);
+
+        String[] invalid = {
+                "[{\"Ok\":{\"Id\":3,\"Bogus\":1}}]",
+                "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Bogus\":{\"Value\":5}}}}]",
+                "[{\"OutputCmd\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Command\":{\"Vibrate\":{\"Steps\":5}}}}]",
+                "[{\"InputReading\":{\"Id\":1,\"DeviceIndex\":0,\"FeatureIndex\":0,\"Reading\":{\"Bogus\":{\"Value\":5}}}}]",
+                "[{\"StopCmd\":{\"Id\":\"seven\"}}]",
+                "[{\"Bogus\":{\"Id\":3}}]"
+        };
+        for (String testStr : invalid) {
+            assertThrows(ButtplugProtocolException.class, () -> databind.parseJson(testStr), testStr);
+            assertThrows(ButtplugProtocolException.class, () -> handWritten.parseJson(testStr), testStr);
+        }
+    }
+
+    @Test
+    public void testOkIsHandled() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser(true);
+        assertEquals("[{\"Ok\":{\"Id\":12}}]", parser.formatJson(new Ok(12)));
+    }
+}
@@ -0,0 +1,179 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Device;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.DeviceList;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.InputReading;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ok;
+import io.github.blackspherefollower.buttplug4j.protocol.messages.Ping;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ButtplugJsonMessageParserTest {
+
+    private static final String TEST_STR = "[{\"Ok\":{\"Id\":3}},{\"Ping\":{\"Id\":4}},"
+            + "{\"InputReading\":{\"Id\":0,\"DeviceIndex\":1,\"FeatureIndex\":2,\"Reading\":{\"Battery\":{\"Value\":50}}}}]";
+
+    private static void assertMessages(final List<ButtplugMessage> msgs) {
+        assertEquals(3, msgs.size());
+        assertEquals(Ok.class, msgs.get(0).getClass());
+        assertEquals(3, msgs.get(0).getId());
+        assertEquals(Ping.class, msgs.get(1).getClass());
+        assertEquals(4, msgs.get(1).getId());
+        assertEquals(InputReading.class, msgs.get(2).getClass());
+        assertEquals(1, ((InputReading) msgs.get(2)).getDeviceIndex());
+        assertEquals(2, ((InputReading) msgs.get(2)).getFeatureIndex());
+    }
+
+    @Test
+    public void testParseBytes() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        byte[] bytes = TEST_STR.getBytes(StandardCharsets.UTF_8);
+        assertMessages(parser.parseJson(bytes));
+
+        byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        assertMessages(parser.parseJson(padded, 2, bytes.length));
+    }
+
+    @Test
+    public void testParseByteBuffer() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        byte[] bytes = TEST_STR.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        assertMessages(parser.parseJson(heap));
+        assertEquals(0, heap.remaining());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertMessages(parser.parseJson(direct));
+        assertEquals(0, direct.remaining());
+    }
+
+    @Test
+    public void testParseInputStream() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        assertMessages(parser.parseJson(new ByteArrayInputStream(TEST_STR.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testParseStreaming() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        parser.parseJson(TEST_STR, msgs::add);
+        assertMessages(msgs);
+
+        msgs.clear();
+        byte[] bytes = TEST_STR.getBytes(StandardCharsets.UTF_8);
+        parser.parseJson(bytes, 0, bytes.length, msgs::add);
+        assertMessages(msgs);
+    }
+
+    @Test
+    public void testParseMalformedFrameDeliversNothing() {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        String frame = "[{\"Ok\":{\"Id\":3}},{\"Ok\":";
+        assertThrows(ButtplugProtocolException.class, () -> parser.parseJson(frame, msgs::add));
+        assertTrue(msgs.isEmpty());
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        assertThrows(ButtplugProtocolException.class, () -> parser.parseJson(bytes, 0, bytes.length, msgs::add));
+        assertTrue(msgs.isEmpty());
+        assertThrows(ButtplugProtocolException.class,
+                () -> parser.parseJson("[{\"Ok\":{\"Id\":3}},{\"Unknown\":{\"Id\":4}}]", msgs::add));
+        assertTrue(msgs.isEmpty());
+    }
+
+    @Test
+    public void testParseStreamDeliversEarlierMessages() {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        byte[] bytes = "[{\"Ok\":{\"Id\":3}},{\"Ok\":".getBytes(StandardCharsets.UTF_8);
+        assertThrows(ButtplugProtocolException.class,
+                () -> parser.parseJson(new ByteArrayInputStream(bytes), msgs::add));
+        assertEquals(1, msgs.size());
+        assertEquals(3, msgs.get(0).getId());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        assertThrows(ButtplugProtocolException.class,
+                () -> parser.parseJson("{\"Ok\":{\"Id\":3}}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(ButtplugProtocolException.class,
+                () -> parser.parseJson("[{\"Ok\":{\"Id\":3}}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(ButtplugProtocolException.class,
+                () -> parser.parseJson("[{\"Unknown\":{\"Id\":3}}]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testCodec() throws ButtplugProtocolException {
+        ButtplugCodec codec = new ButtplugJsonMessageParser();
+        assertFalse(codec.isBinary());
+        List<ButtplugMessage> msgs = new ArrayList<>();
+        codec.decode(TEST_STR, msgs::add);
+        assertMessages(msgs);
+        assertEquals(TEST_STR, codec.encodeText(msgs));
+        assertEquals(TEST_STR, new String(codec.encode(msgs), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRegisterMessageType() throws ButtplugProtocolException {
+        String json = "[{\"Custom\":{\"Id\":5}}]";
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser(true);
+        parser.registerMessageType(CustomMessage.class, "Custom");
+        List<ButtplugMessage> msgs = parser.parseJson(json);
+        assertEquals(1, msgs.size());
+        assertEquals(CustomMessage.class, msgs.get(0).getClass());
+        assertEquals(5, msgs.get(0).getId());
+        assertEquals(json, parser.formatJson(msgs));
+
+        assertThrows(ButtplugProtocolException.class, () -> new ButtplugJsonMessageParser().parseJson(json));
+    }
+
+    @Test
+    public void testLazyDevices() throws ButtplugProtocolException {
+        String json = "[{\"DeviceList\":{\"Id\":1,\"Devices\":{"
+                + "\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"A\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Output\":{\"Vibrate\":{\"Value\":[0,20]}}}}},"
+                + "\"1\":{\"DeviceIndex\":1,\"DeviceName\":\"B\",\"DeviceFeatures\":{}}}}}]";
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser(false, true);
+        assertTrue(parser.isLazyDevices());
+
+        DeviceList first = (DeviceList) parser.parseJson(json).get(0);
+        DeviceList second = (DeviceList) parser.parseJson(json).get(0);
+        Device dev = first.getDevices().get(0);
+        assertFalse(dev.isMaterialized());
+        assertNotEquals(0, dev.getFingerprint());
+        assertEquals(dev.getFingerprint(), second.getDevices().get(0).getFingerprint());
+        assertNotEquals(dev.getFingerprint(), first.getDevices().get(1).getFingerprint());
+
+        assertEquals("A", dev.getDeviceName());
+        assertTrue(dev.isMaterialized());
+        assertEquals(1, dev.getDeviceFeatures().get(0).getOutput().size());
+        assertEquals(new ButtplugJsonMessageParser().formatJson(new ButtplugJsonMessageParser().parseJson(json)),
+                parser.formatJson(Collections.singletonList(second)));
+
+        Device eager = ((DeviceList) new ButtplugJsonMessageParser().parseJson(json).get(0)).getDevices().get(0);
+        assertTrue(eager.isMaterialized());
+        assertEquals(0, eager.getFingerprint());
+    }
+
+    public static final class CustomMessage extends ButtplugMessage {
+        @SuppressWarnings("unused")
+        private CustomMessage() {
+            super(ButtplugConsts.DEFAULT_MSG_ID);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.blackspherefollower.buttplug4j.protocol;
+
+import io.github.blackspherefollower.buttplug4j.protocol.messages.OutputCmd;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class OutputCmdFrameWriterTest {
+
+    private static String expected(final int id, final long deviceIndex, final long featureIndex,
+                                   final OutputCmd.IOutputCommand command) throws ButtplugProtocolException {
+        OutputCmd cmd = new OutputCmd(id, deviceIndex, featureIndex);
+        cmd.setCommand(command);
+        return new ButtplugJsonMessageParser().formatJson(Collections.singletonList(cmd));
+    }
+
+    private static String text(final ByteBuffer frame) {
+        return StandardCharsets.UTF_8.decode(frame.duplicate()).toString();
+    }
+
+    @Test
+    public void testMatchesParser() throws ButtplugProtocolException {
+        OutputCmdFrameWriter writer = new OutputCmdFrameWriter();
+        assertEquals(expected(1, 0, 0, new OutputCmd.Vibrate(0)),
+                text(writer.write(1, 0, 0, "Vibrate", 0)));
+        assertEquals(expected(1234567, 42, 7, new OutputCmd.Rotate(-20)),
+                text(writer.write(1234567, 42, 7, "Rotate", -20)));
+        assertEquals(expected(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, new OutputCmd.Led(Integer.MIN_VALUE)),
+                text(writer.write(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, "Led", Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void testBufferIsReused() {
+        OutputCmdFrameWriter writer = new OutputCmdFrameWriter();
+        ByteBuffer first = writer.write(100000, 1, 1, "Vibrate", 10);
+        int longer = first.remaining();
+        ByteBuffer second = writer.write(1, 1, 1, "Vibrate", 1);
+        assertSame(first, second);
+        assertEquals(longer - 6, second.remaining());
+        assertEquals(0, second.position());
+    }
+
+    @Test
+    public void testLongCommandName() throws ButtplugProtocolException {
+        OutputCmdFrameWriter writer = new OutputCmdFrameWriter();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            name.append("Custom");
+        }
+        String frame = text(writer.write(1, 2, 3, name.toString(), 4));
+        assertEquals(expected(1, 2, 3, new OutputCmd.Vibrate(4)).replace("Vibrate", name), frame);
+    }
+}
@@ -8,11 +8,14 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DeviceFeatureTest {
 
@@ -202,4 +205,46 @@ public class DeviceFeatureTest {
         List<ButtplugMessage> msgs2 = parser.parseJson(reserialized);
         assertEquals(msgs.size(), msgs2.size());
     }
+
+    @Test
+    public void testDescriptorRoundTripIsExact() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        String json = "[{\"DeviceList\":{\"Id\":1,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Test\",\"Output\":{\"Vibrate\":{\"Value\":[0,20]},\"HwPositionWithDuration\":{\"Value\":[0,100],\"Duration\":[0,2000]}},\"Input\":{\"Battery\":{\"Command\":[\"Read\",\"Subscribe\"],\"Value\":[[0,0],[0,100]]}}}}}}}}]";
+
+        List<ButtplugMessage> msgs = parser.parseJson(json);
+        DeviceFeature feature = ((DeviceList) msgs.get(0)).getDevices().get(0).getDeviceFeatures().get(0);
+        assertEquals(2, feature.getOutput().size());
+        assertEquals(DeviceFeature.Vibrate.class, feature.getOutput().get(0).getClass());
+        assertArrayEquals(new int[]{0, 2000}, ((DeviceFeature.HwPositionWithDuration) feature.getOutput().get(1)).getDuration());
+        assertEquals(Arrays.asList(InputCommandType.READ, InputCommandType.SUBSCRIBE), feature.getInput().get(0).getInput());
+        assertEquals(json, parser.formatJson(msgs));
+    }
+
+    @Test
+    public void testUnknownDescriptorIsSkipped() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        String json = "[{\"DeviceList\":{\"Id\":1,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Test\",\"Output\":{\"Vibrate\":{\"Value\":[0,20]},\"Wiggle\":{\"Value\":[0,20],\"Pattern\":{\"A\":[1]}},\"Rotate\":{\"Value\":[0,10],\"Speed\":3}},\"Input\":{\"Smell\":{\"Command\":[\"Read\"],\"Value\":[[0,1]]},\"Battery\":{\"Command\":[\"Read\"],\"Value\":[[0,0],[0,100]]}}}}}}}}]";
+
+        DeviceFeature feature = ((DeviceList) parser.parseJson(json).get(0)).getDevices().get(0)
+                .getDeviceFeatures().get(0);
+        assertEquals(2, feature.getOutput().size());
+        assertEquals(DeviceFeature.Vibrate.class, feature.getOutput().get(0).getClass());
+        assertArrayEquals(new int[]{0, 10}, ((DeviceFeature.Rotate) feature.getOutput().get(1)).getValue());
+        assertEquals(Collections.singletonList("Wiggle"), feature.getUnknownOutputTypes());
+        assertEquals(1, feature.getInput().size());
+        assertEquals(DeviceFeature.Battery.class, feature.getInput().get(0).getClass());
+        assertEquals(Collections.singletonList("Smell"), feature.getUnknownInputTypes());
+        assertEquals(Collections.emptyList(), new DeviceFeature().getUnknownOutputTypes());
+
+        String input = "[{\"DeviceList\":{\"Id\":1,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"Input\":{\"Battery\":{\"Command\":[\"Poke\"],\"Value\":[[0,0],[0,100]]}}}}}}}}]";
+        assertThrows(ButtplugProtocolException.class, () -> parser.parseJson(input));
+    }
+
+    @Test
+    public void testEmptyDescriptorsSerializeAsNull() throws ButtplugProtocolException {
+        ButtplugJsonMessageParser parser = new ButtplugJsonMessageParser();
+        String json = "[{\"DeviceList\":{\"Id\":1,\"Devices\":{\"0\":{\"DeviceIndex\":0,\"DeviceName\":\"Test\",\"DeviceFeatures\":{\"0\":{\"FeatureIndex\":0,\"FeatureDescription\":\"Test\",\"Output\":{}}}}}}}]";
+        String formatted = parser.formatJson(parser.parseJson(json));
+        assertTrue(formatted.contains("\"Output\":null"), formatted);
+    }
 }